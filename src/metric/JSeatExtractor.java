@@ -1,8 +1,17 @@
 package metric;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 import metric.core.Project;
+import metric.core.extraction.ExtractionScheduler;
+import metric.core.io.TextFile;
 import metric.core.util.logging.ConsoleHandler;
 import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.DataFormat;
+import metric.core.vocabulary.ExtractionProfile;
+import metric.core.vocabulary.JSeatFileType;
 
 /**
  * Basic Console program for extracting data and creating a JSeat Project.
@@ -12,42 +21,180 @@ import metric.core.util.logging.LogOrganiser;
 public class JSeatExtractor
 {
 	/**
-     * -i Input file -o Output file -t number_of_concurrent_threads Example:
-     * JSeatExtractor -i b:/workspace/builds/groovy/groovy.ver -o
+     * -i Input file -o Output file [-t number_of_concurrent_threads] [-q
+     * version_queue_size] [-p number_of_persister_threads] [-x
+     * number_of_version_tasks] [-v] [-f FAST|STANDARD|FULL] [-l] [-s CSV|BINARY]
+     * [-a]
+     * Example: JSeatExtractor -i b:/workspace/builds/groovy/groovy.ver -o
      * b:/groovy/groovy.jpf -t 2
+     * 
+     * -q bounds the number of extracted versions waiting to be persisted (0 is
+     * unbounded).
+     * 
+     * -p persists the specified number of versions at once.
+     * 
+     * -x extracts the specified number of versions at once, each as a task of
+     * its own, independently of the number of threads.
+     * 
+     * -v extracts and persists versions on virtual threads, where the runtime
+     * supports them.
+     * 
+     * -f sets the extraction profile. FAST only reads class headers, fields and
+     * method signatures, STANDARD extracts everything but method metrics and
+     * FULL (the default) extracts everything.
+     * 
+     * -l extracts the libraries embedded in war, ear and jar files (in a lib
+     * folder such as WEB-INF/lib) along with their own classes.
+     * 
+     * -s sets the format versions are written in. CSV (the default) writes text
+     * files, BINARY writes a binary file of class metrics and dependencies that
+     * is quicker to load.
+     * 
+     * -a appends versions that are not yet in the output project instead of
+     * rebuilding it.
+     * 
+     * -b project_list builds every project named in the list instead. Each
+     * project is read from input/name/name.ver and written to
+     * output/name/name.jpf as soon as it is complete. The versions of all
+     * projects are extracted on one set of threads, largest jar first.
+     * Example: JSeatExtractor -b project_list.txt -i b:/workspace/builds -o
+     * d:/jseat_data -t 4
      */
 	public static void main(String[] args)
 	{
-		String input = null, output = null;
-		int threads = 1;
+		String input = null, output = null, projectList = null;
+		int threads = 1, queueSize = -1, persisterThreads = 1, versionTasks = 0;
+		boolean append = false, virtualThreads = false, embeddedLibraries = false;
+		ExtractionProfile profile = ExtractionProfile.FULL;
+		DataFormat format = DataFormat.CSV;
 		// Add a console handler so we can listen to output.
 		LogOrganiser.addHandler(new ConsoleHandler());
 
-		if (args.length < 4 || args.length > 6 || args.length == 5)
+		if (args.length < 4)
 			System.err.println("Invalid arguments provided.");
 
 		try
 		{
-			if (args[0].equals("-i"))
-				input = args[1];
-			else
-				System.err.println("Invalid argument specified. Expected [-i]");
-			if (args[2].equals("-o"))
-				output = args[3];
-			else
-				System.err.println("Invalid argument specified. Expected [-o]");
-
-			if (args.length == 6 && args[4].equals("-t"))
-				threads = Integer.parseInt(args[5]);
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("-i"))
+					input = args[++i];
+				else if (args[i].equals("-o"))
+					output = args[++i];
+				else if (args[i].equals("-t"))
+					threads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-q"))
+					queueSize = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-p"))
+					persisterThreads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-x"))
+					versionTasks = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-v"))
+					virtualThreads = true;
+				else if (args[i].equals("-f"))
+				{
+					profile = ExtractionProfile.parse(args[++i]);
+					if (profile == null)
+						throw new IllegalArgumentException(args[i]);
+				} else if (args[i].equals("-s"))
+				{
+					format = DataFormat.parse(args[++i]);
+					if (format == null)
+						throw new IllegalArgumentException(args[i]);
+				} else if (args[i].equals("-l"))
+					embeddedLibraries = true;
+				else if (args[i].equals("-a"))
+					append = true;
+				else if (args[i].equals("-b"))
+					projectList = args[++i];
+				else
+					System.err.println("Invalid argument specified: " + args[i]);
+			}
 		} catch (Exception e)
 		{
 			System.err.println("One or more invalid arguments specified.");
 		}
 
+		if (input == null)
+			System.err.println("Invalid argument specified. Expected [-i]");
+		if (output == null)
+			System.err.println("Invalid argument specified. Expected [-o]");
+
 		if (input != null && output != null)
 		{
-			Project p = new Project(input, output, threads);
-			p.build();
+			if (projectList != null)
+			{
+				buildAll(projectList, input, output, threads, queueSize, persisterThreads, virtualThreads, profile,
+						embeddedLibraries, format, append);
+			} else
+			{
+				Project p = configure(new Project(input, output, threads), queueSize, persisterThreads,
+						virtualThreads, profile, embeddedLibraries, format, append);
+				p.setVersionTasks(versionTasks);
+				p.build();
+			}
+		}
+	}
+
+	private static Project configure(Project p, int queueSize, int persisterThreads, boolean virtualThreads,
+			ExtractionProfile profile, boolean embeddedLibraries, DataFormat format, boolean append)
+	{
+		if (queueSize >= 0)
+			p.setVersionQueueSize(queueSize);
+		p.setPersisterThreads(persisterThreads);
+		p.setVirtualThreads(virtualThreads);
+		p.setExtractionProfile(profile);
+		p.setEmbeddedLibraries(embeddedLibraries);
+		p.setDataFormat(format);
+		p.setAppend(append);
+		return p;
+	}
+
+	/**
+     * Builds every project in the specified list concurrently, sharing one
+     * extraction scheduler between them.
+     */
+	private static void buildAll(String projectList, String input, String output, int threads, int queueSize,
+			int persisterThreads, boolean virtualThreads, ExtractionProfile profile, boolean embeddedLibraries,
+			DataFormat format, boolean append)
+	{
+		ExtractionScheduler scheduler = new ExtractionScheduler(threads, threads);
+		List<Thread> builders = new ArrayList<Thread>();
+
+		TextFile list = new TextFile(projectList);
+		for (String name : list)
+		{
+			name = name.trim();
+			if (name.length() == 0 || name.startsWith("#"))
+				continue;
+
+			String versionFile = input + File.separator + name + File.separator + name + ".ver";
+			String projectFile = output + File.separator + name + File.separator + name
+					+ JSeatFileType.PROJECT.toString();
+			final Project p = configure(new Project(versionFile, projectFile, 1), queueSize, persisterThreads,
+					virtualThreads, profile, embeddedLibraries, format, append);
+			p.setScheduler(scheduler);
+
+			Thread builder = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					p.build();
+				}
+			}, "ProjectBuilder-" + name);
+			builder.start();
+			builders.add(builder);
+		}
+		list.close();
+
+		try
+		{
+			for (Thread builder : builders)
+				builder.join();
+		} catch (InterruptedException e)
+		{
+			System.err.println("Interrupted whilst building projects.");
 		}
+		scheduler.shutdown();
 	}
 }
@@ -1,14 +1,35 @@
 package metric.core;
 
+import java.util.HashSet;
 import java.util.Observable;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Repeatedly gets work and does it until it is stopped. By default the work
+ * loop runs on a daemon thread of its own, but it can instead be run on an
+ * executor shared with other active objects. Each item of work can also be
+ * done as a separate task on a task executor, with up to a set number of tasks
+ * in flight at once.
+ */
 public abstract class ActiveObject<T> extends Observable implements Runnable
 {
 	Thread thread;
-	private boolean stopRequested;
+	private boolean started, stopRequested;
 	private Object lock;
 	private String name;
 
+	private Executor executor;
+	private ExecutorService taskExecutor;
+	private Semaphore taskPermits;
+	private int maxTasks;
+	private Set<FutureTask<Object>> tasks;
+
 	public ActiveObject()
 	{
 		lock = new Object();
@@ -22,17 +43,54 @@ public abstract class ActiveObject<T> extends Observable implements Runnable
 		this.name = name;
 	}
 
+	/**
+     * Runs the work loop on the specified executor rather than on a thread of
+     * its own. Must be set before this object is started.
+     * 
+     * @param executor The executor to run on, or null for a thread of its own.
+     */
+	public void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+     * Does each item of work as a task on the specified executor, rather than
+     * on the thread of the work loop. The work loop waits for a task to
+     * finish whenever the specified number of tasks are in flight. Must be set
+     * before this object is started.
+     * 
+     * @param taskExecutor The executor to do work on, or null to do work on
+     *            the thread of the work loop.
+     * @param maxTasks The maximum number of tasks in flight at once.
+     */
+	public void setTaskExecutor(ExecutorService taskExecutor, int maxTasks)
+	{
+		this.taskExecutor = taskExecutor;
+		this.maxTasks = Math.max(maxTasks, 1);
+		this.taskPermits = new Semaphore(this.maxTasks);
+		this.tasks = new HashSet<FutureTask<Object>>();
+	}
+
 	public void start()
 	{
 		synchronized (lock)
 		{
-			if (thread == null)
+			if (!started)
 			{
-				thread = new Thread(this);
-				if (name != null)
-					thread.setName(name);
-				thread.setDaemon(true);
-				thread.start();
+				started = true;
+				stopRequested = false;
+				if (executor != null)
+					executor.execute(this);
+				else
+				{
+					// The thread of a single thread executor dies once it is
+					// shut down and the work loop has finished.
+					ExecutorService own = Executors.newSingleThreadExecutor(new WorkerThreadFactory(getClass()
+							.getSimpleName()));
+					own.execute(this);
+					own.shutdown();
+				}
 			}
 			// else // Do nothing
 			// throw new Exception("Thread already started...");
@@ -57,14 +115,22 @@ public abstract class ActiveObject<T> extends Observable implements Runnable
 	// this allows the interrupt to be overriden.
 	protected void Interrupt()
 	{
-		thread.interrupt();
+		// The work loop may not have started running yet, in which case it
+		// sees the stop request before getting any work.
+		if (thread != null)
+			thread.interrupt();
+		cancelTasks();
 	}
 
 	public void run()
 	{
+		String previousName;
 		synchronized (lock)
 		{
-			stopRequested = false;
+			thread = Thread.currentThread();
+			previousName = thread.getName();
+			if (name != null)
+				thread.setName(name);
 		}
 
 		try
@@ -78,7 +144,11 @@ public abstract class ActiveObject<T> extends Observable implements Runnable
 
 			while (running)
 			{
-				doWork(getWork());
+				T work = getWork();
+				if (taskExecutor == null)
+					doWork(work);
+				else
+					submit(work);
 				// Check if we have been requested to stop
 				synchronized (lock)
 				{
@@ -87,17 +157,99 @@ public abstract class ActiveObject<T> extends Observable implements Runnable
 			}
 		} finally
 		{
+			// Let the tasks in flight finish before cleaning up.
+			if (taskExecutor != null)
+				taskPermits.acquireUninterruptibly(maxTasks);
+
 			synchronized (lock)
 			{
 				cleanup(); // Cleanup before thread dies.
+				if (taskExecutor != null)
+					taskPermits.release(maxTasks);
+				thread.setName(previousName);
 				thread = null;
+				started = false;
 			}
 		}
 	}
 
+	/**
+     * @return Whether this object has been asked to stop. Work that takes a
+     *         while should check this regularly and give up once it is true.
+     */
+	protected boolean isStopRequested()
+	{
+		synchronized (lock)
+		{
+			return stopRequested;
+		}
+	}
+
+	private void submit(final T work)
+	{
+		// Work is null when getting work was interrupted.
+		if (work == null)
+			return;
+
+		try
+		{
+			taskPermits.acquire();
+		} catch (InterruptedException e)
+		{
+			// Have been asked to stop.
+			return;
+		}
+
+		FutureTask<Object> task = new FutureTask<Object>(new Runnable()
+		{
+			public void run()
+			{
+				doWork(work);
+			}
+		}, null)
+		{
+			@Override
+			protected void done()
+			{
+				synchronized (tasks)
+				{
+					tasks.remove(this);
+				}
+				taskPermits.release();
+			}
+		};
+
+		synchronized (tasks)
+		{
+			tasks.add(task);
+		}
+		try
+		{
+			taskExecutor.execute(task);
+		} catch (RejectedExecutionException e)
+		{
+			// The executor has been shut down.
+			task.cancel(false);
+		}
+	}
+
+	private void cancelTasks()
+	{
+		if (tasks == null)
+			return;
+		synchronized (tasks)
+		{
+			for (FutureTask<Object> task : new HashSet<FutureTask<Object>>(tasks))
+				task.cancel(true);
+		}
+	}
+
 	public String getName()
 	{
-		return thread.getName();
+		if (name != null)
+			return name;
+		Thread t = thread;
+		return t != null ? t.getName() : getClass().getSimpleName();
 	}
 
 	public abstract void doWork(T toDo);
@@ -9,29 +9,46 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.Observer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import metric.core.exception.ConversionException;
+import metric.core.extraction.ExtractionCache;
+import metric.core.extraction.ExtractionScheduler;
 import metric.core.extraction.MetricEngine;
 import metric.core.model.HistoryMetricData;
+import metric.core.persistence.BinaryConverter;
 import metric.core.persistence.CSVConverter;
+import metric.core.persistence.DataLoaderFactory;
+import metric.core.persistence.DataLoadingStrategy;
 import metric.core.persistence.MetricDataConverter;
 import metric.core.util.logging.ConsoleHandler;
 import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.DataFormat;
+import metric.core.vocabulary.ExtractionProfile;
 import metric.core.vocabulary.History;
 import metric.core.vocabulary.JSeatFileType;
+import metric.core.vocabulary.LoadType;
 import metric.core.vocabulary.SerializeType;
 
 public class Project
 {
+	// Shared by all projects written to the same folder.
+	private static final String EXTRACTION_CACHE_FILE = "extraction.cache";
+
 	private Logger logger = Logger.getLogger(getClass().getSimpleName());
 	private String actualHistoryName, inputFileName, outputFileName;
 	private String projectName;
 	private HistoryMetricData hmd;
 	private MetricEngine me;
+	private DataFormat dataFormat = DataFormat.CSV;
+	private int readAheadDepth;
+	private boolean cached;
+	private ExtractionProfile extractionProfile = ExtractionProfile.FULL;
 
 	public Project(String inputFileName)
 	{
@@ -75,6 +92,200 @@ public class Project
 				(outputFileName.length() - JSeatFileType.PROJECT.toString().length()));
 	}
 
+	/**
+     * @param classThreads The number of threads used to extract the classes of
+     *            a single version concurrently. 0 disables class level
+     *            concurrency.
+     */
+	public void setClassThreads(int classThreads)
+	{
+		if (me != null)
+			me.setClassThreads(classThreads);
+	}
+
+	/**
+     * @param profile How much of each class file is extracted.
+     */
+	public void setExtractionProfile(ExtractionProfile profile)
+	{
+		extractionProfile = profile;
+		if (me != null)
+			me.setExtractionProfile(profile);
+	}
+
+	/**
+     * Must be set before the project is loaded.
+     * 
+     * @param readAheadDepth The number of versions loaded ahead of the one a
+     *            report is at, in up to a quarter of the maximum heap. 0, the
+     *            default, disables reading ahead.
+     */
+	public void setReadAheadDepth(int readAheadDepth)
+	{
+		this.readAheadDepth = readAheadDepth;
+	}
+
+	/**
+     * Keeps recently used versions in up to a quarter of the maximum heap once
+     * the project has been loaded, as with <code>LoadType.CACHED</code>, so
+     * reports that ask for the same versions again do not read them again.
+     * Cached versions are shared by every report, so reports must not modify
+     * them. Must be set before the project is loaded.
+     * 
+     * @param cached Whether versions are cached. Defaults to false.
+     */
+	public void setCached(boolean cached)
+	{
+		this.cached = cached;
+	}
+
+	/**
+     * @param dataFormat The format the versions are written in.
+     */
+	public void setDataFormat(DataFormat dataFormat)
+	{
+		this.dataFormat = dataFormat;
+		if (me != null)
+			me.setDataFormat(dataFormat);
+	}
+
+	/**
+     * @param embeddedLibraries Whether libraries embedded in the versions, such
+     *            as the jars in WEB-INF/lib, are extracted along with them.
+     */
+	public void setEmbeddedLibraries(boolean embeddedLibraries)
+	{
+		if (me != null)
+			me.setEmbeddedLibraries(embeddedLibraries);
+	}
+
+	/**
+     * @param scheduler A scheduler, shared with other projects, whose threads
+     *            extract the versions of this project.
+     */
+	public void setScheduler(ExtractionScheduler scheduler)
+	{
+		if (me != null)
+			me.setScheduler(scheduler);
+	}
+
+	/**
+     * @param persisterThreads The number of versions that are persisted at
+     *            once.
+     */
+	public void setPersisterThreads(int persisterThreads)
+	{
+		if (me != null)
+			me.setPersisterThreads(persisterThreads);
+	}
+
+	/**
+     * @param versionTasks The number of versions extracted at once, each as a
+     *            task of its own. 0 extracts versions on the version threads.
+     */
+	public void setVersionTasks(int versionTasks)
+	{
+		if (me != null)
+			me.setVersionTasks(versionTasks);
+	}
+
+	/**
+     * @param virtualThreads Whether versions are extracted and persisted on
+     *            virtual threads, where the runtime supports them.
+     */
+	public void setVirtualThreads(boolean virtualThreads)
+	{
+		if (me != null)
+			me.setVirtualThreads(virtualThreads);
+	}
+
+	/**
+     * @param versionQueueSize The maximum number of extracted versions held in
+     *            memory waiting to be persisted. 0 is unbounded.
+     */
+	public void setVersionQueueSize(int versionQueueSize)
+	{
+		if (me != null)
+			me.setVersionQueueSize(versionQueueSize);
+	}
+
+	/**
+     * Appends to the project file being written, if it already exists, rather
+     * than rebuilding it. Only versions that are not yet in the project are
+     * extracted and post-processed, after which the project file is updated in
+     * place.
+     * 
+     * @param append Whether to append to an existing project.
+     */
+	public void setAppend(boolean append)
+	{
+		if (me == null)
+			return;
+		if (!append)
+		{
+			me.setExistingVersions(new HashSet<Integer>());
+			return;
+		}
+
+		File projectFile = new File(outputFileName);
+		if (!projectFile.exists())
+			return;
+		try
+		{
+			me.setExistingVersions(readExistingVersions(projectFile));
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Could not read existing project, rebuilding it: " + e);
+		}
+	}
+
+	/**
+     * @return The RSNs of the versions listed in the specified project file
+     *         whose data has been written.
+     */
+	private Set<Integer> readExistingVersions(File projectFile) throws IOException
+	{
+		Set<Integer> existing = new HashSet<Integer>();
+		BufferedReader br = new BufferedReader(new FileReader(projectFile));
+		try
+		{
+			String line;
+			while ((line = br.readLine()) != null)
+			{
+				if (line.startsWith("#") || line.startsWith("$") || line.trim().length() == 0)
+					continue;
+				String[] toks = line.split(",");
+				if (toks.length != 3)
+					continue;
+				File data = new File(toks[2].trim() + SerializeType.CLASSES.getExt());
+				if (data.exists() || BinaryConverter.exists(toks[2].trim()))
+					existing.add(Integer.parseInt(toks[0].trim()));
+			}
+		} finally
+		{
+			br.close();
+		}
+		return existing;
+	}
+
+	/**
+     * Restores classes that are unchanged between versions from an extraction
+     * cache rather than extracting them again. The cache is for the current
+     * extraction profile, so the profile must be set first.
+     * 
+     * @param persistent Whether the cache should be kept on disk next to the
+     *            project's data folder, so later builds can reuse it.
+     */
+	public void useExtractionCache(boolean persistent)
+	{
+		if (me == null)
+			return;
+		File cacheFile = null;
+		if (persistent)
+			cacheFile = new File(new File(outputFileName).getParent(), EXTRACTION_CACHE_FILE);
+		me.setExtractionCache(new ExtractionCache(cacheFile, extractionProfile));
+	}
+
 	public void addObserver(Observer observer)
 	{
 		if (observer != null)
@@ -119,6 +330,7 @@ public class Project
 	private void loadProjectFromFile() throws IOException
 	{
 		Map<Integer, String[]> history = new HashMap<Integer, String[]>();
+		LoadType loadType = LoadType.MINIMAL;
 
 		BufferedReader br = new BufferedReader(new FileReader(inputFileName));
 		while (br.ready())
@@ -129,6 +341,14 @@ public class Project
 			if (line.startsWith("#") || line.length() == 0 || line.matches("^_+"))
 				continue;
 
+			// Number of versions and the type their classes are stored as.
+			else if (line.matches("^\\$\\d+,.*"))
+			{
+				// Binary versions are mapped, so reports that only scan
+				// metrics never create the classes.
+				if (line.substring(line.indexOf(",") + 1).trim().equals(SerializeType.BINARY.toString()))
+					loadType = LoadType.MAPPED;
+			}
 			// Project data.
 			else if (line.startsWith("$") && (line.indexOf(",") != -1))
 			{
@@ -159,6 +379,19 @@ public class Project
 		}
 		// Clean up.
 		br.close();
+		if (hmd != null)
+		{
+			DataLoaderFactory factory = DataLoaderFactory.getInstance();
+			DataLoadingStrategy loader;
+			if (readAheadDepth > 0)
+				loader = factory.getReadAheadDataLoader(history, loadType, readAheadDepth, Runtime.getRuntime()
+						.maxMemory() / 4);
+			else
+				loader = factory.getDataLoader(history, loadType);
+			if (cached)
+				loader = factory.getCachingDataLoader(loader);
+			hmd.setDataLoader(loader);
+		}
 	}
 
 	private void writeNewProjectFile()
@@ -184,7 +417,7 @@ public class Project
 			bw.newLine();
 
 			// Write version information.
-			writeVersionFiles(bw, SerializeType.CLASSES);
+			writeVersionFiles(bw, dataFormat.getTypes()[0]);
 			bw.newLine();
 
 			// Write Visualizer code.
@@ -0,0 +1,98 @@
+package metric.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the named daemon threads that active objects and the stages of
+ * extraction run on. Threads can optionally be virtual threads, which are
+ * cheap enough to run thousands of I/O bound tasks at once. Virtual threads
+ * are only available on Java 21 or later, on older runtimes platform threads
+ * are created instead.
+ */
+public class WorkerThreadFactory implements ThreadFactory
+{
+	// Null if the runtime does not support virtual threads.
+	private static final Method ofVirtual, factory;
+	static
+	{
+		Method of = null, f = null;
+		try
+		{
+			of = Thread.class.getMethod("ofVirtual");
+			f = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+		} catch (Exception e)
+		{
+			of = f = null;
+		}
+		ofVirtual = of;
+		factory = f;
+	}
+
+	private final String name;
+	private final ThreadFactory virtualFactory;
+	private int created;
+
+	/**
+     * @param name The prefix of the names of the threads created.
+     */
+	public WorkerThreadFactory(String name)
+	{
+		this(name, false);
+	}
+
+	/**
+     * @param name The prefix of the names of the threads created.
+     * @param virtual Whether to create virtual threads, if the runtime
+     *            supports them.
+     */
+	public WorkerThreadFactory(String name, boolean virtual)
+	{
+		this.name = name;
+		this.virtualFactory = virtual ? createVirtualFactory() : null;
+	}
+
+	/**
+     * @return Whether the runtime supports virtual threads.
+     */
+	public static boolean isVirtualSupported()
+	{
+		return ofVirtual != null;
+	}
+
+	/**
+     * @return Whether the threads created are virtual threads.
+     */
+	public boolean isVirtual()
+	{
+		return virtualFactory != null;
+	}
+
+	public synchronized Thread newThread(Runnable r)
+	{
+		String threadName = name + "-" + (++created);
+		if (virtualFactory != null)
+		{
+			Thread t = virtualFactory.newThread(r);
+			t.setName(threadName);
+			return t;
+		}
+
+		Thread t = new Thread(r, threadName);
+		t.setDaemon(true);
+		return t;
+	}
+
+	private static ThreadFactory createVirtualFactory()
+	{
+		if (ofVirtual == null)
+			return null;
+		try
+		{
+			return (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+		} catch (Exception e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package metric.core.exception;
+
+/**
+ * Thrown by a report that has been cancelled whilst it was running.
+ */
+public class ReportCancelledException extends ReportException
+{
+	private static final long serialVersionUID = 1L;
+
+	public ReportCancelledException(String msg)
+	{
+		super(msg);
+	}
+}
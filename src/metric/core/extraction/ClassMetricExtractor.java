@@ -3,15 +3,16 @@ package metric.core.extraction;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.logging.Level;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import metric.core.io.InputData;
-import metric.core.io.InputDataSet;
 import metric.core.model.ClassMetricData;
 import metric.core.model.MethodMetricMap;
 import metric.core.util.logging.LogOrganiser;
 import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
 import metric.core.vocabulary.MethodMetric;
 import metric.core.vocabulary.TypeModifier;
 
@@ -27,19 +28,28 @@ public class ClassMetricExtractor
 {
 	private ClassNode classNode;
 
-	private InputDataSet ids;
 	private InputData idata;
 	public static int innerclassesProcessed = 0;
 
 	private Logger logger = Logger.getLogger(getClass().getSimpleName());
 	public static int METHODS_PROCESSED = 0;
 
-	public ClassMetricExtractor(InputData idata, InputDataSet ids) throws IOException
+	public ClassMetricExtractor(InputData idata) throws IOException
 	{
-		ClassReader cr = new ClassReader(idata.getInputStream());
+		this(idata, ExtractionProfile.FULL);
+	}
+
+	/**
+     * @param idata The class file to extract.
+     * @param profile The profile to extract with. The code of methods is
+     *            skipped if the profile does not read it.
+     */
+	public ClassMetricExtractor(InputData idata, ExtractionProfile profile) throws IOException
+	{
+		ClassReader cr = createClassReader(idata);
 		classNode = new ClassNode();
-		cr.accept(classNode, ClassReader.SKIP_DEBUG);
-		this.ids = ids;
+		cr.accept(classNode, profile.readsCode() ? ClassReader.SKIP_DEBUG : ClassReader.SKIP_DEBUG
+				| ClassReader.SKIP_CODE);
 		this.idata = idata;
 
 		// Log organiser should check whether this logger already exists first
@@ -47,6 +57,24 @@ public class ClassMetricExtractor
 		LogOrganiser.addLogger(logger);
 	}
 
+	/**
+     * Creates a ClassReader for the specified class file. Class files held in
+     * memory are parsed in place rather than copied from their stream.
+     */
+	static ClassReader createClassReader(InputData idata) throws IOException
+	{
+		if (idata.hasBytes())
+			return new ClassReader(idata.getBytes(), idata.getOffset(), idata.getLength());
+		return new ClassReader(idata.getInputStream());
+	}
+
+	/**
+     * Extracts the metrics of this class. Inner classes are extracted from
+     * their own class files and are not merged here, see
+     * <code>getInnerClassNames</code>.
+     * 
+     * @return The extracted ClassMetricData.
+     */
 	public ClassMetricData extract()
 	{
 		ClassMetricData cmd = new ClassMetricData();
@@ -54,65 +82,28 @@ public class ClassMetricExtractor
 		// Extract class related metrics.
 		extractClassMetrics(cmd);
 		// Update class statistics.
-		updateClassStats(cmd);
+		updateClassStats(cmd, classNode.access);
 		// Extract and create method metrics
 		extractAndMergeMethodMetrics(cmd);
 		// Extract dependencies from fields.
 		extractFieldDependencies(cmd);
 		// Extract dependencies from methods.
 		extractMethodDependencies(cmd);
-		// Extract, create and merge inner classes.
-		extractAndMergeInnerClasses(cmd);
-
 		cmd.setSimpleMetric(ClassMetric.FAN_OUT_COUNT, cmd.dependencies.size());
 
 		return cmd;
 	}
 
 	/**
-     * Extracts and merges inner class data with this class.
+     * @return The names of the inner classes listed by this class, in the order
+     *         they are declared.
      */
-	private void extractAndMergeInnerClasses(ClassMetricData cmd)
+	public List<String> getInnerClassNames()
 	{
-		Iterator it = classNode.innerClasses.iterator();
-		while (it.hasNext())
-		{
-			InnerClassNode icn = (InnerClassNode) it.next();
-			// Skip inner class processing if it has the same name as me (the
-			// parent class). Unsure of why this happens.
-			if (!icn.name.equals(classNode.name))
-			{
-				InputData innerStream = ids.getInputData(icn.name + ".class");
-				if (innerStream != null)
-				{
-					try
-					{
-						ClassMetricExtractor cme = new ClassMetricExtractor(innerStream, ids);
-						ClassMetricData innerClass = cme.extract();
-
-						// merge inner class metrics with this class.
-						cmd.mergeInnerClass(innerClass);
-
-						// Free up class as it is no longer needed.
-						innerClass.methods = null;
-						innerClass = null;
-					} catch (IOException e)
-					{
-						logger.log(Level.WARNING, e.toString());
-					} // handle for the moment.
-					catch (ArrayIndexOutOfBoundsException e)
-					{
-						// logger.log(Level.WARNING, e.toString());
-					}// handle for the moment.
-				} else
-				{
-					// System.out.println("Unable to get stream for: " +
-					// icn.name);
-				}
-			} else
-			{
-			} // skipping self
-		}
+		List<String> names = new ArrayList<String>(classNode.innerClasses.size());
+		for (Object icn : classNode.innerClasses)
+			names.add(((InnerClassNode) icn).name);
+		return names;
 	}
 
 	/**
@@ -145,7 +136,7 @@ public class ClassMetricExtractor
      * 
      * @param mmd The MethodMetricData.
      */
-	private void mergeMethodMetricsWithClass(ClassMetricData cmd, int[] mm)
+	static void mergeMethodMetricsWithClass(ClassMetricData cmd, int[] mm)
 	{
 		cmd.incrementMetric(ClassMetric.BRANCH_COUNT, mm[MethodMetric.BRANCH_COUNT.ordinal()]);
 		cmd.incrementMetric(ClassMetric.CONSTANT_LOAD_COUNT, mm[MethodMetric.CONSTANT_LOAD_COUNT.ordinal()]);
@@ -272,8 +263,11 @@ public class ClassMetricExtractor
      * Updates the super class name and various other statistics. Like whether
      * or not the class is an exception class, whether it is abstract, an
      * interface etc.
+     * 
+     * @param cmd The ClassMetricData.
+     * @param access The access flags of the class.
      */
-	private void updateClassStats(ClassMetricData cmd)
+	static void updateClassStats(ClassMetricData cmd, int access)
 	{
 		// Ignore java.lang.Object
 		if (!cmd.get(ClassMetric.SUPER_CLASS_NAME).equals("java/lang/Object"))
@@ -282,16 +276,16 @@ public class ClassMetricExtractor
 			cmd.setSimpleMetric(ClassMetric.IS_EXCEPTION, 1);
 		if (cmd.get(ClassMetric.SUPER_CLASS_NAME).equals("java/lang/Throwable"))
 			cmd.setSimpleMetric(ClassMetric.IS_EXCEPTION, 1);
-		if ((classNode.access & Opcodes.ACC_ABSTRACT) != 0)
+		if ((access & Opcodes.ACC_ABSTRACT) != 0)
 			cmd.setSimpleMetric(ClassMetric.IS_ABSTRACT, 1);
-		if ((classNode.access & Opcodes.ACC_INTERFACE) != 0)
+		if ((access & Opcodes.ACC_INTERFACE) != 0)
 			cmd.setSimpleMetric(ClassMetric.IS_INTERFACE, 1);
 
-		if ((classNode.access & Opcodes.ACC_PUBLIC) != 0)
+		if ((access & Opcodes.ACC_PUBLIC) != 0)
 			cmd.setSimpleMetric(ClassMetric.IS_PUBLIC, 1);
-		else if ((classNode.access & Opcodes.ACC_PRIVATE) != 0)
+		else if ((access & Opcodes.ACC_PRIVATE) != 0)
 			cmd.setSimpleMetric(ClassMetric.IS_PRIVATE, 1);
-		else if ((classNode.access & Opcodes.ACC_PROTECTED) != 0)
+		else if ((access & Opcodes.ACC_PROTECTED) != 0)
 			cmd.setSimpleMetric(ClassMetric.IS_PROTECTED, 1);
 	}
 
@@ -301,7 +295,7 @@ public class ClassMetricExtractor
      * @param cmd The ClassMetricData.
      * @param t The class type.
      */
-	private void addDependency(ClassMetricData cmd, Type t)
+	static void addDependency(ClassMetricData cmd, Type t)
 	{
 		if (t == null)
 			return; // do nothing
@@ -0,0 +1,28 @@
+package metric.core.extraction;
+
+import java.util.List;
+
+import metric.core.model.ClassMetricData;
+
+/**
+ * A class extracted without its inner classes, along with the names of the
+ * inner classes it declares.
+ */
+class ExtractedClass
+{
+	final String name;
+	final ClassMetricData cmd;
+	final List<String> innerClasses;
+
+	/**
+     * @param name The class file name without its extension.
+     * @param cmd The extracted class.
+     * @param innerClasses The names of the inner classes declared by the class.
+     */
+	ExtractedClass(String name, ClassMetricData cmd, List<String> innerClasses)
+	{
+		this.name = name;
+		this.cmd = cmd;
+		this.innerClasses = innerClasses;
+	}
+}
@@ -0,0 +1,318 @@
+package metric.core.extraction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import metric.core.io.InputData;
+import metric.core.io.InputDataSet;
+import metric.core.model.ClassMetricData;
+import metric.core.model.MethodMetricMap;
+import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
+
+/**
+ * Caches extracted classes by the name, size and CRC32 of their class files,
+ * so classes that are unchanged between versions are only parsed once. A cache
+ * can be shared by any number of <code>VersionExtractor</code>s and can be
+ * persisted to disk between runs.
+ *
+ * The cache is also the content filter of the input data sets being extracted,
+ * so the contents of cached class files are never read. The cached class is
+ * kept with the class file in their place, so it is restored even if it is
+ * evicted before the class file is extracted. A version whose jar is entirely
+ * unchanged is rebuilt from the cache without inflating or parsing any class
+ * file.
+ *
+ * Classes extracted with one profile must not be restored when extracting
+ * with another, so each cache is for a single profile. The cache holds up to a
+ * set number of classes, evicting the least recently used.
+ */
+public class ExtractionCache implements InputDataSet.ContentFilter
+{
+	/** The number of classes held if none is specified. */
+	public static final int DEFAULT_MAX_CLASSES = 50000;
+
+	// Bump whenever extraction changes the metrics it produces.
+	private static final int FORMAT_VERSION = 2;
+
+	private Logger logger = Logger.getLogger(getClass().getSimpleName());
+	// Access ordered, so iteration starts at the least recently used class.
+	private final LinkedHashMap<String, CachedClass> classes;
+	private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+	private final File file;
+	private final ExtractionProfile profile;
+	private final int maxClasses;
+
+	/**
+     * Creates an in-memory cache for the <code>FULL</code> profile.
+     */
+	public ExtractionCache()
+	{
+		this(null, ExtractionProfile.FULL);
+	}
+
+	/**
+     * Creates a cache of up to <code>DEFAULT_MAX_CLASSES</code> classes that
+     * is loaded from, and saved to, the specified file.
+     *
+     * @param file The cache file, or null for an in-memory cache. It does not
+     *            need to exist yet.
+     * @param profile The profile the cached classes are extracted with.
+     */
+	public ExtractionCache(File file, ExtractionProfile profile)
+	{
+		this(file, profile, DEFAULT_MAX_CLASSES);
+	}
+
+	/**
+     * @param file The cache file, or null for an in-memory cache. It does not
+     *            need to exist yet.
+     * @param profile The profile the cached classes are extracted with. A
+     *            file saved with another profile is ignored.
+     * @param maxClasses The number of classes held.
+     */
+	public ExtractionCache(File file, ExtractionProfile profile, int maxClasses)
+	{
+		this.file = file;
+		this.profile = profile;
+		this.maxClasses = Math.max(maxClasses, 1);
+		classes = new LinkedHashMap<String, CachedClass>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedClass> eldest)
+			{
+				return size() > ExtractionCache.this.maxClasses;
+			}
+		};
+		LogOrganiser.addLogger(logger);
+		if (file != null && file.exists())
+			load();
+	}
+
+	public Object getSubstitute(String name, long checksum, long size)
+	{
+		synchronized (classes)
+		{
+			return classes.get(key(name, checksum, size));
+		}
+	}
+
+	/**
+     * @param idata A class file with a known checksum.
+     * @param name The class file name without its extension.
+     * @return A copy of the cached class or null if it is not cached.
+     */
+	ExtractedClass get(InputData idata, String name)
+	{
+		CachedClass cached;
+		if (idata.getSubstitute() instanceof CachedClass)
+			cached = (CachedClass) idata.getSubstitute();
+		else
+		{
+			synchronized (classes)
+			{
+				cached = classes.get(key(idata.toString(), idata.getChecksum(), idata.getSize()));
+			}
+		}
+		if (cached == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return cached.restore(name, idata.getLastModifiedTime());
+	}
+
+	/**
+     * Caches a copy of the specified class. This must be called before the
+     * extracted class is modified, e.g. by merging inner classes into it.
+     *
+     * @param idata The class file it was extracted from, with a known
+     *            checksum.
+     */
+	void put(InputData idata, ExtractedClass extracted)
+	{
+		String key = key(idata.toString(), idata.getChecksum(), idata.getSize());
+		CachedClass cached = new CachedClass(extracted);
+		synchronized (classes)
+		{
+			if (!classes.containsKey(key))
+				classes.put(key, cached);
+		}
+	}
+
+	private static String key(String name, long checksum, long size)
+	{
+		return name + '#' + Long.toHexString(checksum) + ':' + size;
+	}
+
+	public int getHits()
+	{
+		return hits.get();
+	}
+
+	public int getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+     * @return The number of cached classes.
+     */
+	public int size()
+	{
+		synchronized (classes)
+		{
+			return classes.size();
+		}
+	}
+
+	/**
+     * @return The profile the cached classes were extracted with.
+     */
+	public ExtractionProfile getProfile()
+	{
+		return profile;
+	}
+
+	public int getMaxClasses()
+	{
+		return maxClasses;
+	}
+
+	/**
+     * @return Whether this cache is saved to a file.
+     */
+	public boolean isPersistent()
+	{
+		return file != null;
+	}
+
+	/**
+     * Saves this cache to its file. Does nothing for an in-memory cache.
+     *
+     * @throws IOException
+     */
+	public synchronized void save() throws IOException
+	{
+		if (file == null)
+			return;
+
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+				new FileOutputStream(file))));
+		try
+		{
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(ClassMetric.getNumberOfMetrics());
+			out.writeUTF(profile.name());
+			synchronized (classes)
+			{
+				// Least recently used first, so they are evicted first again.
+				out.writeObject(new LinkedHashMap<String, CachedClass>(classes));
+			}
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void load()
+	{
+		ObjectInputStream in = null;
+		try
+		{
+			in = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (in.readInt() == FORMAT_VERSION && in.readInt() == ClassMetric.getNumberOfMetrics()
+					&& in.readUTF().equals(profile.name()))
+			{
+				Map<String, CachedClass> saved = (Map<String, CachedClass>) in.readObject();
+				synchronized (classes)
+				{
+					classes.putAll(saved);
+				}
+			} else
+				logger.log(Level.WARNING, "Ignoring out of date extraction cache, or one for another profile: " + file);
+		} catch (Exception e)
+		{
+			logger.log(Level.WARNING, "Ignoring unreadable extraction cache: " + file + " " + e);
+		} finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				} catch (IOException e)
+				{
+				} // Nothing more to do.
+			}
+		}
+	}
+
+	private static HashMap<String, int[]> copyOf(HashMap<String, int[]> methods)
+	{
+		HashMap<String, int[]> copy = new HashMap<String, int[]>(methods.size() * 2);
+		for (Entry<String, int[]> method : methods.entrySet())
+			copy.put(method.getKey(), method.getValue().clone());
+		return copy;
+	}
+
+	/**
+     * An immutable snapshot of everything extraction produces for a class.
+     */
+	private static class CachedClass implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String name, superName;
+		private final int[] metrics;
+		private final String[] dependencies;
+		private final HashMap<String, int[]> methods;
+		private final String[] innerClasses;
+
+		public CachedClass(ExtractedClass extracted)
+		{
+			ClassMetricData cmd = extracted.cmd;
+			name = cmd.get(ClassMetric.NAME);
+			superName = cmd.get(ClassMetric.SUPER_CLASS_NAME);
+			metrics = cmd.getMetrics().clone();
+			dependencies = cmd.dependencies.toArray(new String[cmd.dependencies.size()]);
+			methods = copyOf(cmd.methods.methods());
+			innerClasses = extracted.innerClasses.toArray(new String[extracted.innerClasses.size()]);
+		}
+
+		public ExtractedClass restore(String fileName, long lastModified)
+		{
+			ClassMetricData cmd = new ClassMetricData();
+			System.arraycopy(metrics, 0, cmd.getMetrics(), 0, metrics.length);
+			cmd.setProperty(ClassMetric.NAME, name);
+			cmd.setProperty(ClassMetric.SUPER_CLASS_NAME, superName);
+			cmd.dependencies.addAll(Arrays.asList(dependencies));
+			cmd.methods = new MethodMetricMap(copyOf(methods));
+			cmd.lastModified = lastModified;
+			return new ExtractedClass(fileName, cmd, new ArrayList<String>(Arrays.asList(innerClasses)));
+		}
+	}
+}
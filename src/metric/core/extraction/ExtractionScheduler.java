@@ -0,0 +1,203 @@
+package metric.core.extraction;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import metric.core.util.logging.LogOrganiser;
+
+/**
+ * Extracts the versions of any number of projects on one shared set of
+ * threads, so the threads are kept busy until every project is done rather
+ * than idling while the last version of a single project is extracted.
+ *
+ * The version with the largest jar is always extracted next. Versions are
+ * post-processed in order though, so a version is only started once it is
+ * within a window of the first version of its project that has not been
+ * extracted yet. This bounds the number of versions each project holds on to
+ * while it waits for the versions before them.
+ */
+public class ExtractionScheduler
+{
+	private Logger logger = Logger.getLogger(getClass().getSimpleName());
+	private final List<ScheduledProject> projects = new ArrayList<ScheduledProject>();
+	private final List<Thread> workers = new ArrayList<Thread>();
+	private final int window;
+	private boolean shutdown;
+
+	/**
+     * Starts the specified number of extraction threads.
+     *
+     * @param numThreads The number of versions extracted at once.
+     * @param window How far ahead of the first version of a project that has
+     *            not been extracted yet later versions may be extracted.
+     */
+	public ExtractionScheduler(int numThreads, int window)
+	{
+		this.window = Math.max(window, 1);
+		LogOrganiser.addLogger(logger);
+
+		for (int i = 0; i < Math.max(numThreads, 1); i++)
+		{
+			Thread worker = new Thread(new Worker(), "ScheduledExtractor-" + (i + 1));
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+	}
+
+	/**
+     * Schedules the versions of a project. Each version is extracted by
+     * calling <code>doWork</code> on the specified extractor, which is never
+     * started itself.
+     *
+     * @param extractor The extractor configured for the project.
+     * @param versions The versions to extract, in RSN order, in the format the
+     *            extractor takes from its queue.
+     * @param versionPath The folder the jar files of the versions are in.
+     */
+	public synchronized void schedule(VersionExtractor extractor, List<String> versions, String versionPath)
+	{
+		ScheduledProject project = new ScheduledProject(extractor);
+		for (String version : versions)
+		{
+			File jar = new File(versionPath, version.split(",")[2].trim());
+			project.tasks.add(new Task(project, version, sizeOf(jar)));
+		}
+		projects.add(project);
+		notifyAll();
+	}
+
+	/**
+     * Drops the versions of the project with the specified extractor that
+     * have not been started yet.
+     */
+	public synchronized void cancel(VersionExtractor extractor)
+	{
+		for (Iterator<ScheduledProject> it = projects.iterator(); it.hasNext();)
+		{
+			if (it.next().extractor == extractor)
+				it.remove();
+		}
+	}
+
+	/**
+     * Stops the extraction threads once they finish the versions they are
+     * extracting. Versions that have not been started are dropped.
+     */
+	public synchronized void shutdown()
+	{
+		shutdown = true;
+		projects.clear();
+		notifyAll();
+	}
+
+	// Takes the largest version that is within the window of its project.
+	private synchronized Task next() throws InterruptedException
+	{
+		while (!shutdown)
+		{
+			Task largest = null;
+			for (ScheduledProject project : projects)
+			{
+				int end = Math.min(project.firstIncomplete + window, project.tasks.size());
+				for (int i = project.firstIncomplete; i < end; i++)
+				{
+					Task task = project.tasks.get(i);
+					if (!task.started && (largest == null || task.size > largest.size))
+						largest = task;
+				}
+			}
+			if (largest != null)
+			{
+				largest.started = true;
+				return largest;
+			}
+			wait();
+		}
+		return null;
+	}
+
+	private synchronized void completed(Task task)
+	{
+		ScheduledProject project = task.project;
+		task.completed = true;
+		while (project.firstIncomplete < project.tasks.size() && project.tasks.get(project.firstIncomplete).completed)
+			project.firstIncomplete++;
+		if (project.firstIncomplete == project.tasks.size())
+			projects.remove(project);
+		notifyAll();
+	}
+
+	private static long sizeOf(File file)
+	{
+		if (!file.isDirectory())
+			return file.length();
+
+		long size = 0;
+		File[] files = file.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+				size += sizeOf(f);
+		}
+		return size;
+	}
+
+	private class Worker implements Runnable
+	{
+		public void run()
+		{
+			try
+			{
+				Task task;
+				while ((task = next()) != null)
+				{
+					try
+					{
+						task.project.extractor.doWork(task.version);
+					} catch (RuntimeException e)
+					{
+						logger.log(Level.SEVERE, "Could not extract " + task.version + ": " + e);
+					} finally
+					{
+						completed(task);
+					}
+				}
+			} catch (InterruptedException e)
+			{
+				// Have been asked to stop.
+			}
+		}
+	}
+
+	private static class ScheduledProject
+	{
+		private final VersionExtractor extractor;
+		private final List<Task> tasks = new ArrayList<Task>();
+		private int firstIncomplete;
+
+		public ScheduledProject(VersionExtractor extractor)
+		{
+			this.extractor = extractor;
+		}
+	}
+
+	private static class Task
+	{
+		private final ScheduledProject project;
+		private final String version;
+		private final long size;
+		private boolean started, completed;
+
+		public Task(ScheduledProject project, String version, long size)
+		{
+			this.project = project;
+			this.version = version;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package metric.core.extraction;
+
+import java.util.Set;
+
+import metric.core.vocabulary.MethodMetric;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.EmptyVisitor;
+
+/**
+ * A single method visitor that updates every instruction related
+ * <code>MethodMetric</code> in one dispatch.
+ *
+ * One instance is intended to be reused for all methods of a class. Call
+ * <code>setMetrics</code> before visiting the instructions of each method so
+ * that counts are written to that method's metric array.
+ */
+public class InstructionMetricVisitor extends EmptyVisitor
+{
+	private final String className;
+	private final Set<String> dependencies;
+	protected int[] mm;
+
+	/**
+     * @param className The internal name of the class owning the visited
+     *            methods. Used to separate internal and external method calls.
+     * @param dependencies The set that method call owners are added to.
+     */
+	public InstructionMetricVisitor(String className, Set<String> dependencies)
+	{
+		this.className = className;
+		this.dependencies = dependencies;
+	}
+
+	/**
+     * Sets the method metric array that subsequent visits should update.
+     *
+     * @param mm The method metrics.
+     */
+	public void setMetrics(int[] mm)
+	{
+		this.mm = mm;
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var)
+	{
+		if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.DLOAD)
+			mm[MethodMetric.ILOAD_COUNT.ordinal()]++;
+		else if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.DSTORE)
+			mm[MethodMetric.ISTORE_COUNT.ordinal()]++;
+		else if (opcode == Opcodes.ALOAD)
+			mm[MethodMetric.REF_LOAD_OP_COUNT.ordinal()]++;
+		else if (opcode == Opcodes.ASTORE)
+			mm[MethodMetric.REF_STORE_OP_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitTryCatchBlock(Label start, Label end, Label handler, String type)
+	{
+		mm[MethodMetric.TRY_CATCH_BLOCK_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String desc)
+	{
+		if (opcode == Opcodes.PUTFIELD || opcode == Opcodes.PUTSTATIC)
+			mm[MethodMetric.STORE_FIELD_COUNT.ordinal()]++;
+		else if (opcode == Opcodes.GETFIELD || opcode == Opcodes.GETSTATIC)
+			mm[MethodMetric.LOAD_FIELD_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String desc)
+	{
+		if (opcode == Opcodes.INSTANCEOF)
+			mm[MethodMetric.INSTANCE_OF_COUNT.ordinal()]++;
+		else if (opcode == Opcodes.CHECKCAST)
+			mm[MethodMetric.CHECK_CAST_COUNT.ordinal()]++;
+		else if (opcode == Opcodes.NEW)
+		{
+			mm[MethodMetric.TYPE_CONSTRUCTION_COUNT.ordinal()]++;
+			mm[MethodMetric.NEW_COUNT.ordinal()]++;
+		} else if (opcode == Opcodes.ANEWARRAY)
+		{
+			mm[MethodMetric.TYPE_CONSTRUCTION_COUNT.ordinal()]++;
+			mm[MethodMetric.NEW_ARRAY_COUNT.ordinal()]++;
+		}
+
+		mm[MethodMetric.TYPE_INSN_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitInsn(int opcode)
+	{
+		mm[MethodMetric.ZERO_OP_INSN_COUNT.ordinal()]++;
+		if (opcode == Opcodes.ATHROW)
+		{
+			// TODO: Remove this later.
+			mm[MethodMetric.BRANCH_COUNT.ordinal()]++;
+			mm[MethodMetric.THROW_COUNT.ordinal()]++;
+		}
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label)
+	{
+		if (opcode != Opcodes.GOTO)
+			mm[MethodMetric.BRANCH_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels)
+	{
+		mm[MethodMetric.BRANCH_COUNT.ordinal()] += labels.length;
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels)
+	{
+		mm[MethodMetric.BRANCH_COUNT.ordinal()] += labels.length;
+	}
+
+	@Override
+	public void visitLdcInsn(Object cst)
+	{
+		mm[MethodMetric.CONSTANT_LOAD_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitIincInsn(int var, int increment)
+	{
+		mm[MethodMetric.INCREMENT_OP_COUNT.ordinal()]++;
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc)
+	{
+		mm[MethodMetric.METHOD_CALL_COUNT.ordinal()]++;
+		if (owner.equals(className))
+			mm[MethodMetric.IN_METHOD_CALL_COUNT.ordinal()]++;
+		else
+			mm[MethodMetric.EX_METHOD_CALL_COUNT.ordinal()]++;
+		dependencies.add(owner);
+	}
+}
@@ -8,12 +8,9 @@ import java.util.Set;
 import metric.core.vocabulary.MethodMetric;
 import metric.core.vocabulary.TypeModifier;
 
-import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.util.TraceMethodVisitor;
 
 /**
  * Extracts and returns a list of<code>MethodMetricData</code> objects for
@@ -25,11 +22,13 @@ public class MethodMetricExtractor
 {
 	private ClassNode classNode;
 	private Set<String> dependencies;
-	
+	private InstructionMetricVisitor instructionVisitor;
+
 	public MethodMetricExtractor(ClassNode classNode)
 	{
 		this.classNode = classNode;
 		dependencies = new HashSet<String>();
+		instructionVisitor = new InstructionMetricVisitor(classNode.name, dependencies);
 	}
 
 	/**
@@ -48,10 +47,10 @@ public class MethodMetricExtractor
 			methodMetrics[MethodMetric.LOCAL_VAR_COUNT.ordinal()] = methodNode.maxLocals;
 
 			// Update method scope.
-			extractAndSetScope(methodNode, methodMetrics);
+			extractAndSetScope(methodNode.access, classNode.access, methodMetrics);
 
 			// Update type modifiers.
-			extractAndUpdateTypeModifiers(methodNode, methodMetrics);
+			extractAndUpdateTypeModifiers(methodNode.access, methodMetrics);
 
 			// Extract and update instructions.
 			if (methodNode.instructions.size() > 0)
@@ -65,38 +64,39 @@ public class MethodMetricExtractor
 	}
 
 	/**
-     * Extracts the scope of the specified MethodNode and updates the specified
-     * MethodMetricData.
+     * Extracts the scope of a method from its access flags and updates the
+     * specified MethodMetricData.
      * 
-     * @param methodNode The MethodNode.
+     * @param access The access flags of the method.
+     * @param classAccess The access flags of the class declaring the method.
      * @param mmd The MethodMetricData.
      */
-	private void extractAndSetScope(MethodNode methodNode, int[] mm)
+	static void extractAndSetScope(int access, int classAccess, int[] mm)
 	{
-		if ((methodNode.access & Opcodes.ACC_PRIVATE) != 0)
+		if ((access & Opcodes.ACC_PRIVATE) != 0)
 			mm[MethodMetric.SCOPE.ordinal()] = TypeModifier.PRIVATE.ordinal();
-		else if ((methodNode.access & Opcodes.ACC_PROTECTED) != 0)
+		else if ((access & Opcodes.ACC_PROTECTED) != 0)
 			mm[MethodMetric.SCOPE.ordinal()] = TypeModifier.PROTECTED.ordinal();
-		else if (((methodNode.access & Opcodes.ACC_PUBLIC) != 0) && ((classNode.access & Opcodes.ACC_PUBLIC) != 0))
+		else if (((access & Opcodes.ACC_PUBLIC) != 0) && ((classAccess & Opcodes.ACC_PUBLIC) != 0))
 			mm[MethodMetric.SCOPE.ordinal()] = TypeModifier.PUBLIC.ordinal();
 	}
 
 	/**
-     * Extracts any type modifiers specified for MethodNode and updates the
-     * specified MethodMetricData with these modifers.
+     * Extracts any type modifiers specified in the access flags of a method and
+     * updates the specified MethodMetricData with these modifers.
      * 
-     * @param methodNode The MethodNode.
+     * @param access The access flags of the method.
      * @param mmd The MethodMetricData.
      */
-	private void extractAndUpdateTypeModifiers(MethodNode methodNode, int[] mm)
+	static void extractAndUpdateTypeModifiers(int access, int[] mm)
 	{
-		if ((methodNode.access & Opcodes.ACC_ABSTRACT) != 0)
+		if ((access & Opcodes.ACC_ABSTRACT) != 0)
 			mm[MethodMetric.IS_ABSTRACT.ordinal()] = 1;
-		if ((methodNode.access & Opcodes.ACC_FINAL) != 0)
+		if ((access & Opcodes.ACC_FINAL) != 0)
 			mm[MethodMetric.IS_FINAL.ordinal()] = 1;
-		if ((methodNode.access & Opcodes.ACC_STATIC) != 0)
+		if ((access & Opcodes.ACC_STATIC) != 0)
 			mm[MethodMetric.IS_STATIC.ordinal()] = 1;
-		if ((methodNode.access & Opcodes.ACC_SYNCHRONIZED) != 0)
+		if ((access & Opcodes.ACC_SYNCHRONIZED) != 0)
 			mm[MethodMetric.IS_SYNCHRONIZED.ordinal()] = 1;
 	}
 
@@ -109,233 +109,11 @@ public class MethodMetricExtractor
      */
 	private void extractInstructions(MethodNode methodNode, int[] mm)
 	{
-		for (int i = 0; i < methodNode.instructions.size(); ++i)
-		{
-			// Get instruction node.
-			Object insn = methodNode.instructions.get(i);
-			// Have it accept our visitors and update the provided
-			// MethodMetricData.
-			((AbstractInsnNode) insn).accept(getVariableInstructionVisitor(mm));
-			// Try/Catch blocks.
-			((AbstractInsnNode) insn).accept(getTryCatchBlockVisitor(mm));
-			// Fields.
-			((AbstractInsnNode) insn).accept(getFieldVisitor(mm));
-			// Jump/branching.
-			((AbstractInsnNode) insn).accept(getJumpInstructionVisitor(mm));
-			// Switching.
-			((AbstractInsnNode) insn).accept(getSwitchVisitor(mm));
-			// Op/Loads.
-			((AbstractInsnNode) insn).accept(getOpAndLoadVisitor(mm));
-			// Type.
-			((AbstractInsnNode) insn).accept(getTypeVisitor(mm));
-			// Methods.
-			((AbstractInsnNode) insn).accept(getMethodVisitor(mm, dependencies));
-		}
-	}
-
-	/**
-     * A visitor for updating variable instruction counts.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getVariableInstructionVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitVarInsn(int opcode, int var)
-			{
-				if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.DLOAD)
-				{
-					mm[MethodMetric.ILOAD_COUNT.ordinal()]++;
-				}
-				if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.DSTORE)
-				{
-					mm[MethodMetric.ISTORE_COUNT.ordinal()]++;
-				}
-				if (opcode == Opcodes.ALOAD)
-				{
-					mm[MethodMetric.REF_LOAD_OP_COUNT.ordinal()]++;
-				}
-				if (opcode == Opcodes.ASTORE)
-				{
-					mm[MethodMetric.REF_STORE_OP_COUNT.ordinal()]++;
-				}
-			}
-		};
-		return mv;
-	}
-
-	/**
-     * A visitor for updating try-catch block occurrences.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getTryCatchBlockVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitTryCatchBlock(Label start, Label end, Label handler, String type)
-			{
-				mm[MethodMetric.TRY_CATCH_BLOCK_COUNT.ordinal()]++;
-			}
-		};
-		return mv;
-	}
-
-	/**
-     * A visitor for updating field instructions.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getFieldVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitFieldInsn(int opcode, String owner, String name, String desc)
-			{
-				if (opcode == Opcodes.PUTFIELD || opcode == Opcodes.PUTSTATIC)
-				{
-					mm[MethodMetric.STORE_FIELD_COUNT.ordinal()]++;
-				} else if (opcode == Opcodes.GETFIELD || opcode == Opcodes.GETSTATIC)
-				{
-					mm[MethodMetric.LOAD_FIELD_COUNT.ordinal()]++;
-				}
-			}
-		};
-		return mv;
-	}
-
-	/**
-     * A visitor for updating type counts.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getTypeVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitTypeInsn(int opcode, String desc)
-			{
-            	if (opcode == Opcodes.INSTANCEOF) {mm[MethodMetric.INSTANCE_OF_COUNT.ordinal()]++;}
-            	if (opcode == Opcodes.CHECKCAST) {mm[MethodMetric.CHECK_CAST_COUNT.ordinal()]++;}
-				
-            	if (opcode == Opcodes.NEW)
-            	{
-            		mm[MethodMetric.TYPE_CONSTRUCTION_COUNT.ordinal()]++;
-            		mm[MethodMetric.NEW_COUNT.ordinal()]++;
-            	}
-
-            	if (opcode == Opcodes.ANEWARRAY)
-            	{
-            		mm[MethodMetric.TYPE_CONSTRUCTION_COUNT.ordinal()]++;
-            		mm[MethodMetric.NEW_ARRAY_COUNT.ordinal()]++;
-            	}
-
-				mm[MethodMetric.TYPE_INSN_COUNT.ordinal()]++;
-			}
-
-			public void visitInsn(int opcode)
-			{
-				mm[MethodMetric.ZERO_OP_INSN_COUNT.ordinal()]++;
-				if (opcode == Opcodes.ATHROW)
-				{
-					// TODO: Remove this later.
-					mm[MethodMetric.BRANCH_COUNT.ordinal()]++;
-					mm[MethodMetric.THROW_COUNT.ordinal()]++;
-				}
-			}
-		};
-		return mv;
-	}
-
-	/**
-     * A visitor for updating jump/branching counts.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getJumpInstructionVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitJumpInsn(int opcode, Label label)
-			{
-				if (opcode != Opcodes.GOTO)
-				{
-					mm[MethodMetric.BRANCH_COUNT.ordinal()]++;
-				}
-			}
-		};
-		return mv;
+		// A single visitor updates every instruction metric per dispatch.
+		instructionVisitor.setMetrics(mm);
+		methodNode.instructions.accept(instructionVisitor);
 	}
 
-	/**
-     * A visitor for updating switch statement branching.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getSwitchVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels)
-			{
-				mm[MethodMetric.BRANCH_COUNT.ordinal()] += labels.length;
-			}
-
-			public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels)
-			{
-				mm[MethodMetric.BRANCH_COUNT.ordinal()] += labels.length;
-			}
-		};
-		return mv;
-	}
-
-	/**
-     * A visitor for updating op and load counts.
-     * 
-     * @param mmd The MethodMetricData that should be updated.
-     * @return The TraceMethodVisitor.
-     */
-	private TraceMethodVisitor getOpAndLoadVisitor(final int[] mm)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitLdcInsn(Object cst)
-			{
-				mm[MethodMetric.CONSTANT_LOAD_COUNT.ordinal()]++;
-			}
-
-			public void visitIincInsn(int var, int increment)
-			{
-				mm[MethodMetric.INCREMENT_OP_COUNT.ordinal()]++;
-			}
-		};
-		return mv;
-	}
-
-	private TraceMethodVisitor getMethodVisitor(final int[] mm, final Set<String> dependencies)
-	{
-		TraceMethodVisitor mv = new TraceMethodVisitor()
-		{
-			public void visitMethodInsn(int opcode, String owner, String n, String d)
-			{
-				mm[MethodMetric.METHOD_CALL_COUNT.ordinal()]++;
-				if (owner.equals(classNode.name))
-					mm[MethodMetric.IN_METHOD_CALL_COUNT.ordinal()]++;
-				else
-					mm[MethodMetric.EX_METHOD_CALL_COUNT.ordinal()]++;
-				dependencies.add(owner);
-			}
-		};
-		return mv;
-	}
-	
 	public Set<String> dependencies()
 	{
 		return dependencies;
@@ -2,21 +2,31 @@ package metric.core.extraction;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import metric.core.WorkerThreadFactory;
+import metric.core.io.DirectoryReader;
 import metric.core.io.TextFile;
 import metric.core.model.HistoryMetricData;
 import metric.core.model.VersionMetricData;
 import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.DataFormat;
+import metric.core.vocabulary.ExtractionEngine;
+import metric.core.vocabulary.ExtractionProfile;
 import metric.core.vocabulary.History;
 import metric.core.vocabulary.LoadType;
 
@@ -31,7 +41,7 @@ public class MetricEngine extends Observable implements Observer
 	private Logger logger = Logger.getLogger(getClass().getSimpleName());
 
 	private BlockingQueue<String> inputQueue;
-	private BlockingQueue<VersionMetricData> outputQueue;
+	private BlockingQueue<VersionMetricData> outputQueue, persistQueue;
 	private Map<Integer, String[]> history;
 
 	private Set<VersionExtractor> versionExtractors;
@@ -43,12 +53,27 @@ public class MetricEngine extends Observable implements Observer
 
 	private long bytesProcessed, loadTime, extractTime, processTime;
 
-	private int workDone, workToProcess, completion, numVersions;
+	private int workDone, workToProcess, completion, numVersions, numToExtract;
 	private Object workLock;
-	public boolean interrupted;
+	public volatile boolean interrupted;
 
 	private final int NUM_OF_STAGES = 3;
 	private final int numThreads;
+	private ExtractionEngine extractionEngine = ExtractionEngine.TREE;
+	private ExtractionProfile extractionProfile = ExtractionProfile.FULL;
+	private int classThreads, persisterThreads = 1;
+	private int versionTasks;
+	private int versionQueueSize;
+	private int readThreads = DirectoryReader.DEFAULT_THREADS;
+	private boolean embeddedLibraries;
+	private DataFormat dataFormat = DataFormat.CSV;
+	private boolean virtualThreads;
+	private ExecutorService classPool, stagePool, readPool;
+	private ExtractionCache extractionCache;
+	private ExtractionScheduler scheduler;
+	private VersionExtractor scheduledExtractor;
+	private Set<Integer> existingVersions = new HashSet<Integer>();
+	private int firstNewVersion = Integer.MAX_VALUE;
 
 	/**
      * Initialises the MetricEngine with the specified versions file. Version
@@ -65,7 +90,9 @@ public class MetricEngine extends Observable implements Observer
 		this.inputFileName = inputFileName;
 		this.outputFilename = outputFileName;
 		inputQueue = new LinkedBlockingQueue<String>();
-		outputQueue = new LinkedBlockingQueue<VersionMetricData>();
+		versionQueueSize = Math.max(numThreads, 1) * 2;
+		outputQueue = new LinkedBlockingQueue<VersionMetricData>(versionQueueSize);
+		persistQueue = new LinkedBlockingQueue<VersionMetricData>(versionQueueSize);
 		history = new HashMap<Integer, String[]>();
 		versionExtractors = new HashSet<VersionExtractor>();
 		bytesProcessed = 0l;
@@ -143,6 +170,10 @@ public class MetricEngine extends Observable implements Observer
 		// Setup the data folder that we will be writing to.
 		setupDataFolder();
 
+		// Versions are extracted in RSN order, whatever order they are listed
+		// in, as post-processing waits for them in that order.
+		Map<Integer, String> toExtract = new TreeMap<Integer, String>();
+
 		// InputDataSet input
 		for (String line : f)
 		{
@@ -166,17 +197,25 @@ public class MetricEngine extends Observable implements Observer
 			if (cols.length != 3)
 				continue; // bad data -- skip line
 
-			inputQueue.offer(line.trim() + "," + shortName);
 			numVersions++;
-
 			int version = Integer.parseInt(cols[0].trim());
+
+			// Versions already in the project are not extracted again.
+			if (!existingVersions.contains(version))
+			{
+				toExtract.put(version, line.trim() + "," + shortName);
+				firstNewVersion = Math.min(firstNewVersion, version);
+			}
+
 			String file = dataFolder + File.separator + version;
 
 			String[] aVersion = { shortName + "-" + cols[1].trim(), file };
 			history.put(version, aVersion);
 		}
 		f.close();
-		workToProcess = history.size() * NUM_OF_STAGES;
+		inputQueue.addAll(toExtract.values());
+		numToExtract = toExtract.size();
+		workToProcess = numToExtract * NUM_OF_STAGES;
 	}
 
 	private void setupDataFolder()
@@ -195,85 +234,148 @@ public class MetricEngine extends Observable implements Observer
 	private void startExtractors()
 	{
 		File versionFile = new File(inputFileName);
+		if (classThreads > 0)
+			classPool = Executors.newFixedThreadPool(classThreads, new WorkerThreadFactory("ClassExtractor"));
+		if (versionTasks > 0 || virtualThreads)
+			stagePool = Executors.newCachedThreadPool(new WorkerThreadFactory("Stage", virtualThreads));
+		// Directories of class files are read on the stage threads where
+		// there are any, and otherwise on threads shared by every version.
+		readPool = stagePool;
+		if (readPool == null)
+			readPool = Executors.newCachedThreadPool(new WorkerThreadFactory("DirectoryReader"));
+
+		if (scheduler != null)
+		{
+			// The scheduler's threads extract the versions with this extractor.
+			scheduledExtractor = createExtractor("VersionExtractor", versionFile);
+			List<String> versions = new ArrayList<String>();
+			inputQueue.drainTo(versions);
+			scheduler.schedule(scheduledExtractor, versions, versionFile.getParent());
+			return;
+		}
+
+		if (versionTasks > 0)
+		{
+			// One extractor extracts each version as a task of its own.
+			VersionExtractor extractor = createExtractor("VersionExtractor", versionFile);
+			extractor.setExecutor(stagePool);
+			extractor.setTaskExecutor(stagePool, versionTasks);
+			extractor.start();
+			versionExtractors.add(extractor);
+			return;
+		}
+
 		for (int i = 0; i < numThreads; i++)
 		{
-			VersionExtractor extractor = new VersionExtractor("VersionExtractor-" + (i + 1), inputQueue, outputQueue,
-					versionFile.getParent());
-			extractor.addObserver(this);
+			VersionExtractor extractor = createExtractor("VersionExtractor-" + (i + 1), versionFile);
+			extractor.setExecutor(stagePool);
 			extractor.start();
 			versionExtractors.add(extractor);
 		}
 	}
 
-	private void startPersister() throws InterruptedException
+	private VersionExtractor createExtractor(String name, File versionFile)
 	{
-		// Persist to disk as we process.
-		versionPersister = new VersionPersister("VersionPersister", outputQueue, dataFolder);
-		versionPersister.start();
+		VersionExtractor extractor = new VersionExtractor(name, inputQueue, outputQueue, versionFile.getParent(),
+				extractionEngine);
+		extractor.setClassPool(classPool);
+		extractor.setExtractionProfile(extractionProfile);
+		extractor.setReadThreads(readThreads, readPool);
+		extractor.setEmbeddedLibraries(embeddedLibraries);
+		// Classes extracted with another profile must not be restored, and
+		// classes that are only partly extracted are not cached.
+		if (extractionProfile.readsCode() && extractionCache != null
+				&& extractionCache.getProfile() == extractionProfile)
+			extractor.setExtractionCache(extractionCache);
+		extractor.setPostProcessor(versionPostProcessor);
+		extractor.addObserver(this);
+		return extractor;
+	}
 
-		// Wait for persister to finish...
-		// int persisted = 0, checkPersisted;
-		while (versionPersister != null && versionPersister.getProcessingDone() != numVersions)
-		{
-			Thread.sleep(100);
-		}
+	private void startPersister()
+	{
+		// Persist to disk as versions are post-processed.
+		versionPersister = new VersionPersister("VersionPersister", persistQueue, dataFolder, persisterThreads,
+				new WorkerThreadFactory("VersionPersister-Writer", virtualThreads));
+		versionPersister.setExecutor(stagePool);
+		versionPersister.setDataFormat(dataFormat);
+		versionPersister.start();
 	}
 
-	public void performPostProcessing(HistoryMetricData hmd, VersionPersister persister) throws InterruptedException
+	private void createPostProcessor(HistoryMetricData hmd)
 	{
-		versionPostProcessor = new VersionPostProcessor(hmd, outputQueue, persister);
+		versionPostProcessor = new VersionPostProcessor(hmd, persistQueue);
+		versionPostProcessor.setFirstVersion(Math.min(firstNewVersion, hmd.size()));
+		// Versions taken early by post-processing are counted against the
+		// queue, so at most the queue size and one version per extractor are
+		// held at once. The scheduler bounds the versions it starts itself.
+		if (versionQueueSize > 0 && scheduler == null)
+			versionPostProcessor.setWindow(versionQueueSize + (versionTasks > 0 ? versionTasks : numThreads));
+		// Each extractor performs the first pass on the versions it extracts.
+		versionPostProcessor.setFirstPassOnExtraction(true);
 		versionPostProcessor.addObserver(this);
-		versionPostProcessor.process();
-
-		// At the moment this will not be executed concurrently because the
-		// thread performing the post processing is this thead. So it it not
-		// really needed, but left in here in case post-processing is shifted to
-		// another thread.
+	}
 
-		// Wait for persister to finish...
-		while (persister != null && persister.getProcessingDone() != numVersions)
+	/**
+     * Post-processes versions as they are extracted and waits for them all to
+     * be persisted.
+     * 
+     * @param persister The persister post-processed versions are handed to.
+     * @throws InterruptedException
+     */
+	public void performPostProcessing(VersionPersister persister) throws InterruptedException
+	{
+		VersionPostProcessor postProcessor = versionPostProcessor;
+		if (postProcessor == null)
+			throw new InterruptedException("Interrupted whilst post-processing versions.");
+		try
+		{
+			postProcessor.process(outputQueue, numToExtract);
+		} catch (InterruptedException e)
 		{
-			Thread.sleep(100);
-			System.out.println("Waiting for post to finish.");
-			// // if (checkPersisted > persisted)
-			// // {
-			// // // synchronized (workLock)
-			// // // {
-			// // // workDone++;
-			// // // System.out.println("Post processing workDone: " +
-			// workDone);
-			// // // this.completion = (int) (((double) workDone / (double)
-			// // workToProcess) * 100);
-			// // // }
-			// // persisted = checkPersisted;
-			// // }
+			if (interrupted)
+				throw new InterruptedException("Interrupted whilst post-processing versions.");
+			throw e;
 		}
+
+		// Wait for persister to finish...
+		persister.awaitProcessingDone(postProcessor.getVersionsToPersist());
 		persister.stop();
+		if (interrupted)
+			throw new InterruptedException("Interrupted whilst persisting versions.");
 	}
 
 	private HistoryMetricData build() throws IOException, InterruptedException
 	{
 		loadDataSet();
 
+		// Need to use maximal data loading for post procesing.
+		HistoryMetricData hmd = new HistoryMetricData(productName, history, LoadType.MAXIMAL);
+		hmd.setSimpleMetric(History.VERSIONS, numVersions);
+
+		// Nothing to append.
+		if (numToExtract == 0)
+			return hmd;
+		if (interrupted)
+			throw new InterruptedException("Interrupted whilst loading versions.");
+
 		// Start the extractors.
+		createPostProcessor(hmd);
 		startExtractors();
 
 		// Start the VersionPersister
 		startPersister();
 
-		// Need to use maximal data loading for post procesing.
-		HistoryMetricData hmd = new HistoryMetricData(productName, history, LoadType.MAXIMAL);
-		hmd.setSimpleMetric(History.VERSIONS, numVersions);
-
-		// Don't stop persister, but reset it so we can use it again to
-		// re-persist after post processing.
-
-		versionPersister.reset();
+		// Post-process versions as they are extracted. Each version is only
+		// persisted once post-processing is done with it.
+		performPostProcessing(versionPersister);
 
-		// Start the post-processing. The post-processing will put processed
-		// work back onto the same queue the persister takes work from, so it
-		// will be automatically re-persisted to file.
-		performPostProcessing(hmd, versionPersister);
+		// All versions have been extracted.
+		stopExtractors();
+		stopClassPool();
+		stopStagePool();
+		stopReadPool();
+		saveExtractionCache();
 
 		return hmd;
 	}
@@ -287,6 +389,236 @@ public class MetricEngine extends Observable implements Observer
 		this.showProcessing = showProcessing;
 	}
 
+	/**
+     * @param extractionEngine The engine used to extract metrics from class
+     *            files. Defaults to <code>ExtractionEngine.TREE</code>.
+     */
+	public final void setExtractionEngine(ExtractionEngine extractionEngine)
+	{
+		this.extractionEngine = extractionEngine;
+	}
+
+	/**
+     * @param extractionProfile How much of each class file is extracted.
+     *            Defaults to <code>ExtractionProfile.FULL</code>. The profile
+     *            is recorded with the persisted versions.
+     */
+	public final void setExtractionProfile(ExtractionProfile extractionProfile)
+	{
+		this.extractionProfile = extractionProfile;
+	}
+
+	/**
+     * Versions that are directories of class files, such as exploded build
+     * outputs, are read with several threads at once so extraction is not
+     * held up by the latency of opening each file.
+     * 
+     * @param readThreads The number of class files each version extractor
+     *            reads at once. Defaults to
+     *            <code>DirectoryReader.DEFAULT_THREADS</code>.
+     */
+	public final void setReadThreads(int readThreads)
+	{
+		this.readThreads = readThreads;
+	}
+
+	/**
+     * @param dataFormat The format versions are written in. Defaults to
+     *            <code>DataFormat.CSV</code>. Versions are loaded in whichever
+     *            format they were written in.
+     */
+	public final void setDataFormat(DataFormat dataFormat)
+	{
+		this.dataFormat = dataFormat;
+	}
+
+	/**
+     * Versions may be web or enterprise applications, or jars that contain
+     * other jars. Their nested archives are read without being extracted, but
+     * the libraries they embed in a lib folder, such as WEB-INF/lib, are only
+     * read if asked for.
+     * 
+     * @param embeddedLibraries Whether embedded libraries are extracted as
+     *            part of each version. Defaults to false.
+     */
+	public final void setEmbeddedLibraries(boolean embeddedLibraries)
+	{
+		this.embeddedLibraries = embeddedLibraries;
+	}
+
+	/**
+     * Extracts the classes of each version concurrently on a pool of the
+     * specified size that is shared by all version extractors. This allows
+     * histories with only a few, very large versions to use every core.
+     * 
+     * @param classThreads The number of class extraction threads. 0 (the
+     *            default) extracts classes on the version extractor threads.
+     */
+	public final void setClassThreads(int classThreads)
+	{
+		this.classThreads = classThreads;
+	}
+
+	/**
+     * Persists up to the specified number of versions at once. The classes,
+     * methods and dependencies of each version are always written
+     * concurrently.
+     *
+     * @param persisterThreads The number of versions persisted at once.
+     *            Defaults to 1.
+     */
+	public final void setPersisterThreads(int persisterThreads)
+	{
+		this.persisterThreads = persisterThreads;
+	}
+
+	/**
+     * Extracts up to the specified number of versions at once, each as a task
+     * of its own, instead of on a fixed number of version extractor threads.
+     * This sets the concurrency of extraction independently of the number of
+     * version threads, which then only sizes the version queues.
+     * 
+     * @param versionTasks The number of versions extracted at once. 0 (the
+     *            default) extracts versions on the version threads.
+     */
+	public final void setVersionTasks(int versionTasks)
+	{
+		this.versionTasks = versionTasks;
+	}
+
+	/**
+     * Runs the version extractors, the persister, and the tasks that extract
+     * versions and write files on virtual threads, so that thousands of
+     * versions and files can be read and written at once. Class extraction is
+     * CPU bound and stays on platform threads. Has no effect on runtimes that
+     * do not support virtual threads.
+     * 
+     * @param virtualThreads Whether to use virtual threads.
+     */
+	public final void setVirtualThreads(boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+     * Bounds the number of versions that can wait to be post-processed, and
+     * to be persisted. Extractors block once the queues are full, which bounds
+     * the number of versions held in memory at a time. Must be set before
+     * processing starts.
+     *
+     * @param versionQueueSize The maximum number of queued versions. Defaults
+     *            to twice the number of version threads, 0 is unbounded.
+     */
+	public final void setVersionQueueSize(int versionQueueSize)
+	{
+		this.versionQueueSize = versionQueueSize;
+		if (versionQueueSize > 0)
+		{
+			outputQueue = new LinkedBlockingQueue<VersionMetricData>(versionQueueSize);
+			persistQueue = new LinkedBlockingQueue<VersionMetricData>(versionQueueSize);
+		} else
+		{
+			outputQueue = new LinkedBlockingQueue<VersionMetricData>();
+			persistQueue = new LinkedBlockingQueue<VersionMetricData>();
+		}
+	}
+
+	/**
+     * Extracts versions on the threads of the specified scheduler, which can
+     * be shared by the engines of many projects, instead of on threads owned
+     * by this engine.
+     * 
+     * @param scheduler The shared scheduler, or null to use this engine's own
+     *            threads.
+     */
+	public final void setScheduler(ExtractionScheduler scheduler)
+	{
+		this.scheduler = scheduler;
+	}
+
+	/**
+     * Appends to an existing project. The specified versions have already been
+     * extracted and post-processed into the output data folder, so they are
+     * not extracted again. Post-processing is only performed from the first
+     * new version onwards, which re-persists the version before it.
+     * 
+     * @param existingVersions The RSNs of the versions already in the project.
+     */
+	public final void setExistingVersions(Set<Integer> existingVersions)
+	{
+		this.existingVersions = existingVersions;
+	}
+
+	/**
+     * Restores classes whose class files are unchanged from the specified
+     * cache instead of extracting them again. The cache can be shared between
+     * engines. A persistent cache is saved once all versions are extracted.
+     * The cache is not used if it is for a different extraction profile.
+     * 
+     * @param extractionCache The cache to use, or null to extract every class.
+     */
+	public final void setExtractionCache(ExtractionCache extractionCache)
+	{
+		this.extractionCache = extractionCache;
+	}
+
+	private void saveExtractionCache()
+	{
+		if (extractionCache == null)
+			return;
+
+		if (showProcessing)
+			logger.log(Level.ALL, "Extraction cache: " + extractionCache.getHits() + " hit(s), "
+					+ extractionCache.getMisses() + " miss(es), " + extractionCache.size() + " class(es)");
+		try
+		{
+			extractionCache.save();
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Could not save extraction cache: " + e);
+		}
+	}
+
+	private void stopExtractors()
+	{
+		for (VersionExtractor extractor : versionExtractors)
+		{
+			try
+			{
+				extractor.stop();
+			} catch (InterruptedException e)
+			{
+			} // Handle.
+		}
+	}
+
+	private void stopStagePool()
+	{
+		if (stagePool != null)
+		{
+			stagePool.shutdownNow();
+			stagePool = null;
+		}
+	}
+
+	private void stopReadPool()
+	{
+		if (readPool != null)
+		{
+			readPool.shutdownNow();
+			readPool = null;
+		}
+	}
+
+	private void stopClassPool()
+	{
+		if (classPool != null)
+		{
+			classPool.shutdownNow();
+			classPool = null;
+		}
+	}
+
 	/**
      * @return the amount of bytes processed.
      */
@@ -361,12 +693,20 @@ public class MetricEngine extends Observable implements Observer
 		interrupted = true;
 		inputQueue.clear();
 		outputQueue.clear();
+		persistQueue.clear();
 		// Stop and cleanup extractors.
-		for (VersionExtractor extractor : versionExtractors)
+		stopExtractors();
+		stopClassPool();
+		stopStagePool();
+		stopReadPool();
+		if (scheduledExtractor != null)
 		{
+			// Versions already being extracted on the scheduler's threads
+			// stop at their next checkpoint.
+			scheduler.cancel(scheduledExtractor);
 			try
 			{
-				extractor.stop();
+				scheduledExtractor.stop();
 			} catch (InterruptedException e)
 			{
 			} // Handle.
@@ -374,19 +714,11 @@ public class MetricEngine extends Observable implements Observer
 
 		// Stop and cleanup Version Persister.
 		if (versionPersister != null)
-		{
-			try
-			{
-				versionPersister.stop();
-
-			} catch (InterruptedException e)
-			{
-			} // Handle.
-		}
+			versionPersister.interrupt();
 
 		// Stop and cleanup post-processor.
 		if (versionPostProcessor != null)
-			versionPersister.interrupt();
+			versionPostProcessor.interrupt();
 
 		versionPersister = null;
 		versionPostProcessor = null;
@@ -0,0 +1,234 @@
+package metric.core.extraction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import metric.core.io.InputData;
+import metric.core.model.ClassMetricData;
+import metric.core.model.MethodMetricMap;
+import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
+import metric.core.vocabulary.MethodMetric;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.EmptyVisitor;
+
+/**
+ * Extracts the same metrics as <code>ClassMetricExtractor</code> and
+ * <code>MethodMetricExtractor</code>, but collects them directly from the
+ * events fired by a <code>ClassReader</code> instead of building an
+ * intermediate ClassNode/MethodNode tree.
+ */
+public class StreamingClassMetricExtractor extends EmptyVisitor
+{
+	// Shared sink for annotations, which we do not measure.
+	private static final EmptyVisitor IGNORE = new EmptyVisitor();
+
+	private ClassReader cr;
+	private InputData idata;
+	private ExtractionProfile profile;
+
+	private ClassMetricData cmd;
+	private String className;
+	private int classAccess;
+	private List<String> innerClasses;
+	private HashMap<String, int[]> methodsMap;
+	private Set<String> methodDependencies;
+	private StreamingMethodVisitor methodVisitor;
+
+	private Logger logger = Logger.getLogger(getClass().getSimpleName());
+
+	public StreamingClassMetricExtractor(InputData idata) throws IOException
+	{
+		this(idata, ExtractionProfile.FULL);
+	}
+
+	/**
+     * @param idata The class file to extract.
+     * @param profile The profile to extract with. The code of methods is
+     *            skipped if the profile does not read it.
+     */
+	public StreamingClassMetricExtractor(InputData idata, ExtractionProfile profile) throws IOException
+	{
+		cr = ClassMetricExtractor.createClassReader(idata);
+		this.idata = idata;
+		this.profile = profile;
+
+		LogOrganiser.addLogger(logger);
+	}
+
+	/**
+     * Extracts the metrics of this class. Inner classes are extracted from
+     * their own class files and are not merged here, see
+     * <code>getInnerClassNames</code>.
+     * 
+     * @return The extracted ClassMetricData.
+     */
+	public ClassMetricData extract()
+	{
+		cmd = new ClassMetricData();
+		innerClasses = new ArrayList<String>();
+		methodsMap = new HashMap<String, int[]>();
+		methodDependencies = new HashSet<String>();
+
+		// Collect class, field and method metrics in a single pass.
+		int flags = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+		if (!profile.readsCode())
+			flags |= ClassReader.SKIP_CODE;
+		cr.accept(this, flags);
+
+		cmd.setSimpleMetric(ClassMetric.INNER_CLASS_COUNT, innerClasses.size());
+		cmd.lastModified = idata.getLastModifiedTime();
+
+		for (int[] mm : methodsMap.values())
+			ClassMetricExtractor.mergeMethodMetricsWithClass(cmd, mm);
+		cmd.methods = new MethodMetricMap(methodsMap);
+
+		// Merge method dependencies if they are not already a dependency.
+		for (String dep : methodDependencies)
+		{
+			if (!dep.equals("java/lang/Object") && !dep.equals(className))
+				cmd.dependencies.add(dep);
+		}
+
+		cmd.setSimpleMetric(ClassMetric.FAN_OUT_COUNT, cmd.dependencies.size());
+
+		return cmd;
+	}
+
+	/**
+     * @return The names of the inner classes listed by this class, in the order
+     *         they are declared. Only available after extraction.
+     */
+	public List<String> getInnerClassNames()
+	{
+		return innerClasses;
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+	{
+		className = name;
+		classAccess = access;
+		methodVisitor = new StreamingMethodVisitor(name, methodDependencies);
+
+		cmd.setSimpleMetric(ClassMetric.INTERFACE_COUNT, interfaces.length);
+		cmd.setProperty(ClassMetric.NAME, name);
+		cmd.setProperty(ClassMetric.SUPER_CLASS_NAME, superName.trim());
+		ClassMetricExtractor.updateClassStats(cmd, access);
+	}
+
+	@Override
+	public void visitInnerClass(String name, String outerName, String innerName, int access)
+	{
+		innerClasses.add(name);
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String desc, String signature, Object value)
+	{
+		cmd.incrementMetric(ClassMetric.FIELD_COUNT);
+
+		if ((access & Opcodes.ACC_PUBLIC) != 0)
+			cmd.incrementMetric(ClassMetric.PUBLIC_FIELD_COUNT);
+		else if ((access & Opcodes.ACC_PRIVATE) != 0)
+			cmd.incrementMetric(ClassMetric.PRIVATE_FIELD_COUNT);
+		else if ((access & Opcodes.ACC_PROTECTED) != 0)
+			cmd.incrementMetric(ClassMetric.PROTECTED_FIELD_COUNT);
+
+		if ((access & Opcodes.ACC_STATIC) != 0)
+			cmd.incrementMetric(ClassMetric.STATIC_FIELD_COUNT);
+		if ((access & Opcodes.ACC_FINAL) != 0)
+			cmd.incrementMetric(ClassMetric.FINAL_FIELD_COUNT);
+
+		ClassMetricExtractor.addDependency(cmd, Type.getType(desc));
+		return IGNORE;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+	{
+		cmd.incrementMetric(ClassMetric.METHOD_COUNT);
+
+		// Method signature dependencies.
+		if (exceptions != null)
+		{
+			for (int i = 0; i < exceptions.length; i++)
+				cmd.dependencies.add(exceptions[i]);
+		}
+		ClassMetricExtractor.addDependency(cmd, Type.getReturnType(desc));
+		Type[] argTypes = Type.getArgumentTypes(desc);
+		for (int i = 0; i < argTypes.length; i++)
+			ClassMetricExtractor.addDependency(cmd, argTypes[i]);
+
+		int[] mm = new int[MethodMetric.values().length];
+		MethodMetricExtractor.extractAndSetScope(access, classAccess, mm);
+		MethodMetricExtractor.extractAndUpdateTypeModifiers(access, mm);
+		methodsMap.put(name + " " + desc, mm);
+
+		methodVisitor.setMetrics(mm);
+		return methodVisitor;
+	}
+
+	@Override
+	public AnnotationVisitor visitAnnotation(String desc, boolean visible)
+	{
+		return IGNORE;
+	}
+
+	/**
+     * Counts instructions for each method visited, reusing a single visitor for
+     * all methods of the class.
+     */
+	private class StreamingMethodVisitor extends InstructionMetricVisitor
+	{
+		public StreamingMethodVisitor(String className, Set<String> dependencies)
+		{
+			super(className, dependencies);
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals)
+		{
+			mm[MethodMetric.LOCAL_VAR_COUNT.ordinal()] = maxLocals;
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type)
+		{
+			// The tree based extractor only replays a method's instruction
+			// list, which never includes try/catch blocks. They are ignored
+			// here too so both engines produce the same metrics.
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String desc, boolean visible)
+		{
+			return IGNORE;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault()
+		{
+			return IGNORE;
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible)
+		{
+			return IGNORE;
+		}
+	}
+}
@@ -2,17 +2,30 @@ package metric.core.extraction;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import metric.core.ActiveObject;
+import metric.core.io.DirectoryReader;
 import metric.core.io.InputData;
 import metric.core.io.InputDataSet;
 import metric.core.model.ClassMetricData;
 import metric.core.model.VersionMetricData;
 import metric.core.util.logging.LogOrganiser;
 import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionEngine;
+import metric.core.vocabulary.ExtractionProfile;
 import metric.gui.swt.core.threading.ProcessingReport;
 
 public class VersionExtractor extends ActiveObject<String> implements ProcessingReport
@@ -21,6 +34,17 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 	private BlockingQueue<String> versionNames;
 	private BlockingQueue<VersionMetricData> versions;
 	private String productName, versionPath;
+	private ExtractionEngine engine;
+	private ExtractionProfile profile = ExtractionProfile.FULL;
+	private int readThreads = DirectoryReader.DEFAULT_THREADS;
+	private ExecutorService readPool;
+	private boolean embeddedLibraries;
+
+	// Number of classes extracted per task when using a shared class pool.
+	private static final int CLASS_BATCH_SIZE = 64;
+	private ExecutorService classPool;
+	private ExtractionCache cache;
+	private VersionPostProcessor postProcessor;
 
 	private static Object processingLock = new Object();
 	private static int totalProcessed;
@@ -28,15 +52,97 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 
 	public VersionExtractor(String name, BlockingQueue<String> versionNames, BlockingQueue<VersionMetricData> versions,
 			String versionPath)
+	{
+		this(name, versionNames, versions, versionPath, ExtractionEngine.TREE);
+	}
+
+	public VersionExtractor(String name, BlockingQueue<String> versionNames, BlockingQueue<VersionMetricData> versions,
+			String versionPath, ExtractionEngine engine)
 	{
 		super(name);
 		this.versionNames = versionNames;
 		this.versions = versions;
 		this.versionPath = versionPath;
+		this.engine = engine;
 		LogOrganiser.addLogger(logger);
 		logger.setLevel(Level.ALL);
 	}
 
+	/**
+     * Sets a pool shared between extractors on which the classes of a version
+     * are extracted in batches. If not set, classes are extracted one at a
+     * time on this extractor's thread.
+     * 
+     * @param classPool The shared class extraction pool.
+     */
+	public void setClassPool(ExecutorService classPool)
+	{
+		this.classPool = classPool;
+	}
+
+	/**
+     * Sets a cache, possibly shared between extractors, that unchanged class
+     * files are restored from instead of being parsed again.
+     * 
+     * @param cache The extraction cache.
+     */
+	public void setExtractionCache(ExtractionCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+     * Sets how much of each class file is extracted. The cache must not be
+     * shared with extractors that use a different profile.
+     * 
+     * @param profile The extraction profile. Defaults to
+     *            <code>ExtractionProfile.FULL</code>.
+     */
+	public void setExtractionProfile(ExtractionProfile profile)
+	{
+		this.profile = profile;
+	}
+
+	/**
+     * Sets the number of threads used to list the directories and read the
+     * class files of a version that is a directory rather than a jar file.
+     * 
+     * @param readThreads The number of files read at once.
+     * @param readPool The executor the files are read on, shared between
+     *            versions, or null to create a pool for each version.
+     */
+	public void setReadThreads(int readThreads, ExecutorService readPool)
+	{
+		this.readThreads = readThreads;
+		this.readPool = readPool;
+	}
+
+	/**
+     * Sets whether the libraries embedded in a version, such as the jars in
+     * WEB-INF/lib of a web application, are extracted along with it.
+     * 
+     * @param embeddedLibraries Whether embedded libraries are extracted.
+     *            Defaults to false.
+     */
+	public void setEmbeddedLibraries(boolean embeddedLibraries)
+	{
+		this.embeddedLibraries = embeddedLibraries;
+	}
+
+	/**
+     * Sets the post-processor that performs the first pass on each version as
+     * soon as it is extracted, on this extractor's thread. Versions taken from
+     * the queue are not extracted until they are within the post-processor's
+     * window.
+     * 
+     * @param postProcessor The post-processor, or null to leave the first pass
+     *            to it.
+     */
+	public void setPostProcessor(VersionPostProcessor postProcessor)
+	{
+		this.postProcessor = postProcessor;
+	}
+
 	@Override
 	public void doWork(String toDo)
 	{
@@ -57,6 +163,10 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 			String jarFileName = new File(versionPath, cols[2].trim()).toString();
 
 			InputDataSet input = new InputDataSet(jarFileName, versionId, rsn, productName, cols[3]);
+			// Cached class files do not need to be read.
+			input.setContentFilter(cache);
+			input.setReadThreads(readThreads, readPool);
+			input.setEmbeddedLibraries(embeddedLibraries);
 
 			try
 			{
@@ -69,22 +179,46 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 			{
 				e.printStackTrace();
 			}
+			if (isCancelled())
+			{
+				closeInput(input);
+				return;
+			}
 			logger.log(Level.ALL, msg);
-			setChanged();
-			notifyObservers(msg);
+			// Versions can be extracted by several threads at once, each of
+			// which must notify observers.
+			synchronized (this)
+			{
+				setChanged();
+				notifyObservers(msg);
+			}
 			VersionMetricData vmd = createVersion(input);
+			// A cancelled version is incomplete, so it is dropped.
+			if (isCancelled())
+				return;
+			if (postProcessor != null)
+				postProcessor.firstPassProcessing(vmd);
 
-			// Put onto completed channel.
-			versions.offer(vmd);
+			// Put onto completed channel, waiting for post-processing to catch
+			// up if it is full.
+			try
+			{
+				versions.put(vmd);
+			} catch (InterruptedException e)
+			{
+				// Have been asked to stop.
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
 	private VersionMetricData createVersion(InputDataSet input)
 	{
 		VersionMetricData vmd = new VersionMetricData(input.RSN, input.versionId, input.shortName);
+		vmd.profile = profile;
 
 		if (input.size() == 0)
-			return null; // nothing to extract from
+			return vmd; // nothing to extract from
 
 		vmd.metricData.clear();
 
@@ -94,32 +228,47 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 		input.inflate(true);
 
 		// Create ClassMetricData set for the given input data set.
-		for (InputData idata : input)
+		if (classPool != null)
+			extractClassesConcurrently(input, vmd);
+		else
 		{
-			try
+			InnerClassMerger merger = new InnerClassMerger(input, vmd.shortName,
+					new HashMap<String, ExtractedClass>());
+			for (InputData idata : input)
 			{
-				// For each InputData (class file), create ClassMetricData.
-				ClassMetricExtractor cme = new ClassMetricExtractor(idata, input);
-				// Create a new ClassMetricData
-				ClassMetricData cmd = cme.extract();
-				cmd.setProperty(ClassMetric.PRODUCT_NAME, vmd.shortName);
-
-				// close input stream.
-				idata.getInputStream().close();
-				cme = null;
+				if (isCancelled())
+					break;
+				ExtractedClass extracted = extractClass(idata, vmd.shortName);
 
 				// Add this class metric data to its version.
-				vmd.metricData.put(cmd.get(ClassMetric.NAME), cmd);
-			} catch (Exception e)
-			{
-				logger.log(Level.WARNING, "Skipping bad input file during. Could not get data stream. ");
+				if (extracted != null)
+				{
+					ClassMetricData cmd = merger.merge(extracted);
+					vmd.metricData.put(cmd.get(ClassMetric.NAME), cmd);
+				}
 			}
 		}
 		// bytesProcessed += input.sizeInBytes();
 
+		// Method metrics are only dropped now, as they are still needed when
+		// inner classes are merged.
+		if (!profile.keepsMethods())
+		{
+			for (ClassMetricData cmd : vmd.metricData.values())
+				cmd.methods = null;
+		}
+
 		// Drop all streams we opened during processing this DataInputSet
 		// (Version/jar)
 		// This is important to free up memory.
+		closeInput(input);
+		input = null;
+
+		return vmd;
+	}
+
+	private void closeInput(InputDataSet input)
+	{
 		try
 		{
 			input.deflate();
@@ -129,9 +278,239 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		input = null;
+	}
 
-		return vmd;
+	/**
+     * A cancellation checkpoint, checked between classes so that a version
+     * being extracted when this extractor is stopped is given up promptly.
+     */
+	private boolean isCancelled()
+	{
+		return isStopRequested() || Thread.currentThread().isInterrupted();
+	}
+
+	/**
+     * Extracts every class of the specified input data set, including inner
+     * classes, on the shared class pool. The inner classes are then merged
+     * sequentially in the order the classes were read from the input data set,
+     * so the result does not depend on the order in which batches complete.
+     */
+	private void extractClassesConcurrently(InputDataSet input, VersionMetricData vmd)
+	{
+		List<Future<List<ExtractedClass>>> outerBatches = submitBatches(input, vmd.shortName);
+		List<Future<List<ExtractedClass>>> innerBatches = submitBatches(input.claimInnerClassData(), vmd.shortName);
+
+		try
+		{
+			Map<String, ExtractedClass> innerClasses = new HashMap<String, ExtractedClass>();
+			for (ExtractedClass inner : collectBatches(innerBatches))
+				innerClasses.put(inner.name, inner);
+
+			InnerClassMerger merger = new InnerClassMerger(input, vmd.shortName, innerClasses);
+			for (ExtractedClass outer : collectBatches(outerBatches))
+			{
+				ClassMetricData cmd = merger.merge(outer);
+				vmd.metricData.put(cmd.get(ClassMetric.NAME), cmd);
+			}
+		} catch (InterruptedException e)
+		{
+			// Have been asked to stop, drop any outstanding batches.
+			for (Future<List<ExtractedClass>> batch : outerBatches)
+				batch.cancel(true);
+			for (Future<List<ExtractedClass>> batch : innerBatches)
+				batch.cancel(true);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<Future<List<ExtractedClass>>> submitBatches(Iterable<InputData> classes, String shortName)
+	{
+		List<Future<List<ExtractedClass>>> batches = new ArrayList<Future<List<ExtractedClass>>>();
+		List<InputData> batch = new ArrayList<InputData>(CLASS_BATCH_SIZE);
+		for (InputData idata : classes)
+		{
+			batch.add(idata);
+			if (batch.size() == CLASS_BATCH_SIZE)
+			{
+				batches.add(classPool.submit(new ClassBatch(batch, shortName)));
+				batch = new ArrayList<InputData>(CLASS_BATCH_SIZE);
+			}
+		}
+		if (!batch.isEmpty())
+			batches.add(classPool.submit(new ClassBatch(batch, shortName)));
+		return batches;
+	}
+
+	private List<ExtractedClass> collectBatches(List<Future<List<ExtractedClass>>> batches)
+			throws InterruptedException
+	{
+		List<ExtractedClass> extracted = new ArrayList<ExtractedClass>();
+		for (Future<List<ExtractedClass>> batch : batches)
+		{
+			if (isCancelled())
+				throw new InterruptedException("Extraction cancelled.");
+			try
+			{
+				extracted.addAll(batch.get());
+			} catch (ExecutionException e)
+			{
+				logger.log(Level.WARNING, "Skipping batch of classes: " + e.getCause());
+			}
+		}
+		return extracted;
+	}
+
+	/**
+     * Extracts a ClassMetricData from the specified class file and closes its
+     * stream. Inner classes are not merged.
+     * 
+     * @return The extracted class or null if the class file could not be
+     *         extracted.
+     */
+	private ExtractedClass extractClass(InputData idata, String shortName)
+	{
+		try
+		{
+			// For each InputData (class file), create ClassMetricData.
+			ExtractedClass extracted = null;
+			if (cache != null)
+			{
+				idata = idata.withChecksum();
+				extracted = cache.get(idata, entryName(idata));
+			}
+			if (extracted == null)
+			{
+				extracted = extractWithEngine(idata);
+				if (cache != null)
+					cache.put(idata, extracted);
+			}
+			extracted.cmd.setProperty(ClassMetric.PRODUCT_NAME, shortName);
+
+			// close input stream.
+			idata.getInputStream().close();
+			return extracted;
+		} catch (Exception e)
+		{
+			logger.log(Level.WARNING, "Skipping bad input file during. Could not get data stream. ");
+		}
+		return null;
+	}
+
+	/**
+     * Extracts a ClassMetricData from the specified class file using the
+     * configured extraction engine.
+     */
+	private ExtractedClass extractWithEngine(InputData idata) throws IOException
+	{
+		String name = entryName(idata);
+		if (engine == ExtractionEngine.STREAMING)
+		{
+			StreamingClassMetricExtractor extractor = new StreamingClassMetricExtractor(idata, profile);
+			ClassMetricData cmd = extractor.extract();
+			return new ExtractedClass(name, cmd, extractor.getInnerClassNames());
+		}
+		ClassMetricExtractor extractor = new ClassMetricExtractor(idata, profile);
+		ClassMetricData cmd = extractor.extract();
+		return new ExtractedClass(name, cmd, extractor.getInnerClassNames());
+	}
+
+	/**
+     * @return The name of the specified class file without its extension.
+     */
+	private static String entryName(InputData idata)
+	{
+		String name = idata.toString();
+		if (name.endsWith(".class"))
+			name = name.substring(0, name.length() - ".class".length());
+		return name;
+	}
+
+	/**
+     * Merges inner classes into the first class of a version that claims them,
+     * depth first and in declaration order. Inner classes that have not already
+     * been extracted are extracted from the input data set when they are
+     * claimed, so every class file is parsed at most once.
+     */
+	private class InnerClassMerger
+	{
+		private final InputDataSet input;
+		private final String shortName;
+		private final Map<String, ExtractedClass> extracted;
+		private final Set<String> claimed = new HashSet<String>();
+
+		public InnerClassMerger(InputDataSet input, String shortName, Map<String, ExtractedClass> extracted)
+		{
+			this.input = input;
+			this.shortName = shortName;
+			this.extracted = extracted;
+		}
+
+		/**
+         * Merges the inner classes claimed by the specified class with it.
+         * 
+         * @return The merged ClassMetricData.
+         */
+		public ClassMetricData merge(ExtractedClass outer)
+		{
+			merge(outer, outer.cmd);
+			outer.cmd.setSimpleMetric(ClassMetric.FAN_OUT_COUNT, outer.cmd.dependencies.size());
+			return outer.cmd;
+		}
+
+		private void merge(ExtractedClass declaring, ClassMetricData target)
+		{
+			String declaringName = declaring.cmd.get(ClassMetric.NAME);
+			for (String name : declaring.innerClasses)
+			{
+				// Skip the entry describing the declaring class itself.
+				if (name.equals(declaringName) || !claimed.add(name))
+					continue;
+
+				ExtractedClass inner = extracted.remove(name);
+				if (inner == null)
+				{
+					InputData idata = input.claimInputData(name + ".class");
+					if (idata != null)
+						inner = extractClass(idata, shortName);
+				}
+				if (inner == null)
+					continue;
+
+				// merge inner class metrics with the declaring class.
+				target.mergeInnerClass(inner.cmd);
+				merge(inner, target);
+			}
+		}
+	}
+
+	/**
+     * A batch of class files from a single version that are extracted together
+     * on the shared class pool.
+     */
+	private class ClassBatch implements Callable<List<ExtractedClass>>
+	{
+		private List<InputData> classes;
+		private String shortName;
+
+		public ClassBatch(List<InputData> classes, String shortName)
+		{
+			this.classes = classes;
+			this.shortName = shortName;
+		}
+
+		public List<ExtractedClass> call()
+		{
+			List<ExtractedClass> extracted = new ArrayList<ExtractedClass>(classes.size());
+			for (InputData idata : classes)
+			{
+				if (isCancelled())
+					break;
+				ExtractedClass ec = extractClass(idata, shortName);
+				if (ec != null)
+					extracted.add(ec);
+			}
+			return extracted;
+		}
 	}
 
 	@Override
@@ -139,7 +518,12 @@ public class VersionExtractor extends ActiveObject<String> implements Processing
 	{
 		try
 		{
-			return versionNames.take();
+			String work = versionNames.take();
+			// Wait for post-processing to catch up if this version is too far
+			// ahead of it.
+			if (postProcessor != null)
+				postProcessor.awaitTurn(Integer.parseInt(work.split(",")[0].trim()));
+			return work;
 		} catch (InterruptedException e)
 		{
 			logger.log(Level.WARNING, "Interrupted. Getting ready to finish up.");
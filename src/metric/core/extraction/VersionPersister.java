@@ -2,43 +2,86 @@ package metric.core.extraction;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import metric.core.ActiveObject;
+import metric.core.WorkerThreadFactory;
 import metric.core.exception.ConversionException;
+import metric.core.model.ClassMetricData;
 import metric.core.model.VersionMetricData;
+import metric.core.persistence.BinaryConverter;
 import metric.core.persistence.CSVConverter;
 import metric.core.persistence.MetricDataConverter;
 import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.DataFormat;
 import metric.core.vocabulary.SerializeType;
 import metric.core.vocabulary.Version;
 import metric.gui.swt.core.threading.ProcessingReport;
 
+/**
+ * Persists the versions taken from a queue to the data folder of a project.
+ * Each version is written by one of a number of workers, and its classes,
+ * methods and dependencies are written concurrently, each to its own file.
+ */
 public class VersionPersister extends ActiveObject<VersionMetricData> implements ProcessingReport
 {
 	private Logger logger = Logger.getLogger(getClass().getSimpleName());
 	private BlockingQueue<VersionMetricData> versions;
-	private MetricDataConverter classConverter, methodConverter, depConverter;
 	private String path;
+	private DataFormat format = DataFormat.CSV;
+
+	private ExecutorService writers;
+	private Semaphore workers;
 
 	private Set<Integer> persistedVersionNames;
 	private Object processingLock;
-	private int totalProcessed;
+	private int totalProcessed, inProgress;
+	private boolean stopped;
 
 	public VersionPersister(String name, BlockingQueue<VersionMetricData> versions, String path)
+	{
+		this(name, versions, path, 1);
+	}
+
+	/**
+     * @param name The name of the persister thread.
+     * @param versions The queue to take versions to persist from.
+     * @param path The folder to persist versions to.
+     * @param numWorkers The number of versions that may be persisted at once.
+     */
+	public VersionPersister(String name, BlockingQueue<VersionMetricData> versions, String path, int numWorkers)
+	{
+		this(name, versions, path, numWorkers, new WorkerThreadFactory(name + "-Writer"));
+	}
+
+	/**
+     * @param name The name of the persister thread.
+     * @param versions The queue to take versions to persist from.
+     * @param path The folder to persist versions to.
+     * @param numWorkers The number of versions that may be persisted at once.
+     * @param writerThreads Creates the threads files are written on.
+     */
+	public VersionPersister(String name, BlockingQueue<VersionMetricData> versions, String path, int numWorkers,
+			ThreadFactory writerThreads)
 	{
 		super(name);
 		this.versions = versions;
 		this.path = path;
 
-		// this.converter = converter;
-		classConverter = new CSVConverter(SerializeType.CLASSES);
-		methodConverter = new CSVConverter(SerializeType.METHODS);
-		depConverter = new CSVConverter(SerializeType.DEPENDENCIES);
+		numWorkers = Math.max(numWorkers, 1);
+		workers = new Semaphore(numWorkers);
+		writers = Executors.newFixedThreadPool(numWorkers * SerializeType.values().length, writerThreads);
 
 		LogOrganiser.addLogger(logger);
 		logger.setLevel(Level.ALL);
@@ -47,64 +90,83 @@ public class VersionPersister extends ActiveObject<VersionMetricData> implements
 		processingLock = new Object();
 	}
 
+	/**
+     * @param format The format versions are written in. Defaults to
+     *            <code>DataFormat.CSV</code>.
+     */
+	public void setDataFormat(DataFormat format)
+	{
+		this.format = format;
+	}
+
 	@Override
 	public void doWork(VersionMetricData toDo)
 	{
 		if (toDo != null)
 		{
-			String file = path + File.separator + toDo.get(Version.RSN);
+			synchronized (processingLock)
+			{
+				inProgress++;
+			}
+
 			try
 			{
-				// int beforePersist = toDo.metricData.size();
-				String msg = "Persisting - " + file + classConverter.getFileExtension();
-				logger.log(Level.ALL, msg);
-				classConverter.serialize(toDo, file);
-				classConverter.close();
+				// Wait for a free worker.
+				workers.acquire();
+			} catch (InterruptedException e)
+			{
+				// Have been asked to stop.
+				versionDone(toDo, false);
+				return;
+			}
 
-				logger.log(Level.ALL, "Persisting - " + file + methodConverter.getFileExtension());
-				methodConverter.serialize(toDo, file);
-				methodConverter.close();
+			String file = path + File.separator + toDo.get(Version.RSN);
+			List<SerializeType> types = new ArrayList<SerializeType>(Arrays.asList(format.getTypes()));
+			// Class data written earlier in the other format would be loaded
+			// in place of this version.
+			for (SerializeType type : SerializeType.values())
+			{
+				if (type != SerializeType.METHODS && !format.writes(type))
+					new File(file + type.getExt()).delete();
+			}
+			// Versions loaded back from the data folder carry no method data,
+			// so their method file is left as it is, unless they were
+			// extracted without methods and the file is left from an earlier
+			// build.
+			if (!hasMethodData(toDo))
+			{
+				types.remove(SerializeType.METHODS);
+				if (!toDo.profile.keepsMethods())
+					new File(file + SerializeType.METHODS.getExt()).delete();
+			}
 
-				logger.log(Level.ALL, "Persisting - " + file + depConverter.getFileExtension());
-				depConverter.serialize(toDo, file);
-				depConverter.close();
+			VersionWrite write = new VersionWrite(toDo, file, types.size());
+			for (SerializeType type : types)
+				writers.execute(write.new TypeWrite(type));
+		}
+	}
 
-				synchronized (processingLock)
-				{
-					totalProcessed++;
-					if (!persistedVersionNames.contains(toDo.getSimpleMetric(Version.RSN)))
-						persistedVersionNames.add(toDo.getSimpleMetric(Version.RSN));
-				}
+	private static boolean hasMethodData(VersionMetricData vmd)
+	{
+		for (ClassMetricData cmd : vmd.metricData.values())
+		{
+			if (cmd.methods == null)
+				return false;
+		}
+		return true;
+	}
 
-				toDo = null; // Null reference.
-				System.gc();
-
-				// load back up and check
-				// System.out.println("Performing check on persisted
-				// entity...");
-				// HashMap<Integer, String[]> toLoad = new HashMap<Integer,
-				// String[]>();
-				// toLoad.put(toDo.getSimpleMetric(Version.RSN), new String[] {
-				// "", file });
-				// toDo = DataLoaderFactory.getInstance().getDataLoader(
-				// toLoad,
-				// LoadType.MAXIMAL).getVersion(
-				// toDo.getSimpleMetric(Version.RSN));
-				//				
-				// if (toDo.metricData.size() != beforePersist)
-				// {
-				// System.err.println("Data changed after persisting....");
-				// }
-
-			} catch (ConversionException e)
-			{
-				logger.log(Level.SEVERE, e.getMessage());
-				e.printStackTrace();
-			} catch (IOException e)
+	private void versionDone(VersionMetricData vmd, boolean persisted)
+	{
+		synchronized (processingLock)
+		{
+			inProgress--;
+			if (persisted)
 			{
-				logger.log(Level.SEVERE, e.getMessage());
-				e.printStackTrace();
+				totalProcessed++;
+				persistedVersionNames.add(vmd.getSimpleMetric(Version.RSN));
 			}
+			processingLock.notifyAll();
 		}
 	}
 
@@ -132,6 +194,34 @@ public class VersionPersister extends ActiveObject<VersionMetricData> implements
 	protected void cleanup()
 	{
 		logger.log(Level.ALL, getName() + " stopped.");
+
+		// Versions already being written are allowed to finish.
+		writers.shutdown();
+
+		// Release anyone still waiting on versions to be persisted.
+		synchronized (processingLock)
+		{
+			stopped = true;
+			processingLock.notifyAll();
+		}
+	}
+
+	/**
+     * Blocks the calling thread until the specified number of distinct
+     * versions have been persisted since the last reset, and no version is
+     * still being written, or until this persister stops.
+     * 
+     * @param count The number of versions to wait for.
+     * @throws InterruptedException If the calling thread is interrupted while
+     *             waiting.
+     */
+	public void awaitProcessingDone(int count) throws InterruptedException
+	{
+		synchronized (processingLock)
+		{
+			while ((persistedVersionNames.size() < count || inProgress > 0) && !stopped)
+				processingLock.wait();
+		}
 	}
 
 	public int getProcessingDone()
@@ -150,13 +240,110 @@ public class VersionPersister extends ActiveObject<VersionMetricData> implements
 		}
 	}
 
-	public synchronized void reset()
+	public void reset()
 	{
-		persistedVersionNames.clear();
+		synchronized (processingLock)
+		{
+			persistedVersionNames.clear();
+		}
 	}
 
+	/**
+     * Stops this persister. Versions that are waiting to be persisted are
+     * dropped, and files that have not started being written are not written.
+     */
 	public void interrupt()
 	{
-		Thread.currentThread().interrupt();
+		try
+		{
+			stop();
+		} catch (InterruptedException e)
+		{
+		} // Handle.
+		versions.clear();
+	}
+
+	@Override
+	protected void Interrupt()
+	{
+		super.Interrupt();
+		// Drops the writes that have not started and interrupts the rest.
+		writers.shutdownNow();
+	}
+
+	/**
+     * Writes each serialisation type of a version on its own writer thread.
+     * The version is done once the last type has been written.
+     */
+	private class VersionWrite
+	{
+		private final VersionMetricData vmd;
+		private final String file;
+		private int remaining;
+		private boolean failed;
+
+		public VersionWrite(VersionMetricData vmd, String file, int types)
+		{
+			this.vmd = vmd;
+			this.file = file;
+			this.remaining = types;
+		}
+
+		private void typeDone(boolean written)
+		{
+			boolean done;
+			synchronized (this)
+			{
+				failed |= !written;
+				done = --remaining == 0;
+			}
+			if (done)
+			{
+				workers.release();
+				versionDone(vmd, !failed);
+			}
+		}
+
+		private class TypeWrite implements Runnable
+		{
+			private final SerializeType type;
+
+			public TypeWrite(SerializeType type)
+			{
+				this.type = type;
+			}
+
+			public void run()
+			{
+				boolean written = false;
+				MetricDataConverter converter;
+				if (type == SerializeType.BINARY)
+					converter = new BinaryConverter();
+				else
+					converter = new CSVConverter(type);
+				try
+				{
+					// A cancellation checkpoint. Each file is written whole,
+					// so a write that has started is allowed to finish.
+					if (isStopRequested() || Thread.currentThread().isInterrupted())
+						return;
+					logger.log(Level.ALL, "Persisting - " + file + converter.getFileExtension());
+					converter.serialize(vmd, file);
+					converter.close();
+					written = true;
+				} catch (ConversionException e)
+				{
+					logger.log(Level.SEVERE, e.getMessage());
+					e.printStackTrace();
+				} catch (IOException e)
+				{
+					logger.log(Level.SEVERE, e.getMessage());
+					e.printStackTrace();
+				} finally
+				{
+					typeDone(written);
+				}
+			}
+		}
 	}
 }
@@ -1,15 +1,20 @@
 package metric.core.extraction;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Observable;
-import java.util.Set;
+import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import metric.core.model.ClassMetricData;
+import metric.core.model.ClassNames;
 import metric.core.model.HistoryMetricData;
+import metric.core.model.NameSet;
 import metric.core.model.VersionMetricData;
 import metric.core.util.MetricUtil;
 import metric.core.util.StatUtils;
@@ -19,94 +24,232 @@ import metric.core.vocabulary.Evolution;
 import metric.core.vocabulary.MetricType;
 import metric.core.vocabulary.Version;
 
+/**
+ * Post-processes the versions of a history as they are extracted, in RSN
+ * order. Each version only has to be compared with the one before it, so just
+ * those two versions are held and every version is handed to the persister
+ * exactly once, when both passes are done with it.
+ * 
+ * Versions can be extracted out of order, so those that are extracted before
+ * the version being waited for are held until it is their turn. Extractors
+ * call <code>awaitTurn</code> before extracting a version, which bounds how
+ * far ahead of the version being waited for they can get, and so the number of
+ * versions held.
+ */
 public class VersionPostProcessor extends Observable
 {
 	private Logger logger = Logger.getLogger(getClass().getSimpleName());
 	private HistoryMetricData hmd;
 	private int processed;;
 	private BlockingQueue<VersionMetricData> versions;
-	private VersionPersister persister;
+	private int firstVersion = 1;
+	private boolean firstPassOnExtraction;
+	private Thread processingThread;
+	private volatile boolean cancelled;
+
+	// The RSNs of the history in order.
+	private final int[] rsns;
+	// Guards the index of the version being waited for.
+	private final Object turnLock = new Object();
+	private int next;
+	private int window = Integer.MAX_VALUE;
 
-	public VersionPostProcessor(HistoryMetricData hmd, BlockingQueue<VersionMetricData> versions,
-			VersionPersister persister)
+	/**
+     * @param hmd The history being processed.
+     * @param versions The queue processed versions are put on to be persisted.
+     */
+	public VersionPostProcessor(HistoryMetricData hmd, BlockingQueue<VersionMetricData> versions)
 	{
 		this.hmd = hmd;
 		this.versions = versions;
+
+		rsns = new int[hmd.getVersions().size()];
+		int i = 0;
+		for (Entry<Integer, String> version : hmd.getVersions())
+			rsns[i++] = version.getKey();
+		Arrays.sort(rsns);
+
 		LogOrganiser.addLogger(logger);
 		logger.setLevel(Level.ALL);
-		this.persister = persister;
 	}
 
-	public void process()
+	/**
+     * Only post-processes the versions from the specified version onwards, e.g.
+     * when they have been appended to an existing project. The versions before
+     * it must already have been post-processed.
+     * 
+     * @param firstVersion The first version to process. Defaults to 1.
+     */
+	public void setFirstVersion(int firstVersion)
 	{
+		this.firstVersion = firstVersion;
+		synchronized (turnLock)
+		{
+			next = firstVersion - 1;
+		}
+	}
 
-		// Perform first pass processing.
-		firstPassProcessing();
-		
-		// Cannot perform second pass processing with 1 version.
-		if (hmd.size() == 1)
-			return;
+	/**
+     * Bounds the number of versions that can be extracted ahead of the
+     * version post-processing is waiting for. Every version that has been
+     * extracted but not yet post-processed, whether it is being extracted, is
+     * waiting on the queue, or has been taken from it early, is within the
+     * window.
+     * 
+     * @param window The number of versions, from the one being waited for,
+     *            that may be extracted at once. Defaults to unbounded.
+     */
+	public void setWindow(int window)
+	{
+		synchronized (turnLock)
+		{
+			this.window = Math.max(window, 1);
+			turnLock.notifyAll();
+		}
+	}
 
-		// Ensure all versions have been properly persisted with first-pass
-		// processing done.
-		synchroniseThreadWithPersister(hmd.size());
-		persister.reset();
+	/**
+     * Waits until the specified version is within the window of the version
+     * post-processing is waiting for. Extractors must call this before
+     * extracting a version, and must be handed versions in RSN order, or the
+     * version being waited for may never be extracted.
+     * 
+     * @param rsn The RSN of the version about to be extracted.
+     * @throws InterruptedException If interrupted whilst waiting.
+     */
+	public void awaitTurn(int rsn) throws InterruptedException
+	{
+		int index = Arrays.binarySearch(rsns, rsn);
+		synchronized (turnLock)
+		{
+			while (index - next >= window && !cancelled)
+				turnLock.wait();
+		}
+	}
 
-		for (int i = 2; i <= hmd.size(); i++)
+	// Moves the window on once the version at the specified index has been
+	// taken.
+	private void advance(int index)
+	{
+		synchronized (turnLock)
 		{
-			VersionMetricData vmd = hmd.getVersion(i - 1);
-			VersionMetricData vmd2 = hmd.getVersion(i);
-			
-			// Perform second pass processing.
-			secondPassProcessing(vmd, vmd2);
-
-			// Notify observers we are post-processing.
-			// Because we have to look ahead a version for surivor post
-			// processing we have to process every version twice. So we only
-			// notify the first version being processed.
-			versions.offer(vmd);
-			versions.offer(vmd2);
-			updateObservers(vmd);
-
-			// Must wait for VersionPersister to persist these to disk first so
-			// the correct data is loaded up on the next loop.
-			synchroniseThreadWithPersister(i);
-
-			// There isn't another version to check this against, so just log it
-			// with the post-processing done on it so far.
-			if (i == hmd.size())
-			{
-				updateObservers(vmd2);
-			}
+			next = index + 1;
+			turnLock.notifyAll();
 		}
 	}
 
 	/**
-     * Synchronises the current thread with the VersionPersister by forcing it
-     * to wait until the VersionPersister has persister the specified number of
-     * Versions since the last reset.
+     * The first pass only depends on the version being processed, so it can be
+     * performed by the threads extracting versions, by calling
+     * <code>firstPassProcessing</code> before putting them on the queue.
      * 
-     * @param persisterIndex The number of versions that should be persister
-     *            before allowing this thread to continue.
+     * @param firstPassOnExtraction Whether the versions put on the queue have
+     *            already had their first pass.
      */
-	private void synchroniseThreadWithPersister(int persisterIndex)
+	public void setFirstPassOnExtraction(boolean firstPassOnExtraction)
 	{
-		while (persister.getProcessingDone() != persisterIndex)
+		this.firstPassOnExtraction = firstPassOnExtraction;
+	}
+
+	/**
+     * @return The number of versions that <code>process</code> hands to the
+     *         persister.
+     */
+	public int getVersionsToPersist()
+	{
+		if (hmd.size() == 1)
+			return 1;
+		return hmd.size() - Math.max(2, firstVersion) + 2;
+	}
+
+	/**
+     * Post-processes the versions taken from the specified queue. Versions may
+     * arrive in any order, those that arrive early are held until it is their
+     * turn, and the window moves on as each version is taken. Versions in
+     * range that are not put on the queue are loaded from the project's data
+     * folder.
+     * 
+     * @param extracted The queue extracted versions are taken from.
+     * @param count The number of versions that will be put on the queue.
+     * @throws InterruptedException If interrupted whilst waiting for a
+     *             version.
+     */
+	public void process(BlockingQueue<VersionMetricData> extracted, int count) throws InterruptedException
+	{
+		processingThread = Thread.currentThread();
+
+		Map<Integer, VersionMetricData> early = new HashMap<Integer, VersionMetricData>();
+		int taken = 0;
+
+		// The version before the first one has already been post-processed,
+		// but needs to be updated with what happens to its classes next.
+		VersionMetricData previous = null;
+		if (firstVersion > 1)
+			previous = hmd.getVersion(rsns[firstVersion - 2]);
+
+		for (int i = firstVersion; i <= rsns.length; i++)
 		{
-			try
+			// A cancellation checkpoint, in case the interrupt arrived before
+			// processing started or was swallowed by a loaded version.
+			if (cancelled)
+				throw new InterruptedException("Post-processing cancelled.");
+
+			int rsn = rsns[i - 1];
+			VersionMetricData vmd = early.remove(rsn);
+			while (vmd == null && taken < count)
 			{
-				System.out.println("Finished first pass processing and waiting on persister.");
-				System.out.println("Done: " +persister.getProcessingDone() + " Index: " + persisterIndex);
-				Thread.sleep(100);
-			} catch (InterruptedException e)
+				VersionMetricData next = extracted.take();
+				taken++;
+				if (next.getSimpleMetric(Version.RSN) == rsn)
+					vmd = next;
+				else
+					early.put(next.getSimpleMetric(Version.RSN), next);
+			}
+			advance(i - 1);
+			if (vmd == null)
+			{
+				// Not extracted, so it has not had its first pass either.
+				vmd = hmd.getVersion(rsn);
+				firstPassProcessing(vmd);
+			} else if (!firstPassOnExtraction)
+				firstPassProcessing(vmd);
+
+			// Now that the next version is known, the previous one is done.
+			if (previous != null)
 			{
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				secondPassProcessing(previous, vmd);
+				versions.put(previous);
+				updateObservers(previous);
 			}
+			previous = vmd;
+		}
+
+		// There isn't another version to check the last one against, so just
+		// persist it with the post-processing done on it so far.
+		if (previous != null)
+		{
+			versions.put(previous);
+			updateObservers(previous);
+		}
+	}
+
+	/**
+     * Interrupts the thread post-processing versions, which gives up before
+     * the next version.
+     */
+	public void interrupt()
+	{
+		cancelled = true;
+		synchronized (turnLock)
+		{
+			turnLock.notifyAll();
 		}
+		if (processingThread != null)
+			processingThread.interrupt();
 	}
 
-	private void updateObservers(VersionMetricData vmd)
+	// Synchronized so notifications from concurrent first passes are not lost.
+	private synchronized void updateObservers(VersionMetricData vmd)
 	{
 		String msg = "Post-Processing - " + vmd;
 		setChanged();
@@ -114,22 +257,24 @@ public class VersionPostProcessor extends Observable
 		logger.log(Level.ALL, msg);
 	}
 
-	private void firstPassProcessing()
+	/**
+     * Performs the computations that only depend on the specified version.
+     * This can be called concurrently for different versions.
+     * 
+     * @param vmd The version to process.
+     */
+	void firstPassProcessing(VersionMetricData vmd)
 	{
-		for (int i = 1; i <= hmd.size(); i++)
-		{
-			VersionMetricData vmd = hmd.getVersion(i);
-			computeInstructionCount(vmd);
-			computeDependencies(vmd);
-			computeFanIn(vmd);
-			computeLayers(vmd);
-			computeGUIAndIOClasses(vmd);
-			computeGUIClassCount(vmd);
-			computeHiLowTime(vmd);
-
-			versions.offer(vmd);
-			updateObservers(vmd);
-		}
+		// Shared by the passes over the dependency graph.
+		ClassIndex index = new ClassIndex(vmd);
+		computeInstructionCount(vmd);
+		computeDependencies(index);
+		computeFanIn(vmd);
+		computeLayers(vmd);
+		computeGUIAndIOClasses(index);
+		computeGUIClassCount(vmd);
+		computeHiLowTime(vmd);
+		updateObservers(vmd);
 	}
 
 	private void secondPassProcessing(VersionMetricData vmd, VersionMetricData vmd2)
@@ -210,19 +355,19 @@ public class VersionPostProcessor extends Observable
      * updated directly on the ClassMetric object Internal Fanout value will
      * also be calculated and updated
      */
-	private void computeDependencies(VersionMetricData vmd)
+	private void computeDependencies(ClassIndex index)
 	{
-		for (ClassMetricData cm : vmd.metricData.values())
+		for (int c = 0; c < index.classes.length; c++)
 		{
-			for (String name : cm.dependencies)
+			ClassMetricData cm = index.classes[c];
+			for (int i = 0; i < cm.dependencies.size(); i++)
 			{
-				if (name.equals(cm))
-					continue; // ignore self-dependencies
-				ClassMetricData fanInNode = vmd.metricData.get(name);
-				if (fanInNode != null)
+				int dependency = cm.dependencies.getId(i);
+				int fanInNode = index.indexOf(dependency);
+				if (fanInNode != -1)
 				{
-					cm.internalDeps.add(name);
-					fanInNode.users.add(cm.get(ClassMetric.NAME));
+					cm.internalDeps.addId(dependency);
+					index.classes[fanInNode].users.addId(index.ids[c]);
 				}
 			}
 		}
@@ -252,16 +397,67 @@ public class VersionPostProcessor extends Observable
 		}
 	}
 
-	/** Flag all classes that depend on a GUI class as GUI as well */
-	private void computeGUIAndIOClasses(VersionMetricData vmd)
+	/**
+     * Flag all classes that depend on a GUI class as GUI as well, and all
+     * classes that depend on an IO class as IO. Both flags are propagated to
+     * the users of each class in a single worklist pass over the dependency
+     * graph, so every dependency is followed at most once per flag.
+     */
+	private void computeGUIAndIOClasses(ClassIndex index)
 	{
-		Set<String> flagged = vmd.metricData.keySet();
-		while (flagged.size() > 0)
-			flagged = flagUsersAsGUI(vmd, flagged);
-		// Now flag all IO classes like we did GUI
-		flagged = vmd.metricData.keySet();
-		while (flagged.size() > 0)
-			flagged = flagUsersAsIO(vmd, flagged);
+		ClassMetricData[] classes = index.classes;
+		int size = classes.length;
+
+		BitSet gui = new BitSet(size), io = new BitSet(size);
+		BitSet queued = new BitSet(size);
+		// A class is queued initially and again for each flag it gains.
+		int[] worklist = new int[size * 3];
+		int head = 0, tail = 0;
+		for (int c = 0; c < size; c++)
+		{
+			if (classes[c].getSimpleMetric(ClassMetric.GUI_DISTANCE) != 0)
+				gui.set(c);
+			if (classes[c].getSimpleMetric(ClassMetric.IS_IO_CLASS) == 1)
+				io.set(c);
+			if (gui.get(c) || io.get(c))
+			{
+				worklist[tail++] = c;
+				queued.set(c);
+			}
+		}
+
+		while (head < tail)
+		{
+			int c = worklist[head++];
+			queued.clear(c);
+			boolean isGUI = gui.get(c), isIO = io.get(c);
+			NameSet users = classes[c].users;
+			for (int i = 0; i < users.size(); i++)
+			{
+				int user = index.indexOf(users.getId(i));
+				if (user == -1)
+					continue;
+				ClassMetricData userClass = classes[user];
+				boolean flagged = false;
+				if (isGUI && !gui.get(user) && userClass.getSimpleMetric(ClassMetric.GUI_DISTANCE) == 0)
+				{
+					userClass.setSimpleMetric(ClassMetric.GUI_DISTANCE, 1);
+					gui.set(user);
+					flagged = true;
+				}
+				if (isIO && !io.get(user) && userClass.getSimpleMetric(ClassMetric.IS_IO_CLASS) == 0)
+				{
+					userClass.setSimpleMetric(ClassMetric.IS_IO_CLASS, 1);
+					io.set(user);
+					flagged = true;
+				}
+				if (flagged && !queued.get(user))
+				{
+					worklist[tail++] = user;
+					queued.set(user);
+				}
+			}
+		}
 	}
 
 	/** Computes the layers and instability metrics */
@@ -322,51 +518,6 @@ public class VersionPostProcessor extends Observable
 		}
 	}
 
-	/** Given an input set, it will iterate over it and flag all users as IO */
-	private Set<String> flagUsersAsIO(VersionMetricData vmd, Set<String> classNameSet)
-	{
-		Set<String> flagged = new HashSet<String>();
-		for (String cn : classNameSet)
-		{
-			if (vmd.metricData.get(cn).getSimpleMetric(ClassMetric.IS_IO_CLASS) == 1)
-			{
-				for (String userClassName : vmd.metricData.get(cn).users)
-				{
-					if (vmd.metricData.get(userClassName).getSimpleMetric(ClassMetric.IS_IO_CLASS) == 0)
-					{
-						vmd.metricData.get(userClassName).setSimpleMetric(ClassMetric.IS_IO_CLASS, 1);
-						flagged.add(userClassName);
-					}
-				}
-			}
-		}
-		return flagged;
-	}
-
-	/** Given an input set, it will iterate over it and flag all users as GUI */
-	private Set<String> flagUsersAsGUI(VersionMetricData vmd, Set<String> classNameSet)
-	{
-		Set<String> flagged = new HashSet<String>();
-		for (String cn : classNameSet)
-		{
-			double currGUIDistance = vmd.metricData.get(cn).getSimpleMetric(ClassMetric.GUI_DISTANCE);
-			if (currGUIDistance != 0) // if it is a GUI class
-			{
-				// Check its immediate users and make them all as GUI classes as
-				// well
-				for (String userClassName : vmd.metricData.get(cn).users)
-				{
-					if (vmd.metricData.get(userClassName).getSimpleMetric(ClassMetric.GUI_DISTANCE) == 0)
-					{
-						vmd.metricData.get(userClassName).setSimpleMetric(ClassMetric.GUI_DISTANCE, 1);
-						flagged.add(userClassName);
-					}
-				}
-			}
-		}
-		return flagged;
-	}
-
 	/**
      * Updates the age for each Class in every Version. Increments age if the
      * class is an exact match from before
@@ -514,4 +665,57 @@ public class VersionPostProcessor extends Observable
 		double ed = MetricUtil.distanceFrom(cm1.getMetrics(), cm2.getMetrics(), MetricType.DISTANCE);
 		cm1.setSimpleMetric(ClassMetric.EVOLUTION_DISTANCE, StatUtils.scaleDoubleMetric(ed, 100, 1000));
 	}
+
+	/**
+     * The classes of a version, in positions that are looked up by the
+     * <code>ClassNames</code> id of their name through a hash table sized to
+     * the version rather than to the table of every name.
+     */
+	private static class ClassIndex
+	{
+		private final ClassMetricData[] classes;
+		private final int[] ids;
+		// Slots hold positions + 1, so 0 marks an empty slot.
+		private final int[] table;
+
+		public ClassIndex(VersionMetricData vmd)
+		{
+			int size = vmd.metricData.size();
+			classes = new ClassMetricData[size];
+			ids = new int[size];
+			table = new int[Integer.highestOneBit(Math.max(size, 1)) * 4];
+
+			int mask = table.length - 1;
+			int i = 0;
+			for (ClassMetricData cm : vmd.metricData.values())
+			{
+				classes[i] = cm;
+				ids[i] = ClassNames.getId(cm.get(ClassMetric.NAME));
+				int slot = hash(ids[i]) & mask;
+				while (table[slot] != 0)
+					slot = (slot + 1) & mask;
+				table[slot] = ++i;
+			}
+		}
+
+		/**
+         * @return The position of the class with the specified name id, or -1
+         *         if it is not in the version.
+         */
+		public int indexOf(int id)
+		{
+			int mask = table.length - 1;
+			for (int slot = hash(id) & mask; table[slot] != 0; slot = (slot + 1) & mask)
+			{
+				if (ids[table[slot] - 1] == id)
+					return table[slot] - 1;
+			}
+			return -1;
+		}
+
+		private static int hash(int id)
+		{
+			return id * 0x9E3779B9;
+		}
+	}
 }
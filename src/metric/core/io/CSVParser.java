@@ -0,0 +1,229 @@
+package metric.core.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads comma separated values a field at a time straight out of a reusable
+ * character buffer. Unlike iterating over a <code>TextFile</code> and
+ * splitting each line, no strings are created for lines or for numeric
+ * fields, which are decoded as they are read. Text fields are returned as
+ * strings, but a field with the same text as one read recently is returned as
+ * the same string, so the class names repeated throughout a version are only
+ * created once.
+ *
+ * Lines may end in "\n", "\r" or "\r\n". Fields are not quoted, as the values
+ * written by JSeat never contain commas. A single comma at the end of a line
+ * does not start an empty field.
+ */
+public class CSVParser
+{
+	private static final int BUFFER_SIZE = 8 * 1024;
+	// A power of two.
+	private static final int NAME_CACHE_SIZE = 4096;
+
+	private final Reader reader;
+	private char[] buffer = new char[BUFFER_SIZE];
+	// The current position, the start and end of the current line and the end
+	// of the characters read into the buffer.
+	private int position, lineStart, lineEnd, limit;
+	private boolean endOfInput, inLine;
+	private int lineNumber;
+
+	// Recently read text fields.
+	private final String[] names = new String[NAME_CACHE_SIZE];
+
+	public CSVParser(Reader reader)
+	{
+		this.reader = reader;
+	}
+
+	/**
+     * Moves to the start of the next line, skipping whatever is left of the
+     * current one.
+     *
+     * @return Whether there is another line.
+     */
+	public boolean nextLine() throws IOException
+	{
+		if (inLine)
+		{
+			// Skip the line terminator.
+			position = lineEnd;
+			if (position < limit && buffer[position] == '\r')
+			{
+				position++;
+				if (position == limit)
+					fill();
+			}
+			if (position < limit && buffer[position] == '\n')
+				position++;
+		}
+
+		// Read until the whole of the line is in the buffer.
+		int scan = position;
+		while (true)
+		{
+			while (scan < limit && buffer[scan] != '\n' && buffer[scan] != '\r')
+				scan++;
+			if (scan < limit || endOfInput)
+				break;
+			scan -= position;
+			fill();
+			scan += position;
+		}
+
+		inLine = position < limit;
+		if (!inLine)
+			return false;
+		lineStart = position;
+		lineEnd = scan;
+		lineNumber++;
+		return true;
+	}
+
+	// Moves the unread characters to the start of the buffer, growing it if
+	// they fill it, and reads more after them.
+	private void fill() throws IOException
+	{
+		int remaining = limit - position;
+		if (remaining == buffer.length)
+		{
+			char[] larger = new char[buffer.length * 2];
+			System.arraycopy(buffer, position, larger, 0, remaining);
+			buffer = larger;
+		} else
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+		lineEnd -= position;
+		lineStart -= position;
+		position = 0;
+		limit = remaining;
+
+		int read = reader.read(buffer, limit, buffer.length - limit);
+		if (read == -1)
+			endOfInput = true;
+		else
+			limit += read;
+	}
+
+	/**
+     * @return Whether every field on the current line has been read.
+     */
+	public boolean isEndOfLine()
+	{
+		return position >= lineEnd;
+	}
+
+	/**
+     * @return The next character on the line without reading it, or 0 at the
+     *         end of the line.
+     */
+	public char peek()
+	{
+		return position < lineEnd ? buffer[position] : 0;
+	}
+
+	/**
+     * Reads the next field as an int.
+     *
+     * @throws NumberFormatException If the field is not an int.
+     */
+	public int nextInt()
+	{
+		int i = position;
+		boolean negative = false;
+		if (i < lineEnd && (buffer[i] == '-' || buffer[i] == '+'))
+			negative = buffer[i++] == '-';
+
+		int start = i;
+		long value = 0;
+		while (i < lineEnd && buffer[i] != ',')
+		{
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE)
+				throw new NumberFormatException("For input string: \"" + field() + "\" on line " + lineNumber);
+			value = value * 10 + digit;
+			i++;
+		}
+		if (negative)
+			value = -value;
+		if (i == start || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+			throw new NumberFormatException("For input string: \"" + field() + "\" on line " + lineNumber);
+
+		skipField(i);
+		return (int) value;
+	}
+
+	/**
+     * Reads the next field as a string, which is empty if the field is.
+     */
+	public String nextString()
+	{
+		char[] buffer = this.buffer;
+		int start = position, end = lineEnd, hash = 0, i = start;
+		while (i < end && buffer[i] != ',')
+			hash = 31 * hash + buffer[i++];
+		int length = i - start;
+		skipField(i);
+
+		int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+		String name = names[slot];
+		if (name != null && matches(name, buffer, start, length))
+			return name;
+		name = new String(buffer, start, length);
+		names[slot] = name;
+		return name;
+	}
+
+	/**
+     * Reads the remainder of the current line.
+     */
+	public String restOfLine()
+	{
+		String rest = new String(buffer, position, lineEnd - position);
+		position = lineEnd;
+		return rest;
+	}
+
+	/**
+     * @return The whole of the current line, for reporting errors.
+     */
+	public String getLine()
+	{
+		return inLine ? new String(buffer, lineStart, lineEnd - lineStart) : null;
+	}
+
+	/**
+     * @return The number of the current line, starting at 1.
+     */
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	// Moves past the field ending at the specified index and its comma.
+	private void skipField(int end)
+	{
+		position = end < lineEnd ? end + 1 : end;
+	}
+
+	private String field()
+	{
+		int end = position;
+		while (end < lineEnd && buffer[end] != ',')
+			end++;
+		return new String(buffer, position, end - position);
+	}
+
+	private static boolean matches(String name, char[] buffer, int start, int length)
+	{
+		if (name.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+		{
+			if (name.charAt(i) != buffer[start + i])
+				return false;
+		}
+		return true;
+	}
+}
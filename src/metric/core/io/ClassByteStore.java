@@ -0,0 +1,197 @@
+package metric.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * ClassByteStore holds the contents of the files read from an archive in a
+ * single buffer. Each file is read exactly once and is indexed by its entry
+ * name, so the archive itself does not have to be kept open. Files that have
+ * already been read into arrays of their own are kept in those arrays rather
+ * than being copied.
+ */
+public class ClassByteStore
+{
+	private byte[] buffer;
+	private int size;
+	// Bytes held in arrays of their own rather than in the buffer.
+	private long separateBytes;
+	private LinkedHashMap<String, StoredEntry> entries = new LinkedHashMap<String, StoredEntry>();
+
+	/**
+     * @param initialCapacity The expected total size of the stored files.
+     */
+	public ClassByteStore(int initialCapacity)
+	{
+		buffer = new byte[Math.max(initialCapacity, 0)];
+	}
+
+	/**
+     * Reads the specified stream to its end and stores its contents under the
+     * specified name. The CRC32 of the contents is computed as they are stored.
+     * The stream is not closed.
+     *
+     * @param name The entry name.
+     * @param lastModified The time the entry was last modified.
+     * @param in The stream to read.
+     * @throws IOException
+     */
+	public void add(String name, long lastModified, InputStream in) throws IOException
+	{
+		int start = size;
+		read(in);
+		CRC32 crc = new CRC32();
+		crc.update(buffer, start, size - start);
+		entries.put(name, new StoredEntry(start, size - start, lastModified, crc.getValue()));
+	}
+
+	/**
+     * Reads the specified stream to its end and stores its contents under the
+     * specified name. The stream is not closed.
+     *
+     * @param name The entry name.
+     * @param lastModified The time the entry was last modified.
+     * @param checksum The known CRC32 of the contents.
+     * @param in The stream to read.
+     * @throws IOException
+     */
+	public void add(String name, long lastModified, long checksum, InputStream in) throws IOException
+	{
+		int start = size;
+		read(in);
+		entries.put(name, new StoredEntry(start, size - start, lastModified, checksum));
+	}
+
+	/**
+     * Copies the specified region of an array and stores it under the
+     * specified name.
+     *
+     * @param name The entry name.
+     * @param lastModified The time the entry was last modified.
+     * @param checksum The known CRC32 of the contents.
+     */
+	public void add(String name, long lastModified, long checksum, byte[] bytes, int offset, int length)
+	{
+		if (size + length > buffer.length)
+			grow(size + length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		entries.put(name, new StoredEntry(size, length, lastModified, checksum));
+		size += length;
+	}
+
+	/**
+     * Stores the specified array under the specified name. The array is not
+     * copied, so it must not be modified afterwards.
+     *
+     * @param name The entry name.
+     * @param lastModified The time the entry was last modified.
+     * @param checksum The known CRC32 of the contents.
+     * @param bytes The contents of the entry.
+     */
+	public void add(String name, long lastModified, long checksum, byte[] bytes)
+	{
+		StoredEntry entry = new StoredEntry(0, bytes.length, lastModified, checksum);
+		entry.bytes = bytes;
+		entries.put(name, entry);
+		separateBytes += bytes.length;
+	}
+
+	/**
+     * Records an entry without reading its contents. Its name, size and
+     * checksum can still be retrieved, along with the specified substitute for
+     * its contents.
+     */
+	public void addWithoutContent(String name, long lastModified, long checksum, long length, Object substitute)
+	{
+		StoredEntry entry = new StoredEntry(-1, (int) length, lastModified, checksum);
+		entry.substitute = substitute;
+		entries.put(name, entry);
+	}
+
+	private void read(InputStream in) throws IOException
+	{
+		while (true)
+		{
+			// Stores are usually sized to exactly what they hold, so the
+			// buffer is only grown once more data has actually arrived.
+			if (size == buffer.length)
+			{
+				int next = in.read();
+				if (next == -1)
+					break;
+				grow(size + 1);
+				buffer[size++] = (byte) next;
+			}
+			int read = in.read(buffer, size, buffer.length - size);
+			if (read == -1)
+				break;
+			size += read;
+		}
+	}
+
+	/**
+     * @param name The entry name.
+     * @return A new InputData over the stored contents of the entry, or null if
+     *         no entry with that name is stored.
+     */
+	public InputData get(String name)
+	{
+		StoredEntry entry = entries.get(name);
+		if (entry == null)
+			return null;
+		if (entry.offset == -1)
+			return new InputData(name, entry.lastModified, entry.checksum, entry.length, entry.substitute);
+		return new InputData(name, entry.lastModified, entry.checksum, entry.bytes != null ? entry.bytes : buffer,
+				entry.offset, entry.length);
+	}
+
+	/**
+     * @return The names of the stored entries, in the order they were added.
+     */
+	public Set<String> getNames()
+	{
+		return entries.keySet();
+	}
+
+	/**
+     * @return The number of bytes held by this store.
+     */
+	public long sizeInBytes()
+	{
+		return size + separateBytes;
+	}
+
+	/**
+     * @return The number of bytes allocated to hold the stored files.
+     */
+	public long capacityInBytes()
+	{
+		return buffer.length + separateBytes;
+	}
+
+	private void grow(int minCapacity)
+	{
+		byte[] grown = new byte[Math.max(Math.max(buffer.length * 2, minCapacity), 1024)];
+		System.arraycopy(buffer, 0, grown, 0, size);
+		buffer = grown;
+	}
+
+	private static class StoredEntry
+	{
+		private final int offset, length;
+		private final long lastModified, checksum;
+		private Object substitute;
+		private byte[] bytes;
+
+		public StoredEntry(int offset, int length, long lastModified, long checksum)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.checksum = checksum;
+		}
+	}
+}
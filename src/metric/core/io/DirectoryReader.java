@@ -0,0 +1,368 @@
+package metric.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import metric.core.WorkerThreadFactory;
+
+/**
+ * Reads the class files under a directory into a <code>ClassByteStore</code>
+ * on several threads. Exploded build outputs can hold tens of thousands of
+ * small class files, and listing the directories and opening the files one at
+ * a time leaves extraction waiting on the disk. Every sub-directory is listed
+ * and every class file is read as a separate task instead, so many requests are
+ * outstanding at once.
+ *
+ * The tasks are run by a fixed number of workers on an executor that can be
+ * shared with the rest of extraction, so reading many directories does not
+ * create threads for each of them.
+ *
+ * The class files are stored under their path relative to the directory, in
+ * the same form as the entry names of an archive, and in name order so the
+ * result does not depend on the order in which the reads complete. Each file
+ * is kept in the array it was read into.
+ */
+public class DirectoryReader
+{
+	/** The number of threads used if none is specified. */
+	public static final int DEFAULT_THREADS = 8;
+
+	private Logger logger = Logger.getLogger(getClass().getSimpleName());
+	private final int numThreads;
+	private final ExecutorService executor;
+	private InputDataSet.ContentFilter contentFilter;
+
+	// The tasks waiting for a worker, and those waiting or running.
+	private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+	private int pending;
+	private boolean cancelled;
+	private final Map<String, ReadFile> classFiles = new TreeMap<String, ReadFile>();
+	private final List<File> archives = new ArrayList<File>();
+
+	public DirectoryReader()
+	{
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+     * @param numThreads The number of directories listed and files read at
+     *            once.
+     */
+	public DirectoryReader(int numThreads)
+	{
+		this(null, numThreads);
+	}
+
+	/**
+     * @param executor The executor the workers run on, or null to create a
+     *            pool for each read.
+     * @param numThreads The number of directories listed and files read at
+     *            once.
+     */
+	public DirectoryReader(ExecutorService executor, int numThreads)
+	{
+		this.executor = executor;
+		this.numThreads = Math.max(numThreads, 1);
+	}
+
+	/**
+     * Sets a filter that class files are checked against once they are read.
+     * The contents of files that are not required are not stored, only their
+     * name, size and checksum.
+     */
+	public void setContentFilter(InputDataSet.ContentFilter contentFilter)
+	{
+		this.contentFilter = contentFilter;
+	}
+
+	/**
+     * Reads every class file under the specified directory. Archives found
+     * under the directory are not read, they are listed by
+     * <code>getArchives</code> instead.
+     *
+     * @param dir The directory to read.
+     * @param recursive Whether sub-directories are read as well.
+     * @return The class files, stored under their relative path.
+     * @throws InterruptedIOException If the calling thread is interrupted
+     *             before all the files have been read.
+     */
+	public synchronized ClassByteStore read(File dir, boolean recursive) throws IOException
+	{
+		classFiles.clear();
+		archives.clear();
+		cancelled = false;
+		ExecutorService pool = executor;
+		if (pool == null)
+			pool = Executors.newFixedThreadPool(numThreads, new WorkerThreadFactory("DirectoryReader"));
+		try
+		{
+			submit(new ListTask(dir, "", recursive));
+			for (int i = 0; i < numThreads; i++)
+				pool.execute(new Worker());
+			while (pending > 0)
+				wait();
+			if (cancelled)
+				throw new InterruptedIOException("Reading " + dir + " was interrupted.");
+		} catch (RejectedExecutionException e)
+		{
+			// The executor has been shut down, i.e. extraction was interrupted.
+			cancel();
+			throw new InterruptedIOException("Reading " + dir + " was interrupted.");
+		} catch (InterruptedException e)
+		{
+			cancel();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Reading " + dir + " was interrupted.");
+		} finally
+		{
+			if (pool != executor)
+				pool.shutdownNow();
+		}
+
+		ClassByteStore store = new ClassByteStore(0);
+		for (Map.Entry<String, ReadFile> entry : classFiles.entrySet())
+		{
+			ReadFile file = entry.getValue();
+			if (file.bytes == null)
+				store.addWithoutContent(entry.getKey(), file.lastModified, file.checksum, file.size, file.substitute);
+			else
+				store.add(entry.getKey(), file.lastModified, file.checksum, file.bytes);
+		}
+		classFiles.clear();
+		return store;
+	}
+
+	// Drops the tasks that have not started and waits for those that have, so
+	// none of them runs into the next read. Each task reads a single file or
+	// lists a single directory, so this does not take long.
+	private void cancel()
+	{
+		abandon();
+		boolean interrupted = false;
+		while (pending > 0)
+		{
+			try
+			{
+				wait();
+			} catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+     * @return The archives found under the directory by the last read.
+     */
+	public synchronized List<File> getArchives()
+	{
+		return new ArrayList<File>(archives);
+	}
+
+	// Tasks are only submitted by the reading thread or by a running task, so
+	// pending cannot reach zero before every task has completed.
+	private synchronized void submit(Runnable task)
+	{
+		if (cancelled)
+			return;
+		tasks.add(task);
+		pending++;
+		notifyAll();
+	}
+
+	// Drops the tasks that have not started.
+	private synchronized void abandon()
+	{
+		cancelled = true;
+		pending -= tasks.size();
+		tasks.clear();
+		notifyAll();
+	}
+
+	// Waits for a task, or returns null once there are none left to wait for.
+	private synchronized Runnable take() throws InterruptedException
+	{
+		while (tasks.isEmpty() && pending > 0 && !cancelled)
+			wait();
+		return tasks.isEmpty() ? null : tasks.removeFirst();
+	}
+
+	private synchronized void completed()
+	{
+		if (--pending == 0)
+			notifyAll();
+	}
+
+	private synchronized void addClassFile(String name, ReadFile file)
+	{
+		classFiles.put(name, file);
+	}
+
+	private synchronized void addArchive(File f)
+	{
+		archives.add(f);
+	}
+
+	/**
+     * Reads the whole file into a new array with a single channel read where
+     * possible.
+     */
+	private static byte[] readFully(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+				throw new IOException(f + " is too large.");
+			ByteBuffer buffer = ByteBuffer.allocate((int) length);
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) == -1)
+					break;
+			}
+			if (buffer.hasRemaining()) // Truncated while it was being read.
+			{
+				byte[] bytes = new byte[buffer.position()];
+				System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+				return bytes;
+			}
+			return buffer.array();
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	/** Runs tasks until every task of the read has completed. */
+	private class Worker implements Runnable
+	{
+		public void run()
+		{
+			try
+			{
+				Runnable task;
+				while ((task = take()) != null)
+				{
+					try
+					{
+						task.run();
+					} finally
+					{
+						completed();
+					}
+				}
+			} catch (InterruptedException e)
+			{
+				// The executor is being shut down, so the tasks left would
+				// never be run.
+				abandon();
+			}
+		}
+	}
+
+	/** Lists a directory, submitting a task for each entry that is needed. */
+	private class ListTask implements Runnable
+	{
+		private final File dir;
+		private final String prefix;
+		private final boolean recursive;
+
+		public ListTask(File dir, String prefix, boolean recursive)
+		{
+			this.dir = dir;
+			this.prefix = prefix;
+			this.recursive = recursive;
+		}
+
+		public void run()
+		{
+			File[] files = dir.listFiles();
+			if (files == null)
+			{
+				logger.log(Level.WARNING, "Skipping " + dir + ": Could not list directory.");
+				return;
+			}
+			for (File f : files)
+			{
+				String name = prefix + f.getName();
+				if (f.isDirectory())
+				{
+					if (recursive && f.canRead())
+						submit(new ListTask(f, name + "/", true));
+				} else if (FileUtil.isClassFile(name) || FileUtil.isInnerClassFile(name))
+					submit(new ReadTask(f, name));
+				else if (FileUtil.isArchive(name))
+					addArchive(f);
+			}
+		}
+	}
+
+	/** Reads a single class file into memory. */
+	private class ReadTask implements Runnable
+	{
+		private final File file;
+		private final String name;
+
+		public ReadTask(File file, String name)
+		{
+			this.file = file;
+			this.name = name;
+		}
+
+		public void run()
+		{
+			try
+			{
+				byte[] bytes = readFully(file);
+				CRC32 crc = new CRC32();
+				crc.update(bytes, 0, bytes.length);
+				long checksum = crc.getValue();
+				Object substitute = null;
+				if (contentFilter != null)
+					substitute = contentFilter.getSubstitute(name, checksum, bytes.length);
+				if (substitute != null)
+					addClassFile(name, new ReadFile(null, file.lastModified(), checksum, bytes.length, substitute));
+				else
+					addClassFile(name, new ReadFile(bytes, file.lastModified(), checksum, bytes.length, null));
+			} catch (IOException e)
+			{
+				logger.log(Level.WARNING, "Skipping " + name + ": Could not read file.");
+			}
+		}
+	}
+
+	private static class ReadFile
+	{
+		private final byte[] bytes;
+		private final long lastModified, checksum, size;
+		private final Object substitute;
+
+		public ReadFile(byte[] bytes, long lastModified, long checksum, long size, Object substitute)
+		{
+			this.bytes = bytes;
+			this.lastModified = lastModified;
+			this.checksum = checksum;
+			this.size = size;
+			this.substitute = substitute;
+		}
+	}
+}
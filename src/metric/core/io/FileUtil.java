@@ -9,12 +9,50 @@ import java.util.Set;
 /** A collection of file utilities that dont' seem to fit anywhere else */
 public class FileUtil
 {
-	/** True if file is a JAR or ZIP file */
+	// Where the classes of web applications and executable jars are kept.
+	private static final String[] CLASS_ROOTS = { "WEB-INF/classes/", "BOOT-INF/classes/" };
+
+	/** True if file is a JAR, WAR or EAR file */
 	public static boolean isArchive(String fileName)
 	{
 		if (fileName == null)
 			return false;
-		return fileName.endsWith(".jar"); // || fileName.endsWith(".zip")));
+		return fileName.endsWith(".jar") || fileName.endsWith(".war") || fileName.endsWith(".ear"); // || fileName.endsWith(".zip")));
+	}
+
+	/**
+     * Checks if an archive entry is a library embedded in the archive, that is
+     * an archive in a lib folder such as WEB-INF/lib of a web application or
+     * lib of an enterprise application.
+     * 
+     * @param entryName The name of the archive entry.
+     */
+	public static boolean isEmbeddedLibrary(String entryName)
+	{
+		if (!isArchive(entryName))
+			return false;
+		int end = entryName.lastIndexOf('/');
+		if (end == -1)
+			return false;
+		int start = entryName.lastIndexOf('/', end - 1);
+		return entryName.substring(start + 1, end).equals("lib");
+	}
+
+	/**
+     * Returns the name of an archive entry relative to the root of its class
+     * path, so the classes of a web application are named as they would be in
+     * a jar.
+     * 
+     * @param entryName The name of the archive entry.
+     */
+	public static String getClassPathName(String entryName)
+	{
+		for (String root : CLASS_ROOTS)
+		{
+			if (entryName.startsWith(root))
+				return entryName.substring(root.length());
+		}
+		return entryName;
 	}
 
 	/**
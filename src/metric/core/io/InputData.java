@@ -1,10 +1,13 @@
 package metric.core.io;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 public class InputData
@@ -12,12 +15,24 @@ public class InputData
 	private final InputStream stream;
 	private final long lastModified;
 	private final String name;
+	private final byte[] bytes;
+	private final int offset, length;
+	// CRC32 of the contents, -1 if not known.
+	private final long checksum;
+	private final long size;
+	// Kept instead of the contents, if they were not read.
+	private final Object substitute;
 
 	public InputData(File file) throws FileNotFoundException
 	{
 		this.stream = new BufferedInputStream(new FileInputStream(file));
 		this.lastModified = file.lastModified();
 		this.name = file.getName();
+		this.bytes = null;
+		this.offset = this.length = 0;
+		this.checksum = -1;
+		this.size = file.length();
+		this.substitute = null;
 	}
 
 	public InputData(ZipEntry entry, InputStream stream) throws FileNotFoundException
@@ -25,6 +40,54 @@ public class InputData
 		this.stream = stream;
 		this.lastModified = entry.getTime();
 		this.name = entry.getName();
+		this.bytes = null;
+		this.offset = this.length = 0;
+		this.checksum = entry.getCrc();
+		this.size = entry.getSize();
+		this.substitute = null;
+	}
+
+	/**
+     * Creates an InputData over a region of a byte array, such as the buffer
+     * of a <code>ClassByteStore</code>. The array is not copied.
+     */
+	public InputData(String name, long lastModified, byte[] bytes, int offset, int length)
+	{
+		this(name, lastModified, -1, bytes, offset, length);
+	}
+
+	/**
+     * Creates an InputData over a region of a byte array whose CRC32 is
+     * already known.
+     */
+	public InputData(String name, long lastModified, long checksum, byte[] bytes, int offset, int length)
+	{
+		this.stream = new ByteArrayInputStream(bytes, offset, length);
+		this.lastModified = lastModified;
+		this.name = name;
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+		this.checksum = checksum;
+		this.size = length;
+		this.substitute = null;
+	}
+
+	/**
+     * Creates an InputData for an entry whose contents were not read, so only
+     * its name, size, checksum and the substitute for its contents are
+     * available. Its stream is empty.
+     */
+	public InputData(String name, long lastModified, long checksum, long size, Object substitute)
+	{
+		this.stream = new ByteArrayInputStream(new byte[0]);
+		this.lastModified = lastModified;
+		this.name = name;
+		this.bytes = null;
+		this.offset = this.length = 0;
+		this.checksum = checksum;
+		this.size = size;
+		this.substitute = substitute;
 	}
 
 	public InputStream getInputStream()
@@ -32,6 +95,83 @@ public class InputData
 		return stream;
 	}
 
+	/**
+     * @return Whether the contents of this InputData are held in memory, in
+     *         which case they can be accessed directly using
+     *         <code>getBytes</code>, <code>getOffset</code> and
+     *         <code>getLength</code>.
+     */
+	public boolean hasBytes()
+	{
+		return bytes != null;
+	}
+
+	public byte[] getBytes()
+	{
+		return bytes;
+	}
+
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+     * @return The CRC32 of the contents, or -1 if it is not known.
+     */
+	public long getChecksum()
+	{
+		return checksum;
+	}
+
+	/**
+     * @return The size of the contents in bytes, or -1 if it is not known.
+     */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/**
+     * Returns an InputData whose checksum is known. If the checksum of this
+     * InputData is not known, its contents are read into memory to compute it
+     * and this InputData should no longer be used.
+     * 
+     * @return This InputData or an equivalent one held in memory.
+     * @throws IOException
+     */
+	public InputData withChecksum() throws IOException
+	{
+		if (checksum != -1)
+			return this;
+
+		if (bytes != null)
+		{
+			CRC32 crc = new CRC32();
+			crc.update(bytes, offset, length);
+			return new InputData(name, lastModified, crc.getValue(), bytes, offset, length);
+		}
+
+		ClassByteStore store = new ClassByteStore((int) Math.max(size, 0));
+		store.add(name, lastModified, stream);
+		stream.close();
+		return store.get(name);
+	}
+
+	/**
+     * @return What a <code>ContentFilter</code> substituted for the contents,
+     *         or null if they were read.
+     */
+	public Object getSubstitute()
+	{
+		return substitute;
+	}
+
 	public long getLastModifiedTime()
 	{
 		return lastModified;
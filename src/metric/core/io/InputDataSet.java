@@ -4,31 +4,41 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 public class InputDataSet implements Iterable<InputData>
 {
 	private Logger logger = Logger.getLogger(getClass().getSimpleName());
 	private HashSet<File> files = new HashSet<File>();
 	private HashMap<String, InputData> idata;
+	// archives read into memory by inflate, reused when iterating.
+	private HashMap<File, ClassByteStore> archives;
+	// directories read into memory when they are added.
+	private HashMap<File, ClassByteStore> directories = new HashMap<File, ClassByteStore>();
+	private ContentFilter contentFilter;
+	private int readThreads = DirectoryReader.DEFAULT_THREADS;
+	private ExecutorService readPool;
+	private boolean embeddedLibraries;
 
-	private boolean processingArchive = false;
 	private long fileSize = 0;
 
 	public String jarFileName, versionId, productName, shortName;
 	public int RSN;
 
-	// streams open outside of the DataSetIterator.
-	private boolean haveOpenStreams;
-
 	public InputDataSet()
 	{
 	}
@@ -40,7 +50,61 @@ public class InputDataSet implements Iterable<InputData>
 		this.RSN = RSN;
 		this.productName = productName;
 		this.shortName = shortName;
-		haveOpenStreams = false;
+	}
+
+	/**
+     * Decides whether the contents of an archive entry have to be read when
+     * the archive is read into memory.
+     */
+	public interface ContentFilter
+	{
+		/**
+         * Entries with a substitute are not read, and the substitute is kept
+         * with them instead, so whatever made the contents unnecessary cannot
+         * have changed by the time the entry is used.
+         * 
+         * @param name The entry name.
+         * @param checksum The CRC32 of the entry contents.
+         * @param size The size of the entry contents.
+         * @return A substitute for the contents of the entry, or null if its
+         *         contents are needed.
+         */
+		Object getSubstitute(String name, long checksum, long size);
+	}
+
+	/**
+     * Sets a filter that archive entries are checked against before their
+     * contents are read. Entries that are not required are still listed, but
+     * only their name, size, checksum and substitute are available.
+     */
+	public void setContentFilter(ContentFilter contentFilter)
+	{
+		this.contentFilter = contentFilter;
+	}
+
+	/**
+     * Sets the number of threads used to read the class files of a directory
+     * when it is added, and the executor they run on. If the executor is null
+     * a pool is created for each directory.
+     */
+	public void setReadThreads(int readThreads, ExecutorService readPool)
+	{
+		this.readThreads = readThreads;
+		this.readPool = readPool;
+	}
+
+	/**
+     * Sets whether the libraries embedded in an archive, such as the jars in
+     * WEB-INF/lib of a web application, are read along with its own classes.
+     * Other nested archives, such as the modules of an enterprise application,
+     * are always read.
+     * 
+     * @param embeddedLibraries Whether embedded libraries are read. Defaults
+     *            to false.
+     */
+	public void setEmbeddedLibraries(boolean embeddedLibraries)
+	{
+		this.embeddedLibraries = embeddedLibraries;
 	}
 
 	/**
@@ -50,11 +114,55 @@ public class InputDataSet implements Iterable<InputData>
      * @param name the name of the stream to retrieve.
      * @return the corresponding input data stream.
      */
-	public InputData getInputData(String name)
+	public synchronized InputData getInputData(String name)
 	{
 		return idata.get(name);
 	}
 
+	/**
+     * Returns and removes the InputData corresponding to the name specified if
+     * it exists in this <code>InputDataSet</code>. Each entry can only be
+     * claimed once, so several threads can safely look up inner classes from
+     * the same data set. The caller is responsible for closing the stream of
+     * the claimed InputData.
+     * 
+     * @param name the name of the stream to claim.
+     * @return the corresponding input data, or null if it does not exist or
+     *         has already been claimed.
+     */
+	public synchronized InputData claimInputData(String name)
+	{
+		if (idata == null)
+			return null;
+		return idata.remove(name);
+	}
+
+	/**
+     * Removes and returns every inflated inner class file, so they can be
+     * extracted independently of the classes that declare them. The caller is
+     * responsible for closing the streams of the returned InputData.
+     * 
+     * @return The inner class files of this data set.
+     */
+	public synchronized List<InputData> claimInnerClassData()
+	{
+		List<InputData> inner = new ArrayList<InputData>();
+		if (idata == null)
+			return inner;
+
+		Iterator<Entry<String, InputData>> it = idata.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Entry<String, InputData> entry = it.next();
+			if (FileUtil.isInnerClassFile(entry.getKey()))
+			{
+				inner.add(entry.getValue());
+				it.remove();
+			}
+		}
+		return inner;
+	}
+
 	public long sizeInBytes()
 	{
 		return fileSize;
@@ -72,45 +180,165 @@ public class InputDataSet implements Iterable<InputData>
 	/**
      * Inflates all inner class files as these will need to be referenced later.
      * Only inner classes are inflated to keep memory requirements minimal.
+     * Each archive is read once into a <code>ClassByteStore</code> and closed
+     * straight away, the class files are then served from memory.
      */
 	public void inflate(boolean onlyInnerClasses)
 	{
 		if (idata == null)
 			idata = new HashMap<String, InputData>();
+		if (archives == null)
+			archives = new HashMap<File, ClassByteStore>();
 
-		Iterator it = files.iterator();
-		while (it.hasNext())
+		for (File f : files)
 		{
-			File f = (File) it.next();
+			if (!FileUtil.isArchive(f.toString()))
+				continue;
 			try
-			{ // This maps each inputstream to the classname.
-				ZipFile zipFile = new ZipFile(f);
-				Enumeration e = zipFile.entries();
-				while (e.hasMoreElements())
+			{ // This maps each stored entry to the classname.
+				ClassByteStore store = readArchive(f, onlyInnerClasses);
+				archives.put(f, store);
+				for (String name : store.getNames())
 				{
-					ZipEntry ze = (ZipEntry) e.nextElement();
-					if (onlyInnerClasses && FileUtil.isInnerClassFile(ze.getName()))
-					{
-						InputData id = new InputData(ze, zipFile.getInputStream(ze));
-						idata.put(ze.getName(), id);
-						haveOpenStreams = true;
-					} else
+					if (!onlyInnerClasses || FileUtil.isInnerClassFile(name))
+						idata.put(name, store.get(name));
+				}
+			} catch (IOException e) // shouldn't happen.
+			{
+				e.printStackTrace();
+			}
+		}
+		for (ClassByteStore store : directories.values())
+		{
+			for (String name : store.getNames())
+			{
+				if (!onlyInnerClasses || FileUtil.isInnerClassFile(name))
+					idata.put(name, store.get(name));
+			}
+		}
+	}
+
+	/**
+     * Reads the entries of the specified archive into a new
+     * <code>ClassByteStore</code> and closes the archive. The entries of
+     * nested archives are streamed out of the archive and stored along with
+     * its own entries. Entries are named relative to the root of their class
+     * path, and an entry that is already stored is not replaced, so the
+     * classes of the archive itself take precedence over nested ones.
+     * 
+     * @param classFilesOnly Whether only class files should be read.
+     */
+	private ClassByteStore readArchive(File f, boolean classFilesOnly) throws IOException
+	{
+		ZipFile zipFile = new ZipFile(f);
+		try
+		{
+			List<ZipEntry> entries = new ArrayList<ZipEntry>();
+			List<ZipEntry> nested = new ArrayList<ZipEntry>();
+			Map<ZipEntry, Object> skipped = new HashMap<ZipEntry, Object>();
+			long size = 0;
+			Enumeration<? extends ZipEntry> e = zipFile.entries();
+			while (e.hasMoreElements())
+			{
+				ZipEntry ze = e.nextElement();
+				if (ze.isDirectory())
+					continue;
+				if (isNestedArchive(ze.getName()))
+					nested.add(ze);
+				else if (!classFilesOnly || FileUtil.isClassFile(ze.getName()) || FileUtil.isInnerClassFile(ze.getName()))
+				{
+					String name = FileUtil.getClassPathName(ze.getName());
+					if (contentFilter != null && ze.getCrc() != -1 && ze.getSize() != -1)
 					{
-						InputData id = new InputData(ze, zipFile.getInputStream(ze));
-						idata.put(ze.getName(), id);
-						haveOpenStreams = true;
+						Object substitute = contentFilter.getSubstitute(name, ze.getCrc(), ze.getSize());
+						if (substitute != null)
+							skipped.put(ze, substitute);
 					}
+					entries.add(ze);
+					if (ze.getSize() > 0 && !skipped.containsKey(ze))
+						size += ze.getSize();
+				}
+			}
 
+			ClassByteStore store = new ClassByteStore((int) Math.min(size, Integer.MAX_VALUE));
+			for (ZipEntry ze : entries)
+			{
+				String name = FileUtil.getClassPathName(ze.getName());
+				if (store.getNames().contains(name))
+					continue;
+				Object substitute = skipped.get(ze);
+				if (substitute != null)
+				{
+					store.addWithoutContent(name, ze.getTime(), ze.getCrc(), ze.getSize(), substitute);
+					continue;
 				}
-			} catch (IOException e) // shouldn't happen.
+				InputStream is = zipFile.getInputStream(ze);
+				try
+				{
+					store.add(name, ze.getTime(), ze.getCrc(), is);
+				} finally
+				{
+					is.close();
+				}
+			}
+			for (ZipEntry ze : nested)
 			{
-				e.printStackTrace();
+				InputStream is = zipFile.getInputStream(ze);
+				try
+				{
+					readNestedArchive(new ZipInputStream(is), store, classFilesOnly);
+				} finally
+				{
+					is.close();
+				}
 			}
+			return store;
+		} finally
+		{
+			zipFile.close();
 		}
 	}
 
 	/**
-     * This closes any files streams that were opened earlier during inflation.
+     * Reads the entries of a nested archive from the stream over its parent
+     * entry, without extracting it to a file. The stream is not closed, as
+     * that would close the stream of the parent archive.
+     */
+	private void readNestedArchive(ZipInputStream in, ClassByteStore store, boolean classFilesOnly)
+			throws IOException
+	{
+		ZipEntry ze;
+		while ((ze = in.getNextEntry()) != null)
+		{
+			String name = FileUtil.getClassPathName(ze.getName());
+			if (ze.isDirectory() || store.getNames().contains(name))
+				continue;
+			if (isNestedArchive(ze.getName()))
+				readNestedArchive(new ZipInputStream(in), store, classFilesOnly);
+			else if (!classFilesOnly || FileUtil.isClassFile(name) || FileUtil.isInnerClassFile(name))
+			{
+				// The checksum and size are only known up front if the entry
+				// was stored without a data descriptor.
+				Object substitute = null;
+				if (contentFilter != null && ze.getCrc() != -1 && ze.getSize() != -1)
+					substitute = contentFilter.getSubstitute(name, ze.getCrc(), ze.getSize());
+				if (ze.getCrc() == -1 || ze.getSize() == -1)
+					store.add(name, ze.getTime(), in);
+				else if (substitute != null)
+					store.addWithoutContent(name, ze.getTime(), ze.getCrc(), ze.getSize(), substitute);
+				else
+					store.add(name, ze.getTime(), ze.getCrc(), in);
+			}
+		}
+	}
+
+	private boolean isNestedArchive(String entryName)
+	{
+		return FileUtil.isArchive(entryName) && (embeddedLibraries || !FileUtil.isEmbeddedLibrary(entryName));
+	}
+
+	/**
+     * This releases the class files that were read earlier during inflation.
      * 
      * @throws IOException
      */
@@ -127,6 +355,7 @@ public class InputDataSet implements Iterable<InputData>
 			}
 			idata = null;
 		}
+		archives = null;
 	}
 
 	/**
@@ -136,8 +365,8 @@ public class InputDataSet implements Iterable<InputData>
      */
 	public void close() throws IOException
 	{
-		if (haveOpenStreams)
-			deflate();
+		deflate();
+		directories.clear();
 	}
 
 	/**
@@ -151,10 +380,28 @@ public class InputDataSet implements Iterable<InputData>
 		addInputFile(FileUtil.getFileHandle(fileName));
 	}
 
+	/**
+     * Reads the class files under the specified directory into memory on
+     * several threads. They are then served like the entries of an archive,
+     * named by their path relative to the directory. Archives under the
+     * directory are added as input files.
+     */
 	public void addInputDir(String dirName, boolean recursive) throws IOException
 	{
-		Set<File> dirFiles = FileUtil.getFiles(dirName, recursive);
-		for (File f : dirFiles)
+		File dir = FileUtil.getFileHandle(dirName);
+		if (!dir.isDirectory())
+			return;
+
+		DirectoryReader reader = new DirectoryReader(readPool, readThreads);
+		reader.setContentFilter(contentFilter);
+		ClassByteStore store = reader.read(dir, recursive);
+		if (!store.getNames().isEmpty())
+		{
+			directories.put(dir, store);
+			files.add(dir);
+			fileSize += store.sizeInBytes();
+		}
+		for (File f : reader.getArchives())
 			addInputFile(f);
 	}
 
@@ -171,8 +418,9 @@ public class InputDataSet implements Iterable<InputData>
 	class DataSetIterator implements Iterator<InputData>
 	{
 		File nextFile;
-		ZipFile zipFile = null;
-		ZipFileIterator zipIter = null;
+		boolean processingArchive = false;
+		ClassByteStore archive = null;
+		Iterator<String> archiveIter = null;
 		Iterator<File> setIter;
 
 		public DataSetIterator()
@@ -184,9 +432,10 @@ public class InputDataSet implements Iterable<InputData>
 
 		public boolean hasNext()
 		{
-			if (processingArchive && zipIter.hasNext())
+			if (processingArchive && archiveIter.hasNext())
 				return true;
 			processingArchive = false;
+			archive = null;
 			return setIter.hasNext();
 		}
 
@@ -197,33 +446,33 @@ public class InputDataSet implements Iterable<InputData>
 
 			while (ret == null)
 			{
-				ZipEntry ze = null;
+				String name = null;
 				try
 				{
-					if (processingArchive)
+					if (processingArchive && archiveIter.hasNext())
 					{
-						ze = zipIter.next();
-						ret = new InputData(ze, zipFile.getInputStream(ze));
+						name = archiveIter.next();
+						ret = archive.get(name);
 					} else
 					{
+						processingArchive = false;
 						nextFile = setIter.next();
-						if (FileUtil.isArchive(nextFile.toString()))
+						if (FileUtil.isArchive(nextFile.toString()) || directories.containsKey(nextFile))
 						{
-							zipFile = new ZipFile(nextFile);
-							zipIter = new ZipFileIterator(zipFile);
-							ze = zipIter.next();
-							ret = new InputData(ze, zipFile.getInputStream(ze));
+							openArchive(nextFile);
 							processingArchive = true;
 						} else
 						{
 							ret = new InputData(nextFile);
-							processingArchive = false;
 						}
 					}
+				} catch (NoSuchElementException e)
+				{
+					throw e;
 				} catch (Exception e)
 				{
-					if (ze != null) // Print the name of the bad file if we can.
-						logger.log(Level.WARNING, "Skipping " + ze.getName()
+					if (name != null) // Print the name of the bad file if we can.
+						logger.log(Level.WARNING, "Skipping " + name
 								+ ": Could not retrieve file from input data set.");
 					else
 						// Just report there was a bad file that could not be
@@ -235,6 +484,28 @@ public class InputDataSet implements Iterable<InputData>
 			return ret;
 		}
 
+		/**
+         * Uses the inflated copy of the archive if there is one, otherwise reads
+         * its class files into memory so the archive can be closed straight
+         * away. Directories are always read into memory when they are added.
+         */
+		private void openArchive(File f) throws IOException
+		{
+			archive = directories.get(f);
+			if (archive == null && archives != null)
+				archive = archives.get(f);
+			if (archive == null)
+				archive = readArchive(f, true);
+
+			List<String> classFiles = new ArrayList<String>();
+			for (String name : archive.getNames())
+			{
+				if (FileUtil.isClassFile(name))
+					classFiles.add(name);
+			}
+			archiveIter = classFiles.iterator();
+		}
+
 		public void remove()
 		{
 		} // Ignore -- no action for this
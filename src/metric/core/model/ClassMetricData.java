@@ -1,8 +1,5 @@
 package metric.core.model;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import metric.core.exception.ReportException;
 import metric.core.report.visitor.ReportVisitor;
 import metric.core.util.MetricUtil;
@@ -21,9 +18,10 @@ import metric.core.vocabulary.MetricType;
  */
 public class ClassMetricData extends MetricData<ClassMetric> implements Comparable<ClassMetricData>
 {
-	public Set<String> dependencies = new HashSet<String>();
-	public Set<String> users = new HashSet<String>();
-	public Set<String> internalDeps = new HashSet<String>();
+	// Names are stored as ids in the project wide ClassNames table.
+	public NameSet dependencies = new NameSet();
+	public NameSet users = new NameSet();
+	public NameSet internalDeps = new NameSet();
 	public MethodMetricMap methods;
 
 	public long lastModified;
@@ -77,13 +75,8 @@ public class ClassMetricData extends MetricData<ClassMetric> implements Comparab
 			return false;
 
 		// Check if dependencies have changed
-		for (String dep : this.dependencies)
-		{
-			if (!c.dependencies.contains(dep))
-			{
-				return false;
-			}
-		}
+		if (!c.dependencies.containsAll(this.dependencies))
+			return false;
 
 		// TODO Should check fields here
 		// TODO Should check methods here.
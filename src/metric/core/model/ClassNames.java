@@ -0,0 +1,83 @@
+package metric.core.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A symbol table shared by all projects that maps class names to dense int
+ * ids. Each name is stored once, however many classes and versions refer to
+ * it, and sets of names can be stored as arrays of ids.
+ *
+ * Ids are only valid for the lifetime of the VM, so they must never be
+ * persisted. Names are never removed, so the table grows with every name seen
+ * by any project, and nothing that is built per version should be sized to it.
+ */
+public final class ClassNames
+{
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] names = new String[1024];
+	private static int size;
+
+	private ClassNames()
+	{
+	}
+
+	/**
+     * @param name A class name.
+     * @return The id of the specified name, which is added to the table if it
+     *         is not already in it.
+     */
+	public static int getId(String name)
+	{
+		Integer id = ids.get(name);
+		if (id != null)
+			return id;
+		return add(name);
+	}
+
+	/**
+     * @param name A class name.
+     * @return The id of the specified name, or -1 if it is not in the table.
+     */
+	public static int findId(String name)
+	{
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+     * @param id The id of a class name.
+     * @return The class name with the specified id.
+     */
+	public static String getName(int id)
+	{
+		return names[id];
+	}
+
+	/**
+     * @return The number of names in the table. Ids are always less than this.
+     */
+	public static synchronized int size()
+	{
+		return size;
+	}
+
+	private static synchronized int add(String name)
+	{
+		Integer id = ids.get(name);
+		if (id != null)
+			return id;
+
+		String[] current = names;
+		if (size == current.length)
+		{
+			String[] grown = new String[size * 2];
+			System.arraycopy(current, 0, grown, 0, size);
+			current = grown;
+		}
+		current[size] = name;
+		// Publish the name before its id can be looked up.
+		names = current;
+		ids.put(name, size);
+		return size++;
+	}
+}
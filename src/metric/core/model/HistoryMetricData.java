@@ -24,7 +24,12 @@ import metric.core.vocabulary.LoadType;
  * Currently, the two supported types are:<br />
  * LoadType.MINIMAL - Same as default behaviour.<br />
  * LoadType.MAXIMAL - Same as MINIMAL with the addition of class dependences and
- * class method data.
+ * class method data.<br />
+ * LoadType.MAPPED - Memory maps versions stored in binary, reading metric
+ * columns straight from the file and only creating classes, with their
+ * dependencies, when they are looked up.<br />
+ * LoadType.CACHED - Same as MINIMAL, but recently used versions are kept in
+ * memory rather than loaded again.
  * 
  * @author Joshua Hayes,Swinburne University (ICT),2007
  */
@@ -82,6 +87,20 @@ public class HistoryMetricData extends MetricData<History>
 		dataLoader = factory.getDataLoader(versions, type);
 	}
 
+	/**
+     * Sets the strategy used to load VersionMetricData, such as a
+     * <code>CachingDataLoadingStrategy</code> wrapping one of the load types.
+     */
+	public void setDataLoader(DataLoadingStrategy dataLoader)
+	{
+		this.dataLoader = dataLoader;
+	}
+
+	public DataLoadingStrategy getDataLoader()
+	{
+		return dataLoader;
+	}
+
 	public int size()
 	{
 		return versions.size();
@@ -34,13 +34,13 @@ public abstract class MetricData<T extends Enum<T>> implements VisitableReport
 
 		complexMetrics = new HashMap<T, Method>();
 
-		if (getClass() == HistoryMetricData.class)
+		if (this instanceof HistoryMetricData)
 		{
 			metrics = new int[History.getNumberOfMetrics()];
-		} else if (getClass() == VersionMetricData.class)
+		} else if (this instanceof VersionMetricData)
 		{
 			metrics = new int[Version.getNumberOfMetrics()];
-		} else if (getClass() == ClassMetricData.class)
+		} else if (this instanceof ClassMetricData)
 		{
 			metrics = new int[ClassMetric.getNumberOfMetrics()];
 		}
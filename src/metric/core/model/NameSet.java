@@ -0,0 +1,206 @@
+package metric.core.model;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of class names stored as the ids <code>ClassNames</code> assigns
+ * them. Names are iterated in the order they were added. Small sets are
+ * searched linearly, larger sets are indexed by an open addressing hash
+ * table.
+ */
+public class NameSet extends AbstractSet<String>
+{
+	// Sets up to this size are not indexed.
+	private static final int LINEAR_SEARCH_SIZE = 8;
+
+	private int[] ids;
+	private int size;
+	private int[] index;
+
+	public NameSet()
+	{
+		ids = new int[4];
+	}
+
+	public NameSet(Collection<String> names)
+	{
+		ids = new int[Math.max(names.size(), 4)];
+		addAll(names);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+     * @param i A position in this set, less than its size.
+     * @return The id of the name at the specified position.
+     */
+	public int getId(int i)
+	{
+		return ids[i];
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if (!(o instanceof String))
+			return false;
+		int id = ClassNames.findId((String) o);
+		return id != -1 && containsId(id);
+	}
+
+	public boolean containsId(int id)
+	{
+		if (index == null)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (ids[i] == id)
+					return true;
+			}
+			return false;
+		}
+
+		int mask = index.length - 1;
+		for (int slot = hash(id) & mask; index[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if (ids[index[slot] - 1] == id)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c)
+	{
+		if (!(c instanceof NameSet))
+			return super.containsAll(c);
+
+		NameSet other = (NameSet) c;
+		for (int i = 0; i < other.size; i++)
+		{
+			if (!containsId(other.ids[i]))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean add(String name)
+	{
+		return addId(ClassNames.getId(name));
+	}
+
+	public boolean addId(int id)
+	{
+		if (containsId(id))
+			return false;
+
+		if (size == ids.length)
+		{
+			int[] grown = new int[size * 2];
+			System.arraycopy(ids, 0, grown, 0, size);
+			ids = grown;
+		}
+		ids[size++] = id;
+
+		if (index != null && size * 2 > index.length)
+			reindex(index.length * 2);
+		else if (index == null && size > LINEAR_SEARCH_SIZE)
+			reindex(32);
+		else if (index != null)
+			insert(size - 1);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		if (!(o instanceof String))
+			return false;
+		int id = ClassNames.findId((String) o);
+		for (int i = 0; i < size; i++)
+		{
+			if (ids[i] == id)
+			{
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void clear()
+	{
+		size = 0;
+		index = null;
+	}
+
+	@Override
+	public Iterator<String> iterator()
+	{
+		return new Iterator<String>()
+		{
+			private int next, last = -1;
+
+			public boolean hasNext()
+			{
+				return next < size;
+			}
+
+			public String next()
+			{
+				if (next >= size)
+					throw new NoSuchElementException();
+				last = next;
+				return ClassNames.getName(ids[next++]);
+			}
+
+			public void remove()
+			{
+				if (last == -1)
+					throw new IllegalStateException();
+				removeAt(last);
+				next = last;
+				last = -1;
+			}
+		};
+	}
+
+	private void removeAt(int i)
+	{
+		System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+		size--;
+		if (index != null)
+			reindex(index.length);
+	}
+
+	private void reindex(int capacity)
+	{
+		index = new int[capacity];
+		for (int i = 0; i < size; i++)
+			insert(i);
+	}
+
+	// Index slots hold positions + 1, so 0 marks an empty slot.
+	private void insert(int i)
+	{
+		int mask = index.length - 1;
+		int slot = hash(ids[i]) & mask;
+		while (index[slot] != 0)
+			slot = (slot + 1) & mask;
+		index[slot] = i + 1;
+	}
+
+	private static int hash(int id)
+	{
+		return id * 0x9E3779B9;
+	}
+}
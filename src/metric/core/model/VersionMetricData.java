@@ -8,6 +8,7 @@ import metric.core.report.visitor.ReportVisitor;
 import metric.core.util.CSVUtil;
 import metric.core.util.StatUtils;
 import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
 import metric.core.vocabulary.Version;
 
 /**
@@ -24,6 +25,9 @@ public class VersionMetricData extends MetricData<Version> implements Comparable
 
 	public long lowModifiedTime, hiModifiedTime;
 
+	// The profile the classes of this version were extracted with.
+	public ExtractionProfile profile = ExtractionProfile.FULL;
+
 	public VersionMetricData()
 	{
 		metricData = new HashMap<String, ClassMetricData>();
@@ -146,6 +150,17 @@ public class VersionMetricData extends MetricData<Version> implements Comparable
 		return range;
 	}
 
+	/**
+     * @return the sum of the values of the specified metric over all classes.
+     */
+	public int getMetricSum(ClassMetric prop)
+	{
+		int sum = 0;
+		for (ClassMetricData cmd : metricData.values())
+			sum += cmd.getSimpleMetric(prop);
+		return sum;
+	}
+
 	/**
      * @return the range of values for the specified metric formatted as a csv
      *         string.
@@ -272,8 +287,7 @@ public class VersionMetricData extends MetricData<Version> implements Comparable
 			int sum = 0;
 			try
 			{
-				for (ClassMetricData c : metricData.values())
-					sum += c.getSimpleMetric(metric);
+				sum = getMetricSum(metric);
 			} catch (Exception e)
 			{
 				e.printStackTrace();
@@ -0,0 +1,553 @@
+package metric.core.persistence;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+
+import metric.core.exception.ConversionException;
+import metric.core.model.ClassMetricData;
+import metric.core.model.NameSet;
+import metric.core.model.VersionMetricData;
+import metric.core.util.SimpleWorkTimer;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
+import metric.core.vocabulary.SerializeType;
+import metric.core.vocabulary.Version;
+
+/**
+ * Stores the class metrics and dependencies of a version in a single binary
+ * file, so that it can be loaded with a bulk read instead of being parsed.
+ *
+ * All values are little-endian ints and every section starts on a 4 byte
+ * boundary. The file is laid out as follows:
+ * <ul>
+ * <li>A header of <code>HEADER_INTS</code> ints, holding the version details
+ * and the byte offset of each section.</li>
+ * <li>The schema, the string id of the name of each metric column.</li>
+ * <li>The string table, the offset of each string followed by the UTF-8 bytes
+ * of all strings. Class, superclass and dependency names, metric names and the
+ * version details are all stored here once.</li>
+ * <li>The classes, one fixed-width row per class of its name id, its
+ * superclass name id and its metrics.</li>
+ * <li>The dependencies, the offset of the dependency list of each class
+ * followed by the name ids of all dependencies.</li>
+ * <li>The index, the rows of the classes in order of class name.</li>
+ * </ul>
+ * Columns are matched to metrics by name when a file is read, so files written
+ * before metrics were added or reordered can still be read.
+ */
+public class BinaryConverter extends Observable implements MetricDataConverter
+{
+	public static final int MAGIC = 0x424D534A; // "JSMB"
+	public static final int FORMAT_VERSION = 1;
+
+	// Positions of the values in the header.
+	public static final int H_MAGIC = 0, H_FORMAT_VERSION = 1, H_RSN = 2, H_CLASS_COUNT = 3, H_METRIC_COUNT = 4,
+			H_STRING_COUNT = 5, H_NAME = 6, H_ID = 7, H_PROFILE = 8, H_SCHEMA = 9, H_STRINGS = 10, H_CLASSES = 11,
+			H_DEPENDENCIES = 12, H_INDEX = 13, H_LENGTH = 14;
+	public static final int HEADER_INTS = 15;
+
+	private static final String CHARSET = "UTF-8";
+
+	private boolean readDependencies;
+	private long storeTime, loadTime;
+	protected int completion;
+	private SimpleWorkTimer workTimer;
+
+	/**
+     * Creates a converter that reads the dependencies of each class.
+     */
+	public BinaryConverter()
+	{
+		this(true);
+	}
+
+	/**
+     * @param readDependencies Whether the dependencies of each class are read.
+     *            They are always written.
+     */
+	public BinaryConverter(boolean readDependencies)
+	{
+		this.readDependencies = readDependencies;
+	}
+
+	/**
+     * @param path The path of a version, without the file extension.
+     * @return Whether the version has been stored in binary.
+     */
+	public static boolean exists(String path)
+	{
+		return new File(path + SerializeType.BINARY.getExt()).exists();
+	}
+
+	public void serialize(VersionMetricData vmd, String path) throws ConversionException
+	{
+		workTimer = new SimpleWorkTimer();
+		workTimer.start();
+		try
+		{
+			ByteBuffer buffer = encode(vmd);
+			FileOutputStream out = new FileOutputStream(path + getFileExtension());
+			try
+			{
+				FileChannel channel = out.getChannel();
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			} finally
+			{
+				out.close();
+			}
+		} catch (IOException e)
+		{
+			throw new ConversionException(e.getMessage());
+		}
+		workTimer.stop();
+		storeTime = workTimer.getTimeElapsed();
+	}
+
+	public String serialize(VersionMetricData vmd) throws ConversionException
+	{
+		throw new ConversionException("Binary data cannot be serialized to a String.");
+	}
+
+	public VersionMetricData deSerialize(String data) throws ConversionException
+	{
+		throw new ConversionException("Binary data cannot be de-serialized from a String.");
+	}
+
+	public VersionMetricData deSerialize(Reader data) throws ConversionException
+	{
+		throw new ConversionException("Binary data cannot be de-serialized from a Reader.");
+	}
+
+	/**
+     * Reads the version stored in the specified file with a single read.
+     *
+     * @param file The binary file of the version.
+     * @return The version.
+     * @throws ConversionException If the file cannot be read or is not in this
+     *             format.
+     */
+	public VersionMetricData deSerialize(File file) throws ConversionException
+	{
+		workTimer = new SimpleWorkTimer();
+		workTimer.start();
+		VersionMetricData vmd;
+		try
+		{
+			vmd = decode(read(file));
+		} catch (IOException e)
+		{
+			throw new ConversionException(file + ": " + e.getMessage());
+		}
+		workTimer.stop();
+		loadTime = workTimer.getTimeElapsed();
+		return vmd;
+	}
+
+	private static ByteBuffer read(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("File is too large.");
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer) == -1)
+					throw new IOException("Unexpected end of file.");
+			}
+			buffer.flip();
+			return buffer;
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	private ByteBuffer encode(VersionMetricData vmd) throws ConversionException, UnsupportedEncodingException
+	{
+		List<ClassMetricData> classes = new ArrayList<ClassMetricData>(vmd.metricData.values());
+		int classCount = classes.size();
+		int metricCount = ClassMetric.getNumberOfMetrics();
+		workTimer.setWorkUnits(classCount);
+
+		StringTable strings = new StringTable();
+		int nameId = strings.add(vmd.get(Version.NAME));
+		int idId = strings.add(vmd.get(Version.ID));
+		int profileId = strings.add(vmd.profile.name());
+		int[] schema = new int[metricCount];
+		for (int i = 0; i < metricCount; i++)
+			schema[i] = strings.add(ClassMetric.values()[i].toString());
+
+		int dependencyCount = 0;
+		int[] nameIds = new int[classCount];
+		int[] superIds = new int[classCount];
+		for (int i = 0; i < classCount; i++)
+		{
+			ClassMetricData cmd = classes.get(i);
+			nameIds[i] = strings.add(cmd.get(ClassMetric.NAME));
+			superIds[i] = strings.add(cmd.get(ClassMetric.SUPER_CLASS_NAME));
+			for (String dependency : cmd.dependencies)
+				strings.add(dependency);
+			dependencyCount += cmd.dependencies.size();
+		}
+
+		int schemaOffset = HEADER_INTS * 4;
+		int stringsOffset = schemaOffset + metricCount * 4;
+		int classesOffset = stringsOffset + (strings.size() + 1) * 4 + align(strings.byteCount());
+		int dependenciesOffset = classesOffset + classCount * (2 + metricCount) * 4;
+		int indexOffset = dependenciesOffset + (classCount + 1 + dependencyCount) * 4;
+		int length = indexOffset + classCount * 4;
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		IntBuffer ints = buffer.asIntBuffer();
+
+		int[] header = new int[HEADER_INTS];
+		header[H_MAGIC] = MAGIC;
+		header[H_FORMAT_VERSION] = FORMAT_VERSION;
+		header[H_RSN] = vmd.getSimpleMetric(Version.RSN);
+		header[H_CLASS_COUNT] = classCount;
+		header[H_METRIC_COUNT] = metricCount;
+		header[H_STRING_COUNT] = strings.size();
+		header[H_NAME] = nameId;
+		header[H_ID] = idId;
+		header[H_PROFILE] = profileId;
+		header[H_SCHEMA] = schemaOffset;
+		header[H_STRINGS] = stringsOffset;
+		header[H_CLASSES] = classesOffset;
+		header[H_DEPENDENCIES] = dependenciesOffset;
+		header[H_INDEX] = indexOffset;
+		header[H_LENGTH] = length;
+		ints.put(header);
+		ints.put(schema);
+
+		// String table.
+		int offset = 0;
+		for (byte[] bytes : strings.bytes)
+		{
+			ints.put(offset);
+			offset += bytes.length;
+		}
+		ints.put(offset);
+		buffer.position(stringsOffset + (strings.size() + 1) * 4);
+		for (byte[] bytes : strings.bytes)
+			buffer.put(bytes);
+
+		// Classes.
+		ints.position(classesOffset / 4);
+		for (int i = 0; i < classCount; i++)
+		{
+			ClassMetricData cmd = classes.get(i);
+			if (cmd.getMetrics().length < metricCount)
+				throw new ConversionException("Class " + cmd.get(ClassMetric.NAME) + " has too few metrics.");
+			ints.put(nameIds[i]);
+			ints.put(superIds[i]);
+			ints.put(cmd.getMetrics(), 0, metricCount);
+
+			workTimer.addCompletedWork(1);
+			completion = workTimer.getWorkStatus();
+			setChanged();
+			notifyObservers();
+		}
+
+		// Dependencies.
+		int start = 0;
+		for (ClassMetricData cmd : classes)
+		{
+			ints.put(start);
+			start += cmd.dependencies.size();
+		}
+		ints.put(start);
+		for (ClassMetricData cmd : classes)
+		{
+			for (String dependency : cmd.dependencies)
+				ints.put(strings.add(dependency));
+		}
+
+		// Index of rows by class name.
+		final String[] names = new String[classCount];
+		List<Integer> rows = new ArrayList<Integer>(classCount);
+		for (int i = 0; i < classCount; i++)
+		{
+			names[i] = classes.get(i).get(ClassMetric.NAME);
+			rows.add(i);
+		}
+		Collections.sort(rows, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return names[a].compareTo(names[b]);
+			}
+		});
+		for (int row : rows)
+			ints.put(row);
+
+		buffer.position(0);
+		return buffer;
+	}
+
+	private VersionMetricData decode(ByteBuffer buffer) throws IOException
+	{
+		int[] header = readHeader(buffer);
+		String[] strings = readStrings(buffer, header);
+
+		VersionMetricData vmd = new VersionMetricData(header[H_RSN], strings[header[H_ID]], strings[header[H_NAME]]);
+		vmd.setSimpleMetric(Version.CLASS_COUNT, header[H_CLASS_COUNT]);
+		ExtractionProfile profile = ExtractionProfile.parse(strings[header[H_PROFILE]]);
+		if (profile != null)
+			vmd.profile = profile;
+
+		for (ClassMetricData cmd : readClasses(buffer, header, strings, vmd.get(Version.NAME), readDependencies))
+			vmd.addClass(cmd);
+		return vmd;
+	}
+
+	/**
+     * Reads and checks the header of a version file. The buffer is only read
+     * with absolute gets, so one buffer can be read by several threads.
+     *
+     * @param buffer The contents of the file.
+     * @return The values of the header.
+     * @throws IOException If the buffer does not hold a version file in this
+     *             format.
+     */
+	static int[] readHeader(ByteBuffer buffer) throws IOException
+	{
+		if (buffer.limit() < HEADER_INTS * 4)
+			throw new IOException("Not a binary version file.");
+		int[] header = new int[HEADER_INTS];
+		ints(buffer).get(header);
+		if (header[H_MAGIC] != MAGIC)
+			throw new IOException("Not a binary version file.");
+		if (header[H_FORMAT_VERSION] != FORMAT_VERSION)
+			throw new IOException("Unsupported format version " + header[H_FORMAT_VERSION] + ".");
+		if (header[H_LENGTH] != buffer.limit())
+			throw new IOException("File is truncated.");
+		return header;
+	}
+
+	/**
+     * @return A little-endian view of the whole buffer as ints, with its own
+     *         position.
+     */
+	static IntBuffer ints(ByteBuffer buffer)
+	{
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.clear();
+		duplicate.order(ByteOrder.LITTLE_ENDIAN);
+		return duplicate.asIntBuffer();
+	}
+
+	/**
+     * Reads a single string from the string table.
+     */
+	static String readString(ByteBuffer buffer, int[] header, int id) throws IOException
+	{
+		IntBuffer ints = ints(buffer);
+		int offsets = header[H_STRINGS] / 4;
+		int start = ints.get(offsets + id);
+		byte[] bytes = new byte[ints.get(offsets + id + 1) - start];
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.clear();
+		duplicate.position(header[H_STRINGS] + (header[H_STRING_COUNT] + 1) * 4 + start);
+		duplicate.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	/**
+     * Reads the whole string table.
+     */
+	static String[] readStrings(ByteBuffer buffer, int[] header) throws IOException
+	{
+		int count = header[H_STRING_COUNT];
+		int[] offsets = new int[count + 1];
+		IntBuffer ints = ints(buffer);
+		ints.position(header[H_STRINGS] / 4);
+		ints.get(offsets);
+
+		byte[] bytes = new byte[offsets[count]];
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.clear();
+		duplicate.position(header[H_STRINGS] + (count + 1) * 4);
+		duplicate.get(bytes);
+
+		String[] strings = new String[count];
+		for (int i = 0; i < count; i++)
+			strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], CHARSET);
+		return strings;
+	}
+
+	/**
+     * Maps each metric column of the file to the index of the metric with the
+     * same name, or -1 if there is no such metric.
+     */
+	static int[] readColumns(ByteBuffer buffer, int[] header) throws IOException
+	{
+		int numberOfMetrics = ClassMetric.getNumberOfMetrics();
+		int[] columns = new int[header[H_METRIC_COUNT]];
+		IntBuffer ints = ints(buffer);
+		for (int c = 0; c < columns.length; c++)
+		{
+			ClassMetric metric = ClassMetric.parse(readString(buffer, header, ints.get(header[H_SCHEMA] / 4 + c)));
+			columns[c] = metric == null || metric.ordinal() >= numberOfMetrics ? -1 : metric.ordinal();
+		}
+		return columns;
+	}
+
+	/**
+     * Reads every class of a version file, in the order of its rows.
+     *
+     * @param strings The string table of the file.
+     * @param productName The name of the product the classes belong to.
+     * @param readDependencies Whether the dependencies of each class are read.
+     */
+	static List<ClassMetricData> readClasses(ByteBuffer buffer, int[] header, String[] strings,
+			String productName, boolean readDependencies) throws IOException
+	{
+		int classCount = header[H_CLASS_COUNT];
+		int metricCount = header[H_METRIC_COUNT];
+		int[] columns = readColumns(buffer, header);
+		boolean sameSchema = isIdentity(columns);
+		IntBuffer ints = ints(buffer);
+
+		int[] dependencyStarts = null;
+		int dependencies = header[H_DEPENDENCIES] / 4 + classCount + 1;
+		if (readDependencies)
+		{
+			dependencyStarts = new int[classCount + 1];
+			ints.position(header[H_DEPENDENCIES] / 4);
+			ints.get(dependencyStarts);
+		}
+
+		List<ClassMetricData> classes = new ArrayList<ClassMetricData>(classCount);
+		int numberOfMetrics = ClassMetric.getNumberOfMetrics();
+		int[] row = sameSchema ? null : new int[metricCount];
+		ints.position(header[H_CLASSES] / 4);
+		for (int i = 0; i < classCount; i++)
+		{
+			String name = strings[ints.get()];
+			String superName = strings[ints.get()];
+			int[] metrics = new int[numberOfMetrics];
+			if (sameSchema)
+				ints.get(metrics);
+			else
+			{
+				ints.get(row);
+				for (int c = 0; c < metricCount; c++)
+				{
+					if (columns[c] != -1)
+						metrics[columns[c]] = row[c];
+				}
+			}
+
+			ClassMetricData cmd = new ClassMetricData(productName, metrics);
+			cmd.setProperty(ClassMetric.NAME, name);
+			cmd.setProperty(ClassMetric.SUPER_CLASS_NAME, superName);
+			if (readDependencies)
+			{
+				NameSet deps = new NameSet();
+				for (int d = dependencyStarts[i]; d < dependencyStarts[i + 1]; d++)
+					deps.add(strings[ints.get(dependencies + d)]);
+				cmd.dependencies = deps;
+			}
+			classes.add(cmd);
+		}
+		return classes;
+	}
+
+	private static boolean isIdentity(int[] columns)
+	{
+		if (columns.length != ClassMetric.getNumberOfMetrics())
+			return false;
+		for (int c = 0; c < columns.length; c++)
+		{
+			if (columns[c] != c)
+				return false;
+		}
+		return true;
+	}
+
+	private static int align(int bytes)
+	{
+		return (bytes + 3) & ~3;
+	}
+
+	public void close() throws IOException
+	{
+		// Files are closed as soon as they have been read or written.
+	}
+
+	public final String getFileExtension()
+	{
+		return SerializeType.BINARY.getExt();
+	}
+
+	public long getLoadTime()
+	{
+		return loadTime;
+	}
+
+	public long getStoreTime()
+	{
+		return storeTime;
+	}
+
+	public int getCompletion()
+	{
+		return completion;
+	}
+
+	/**
+     * Gives each distinct string an id in the order they are added.
+     */
+	private static class StringTable
+	{
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+		private final List<byte[]> bytes = new ArrayList<byte[]>();
+		private int byteCount;
+
+		public int add(String s) throws UnsupportedEncodingException
+		{
+			if (s == null)
+				s = "";
+			Integer id = ids.get(s);
+			if (id == null)
+			{
+				id = bytes.size();
+				ids.put(s, id);
+				byte[] encoded = s.getBytes(CHARSET);
+				bytes.add(encoded);
+				byteCount += encoded.length;
+			}
+			return id;
+		}
+
+		public int size()
+		{
+			return bytes.size();
+		}
+
+		public int byteCount()
+		{
+			return byteCount;
+		}
+	}
+}
@@ -15,12 +15,14 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.exception.ConversionException;
-import metric.core.io.TextFile;
+import metric.core.io.CSVParser;
 import metric.core.model.ClassMetricData;
+import metric.core.model.NameSet;
 import metric.core.model.VersionMetricData;
 import metric.core.util.CSVUtil;
 import metric.core.util.SimpleWorkTimer;
 import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
 import metric.core.vocabulary.SerializeType;
 import metric.core.vocabulary.Version;
 
@@ -97,6 +99,14 @@ public class CSVConverter extends Observable implements MetricDataConverter
 		StringWriter sw = new StringWriter();
 		bw = new BufferedWriter(sw);
 		conversionStrategy.to(md, bw, workTimer);
+		try
+		{
+			// Anything still buffered would be missing from the string.
+			bw.flush();
+		} catch (IOException e)
+		{
+			throw new ConversionException();
+		}
 		workTimer.stop();
 		storeTime = workTimer.getTimeElapsed();
 		return sw.toString();
@@ -163,33 +173,30 @@ public class CSVConverter extends Observable implements MetricDataConverter
 
 		public VersionMetricData from(BufferedReader br, SimpleWorkTimer workTimer) throws ConversionException
 		{
-			TextFile file = new TextFile(br);
-			Iterator<String> it = file.iterator();
+			CSVParser parser = new CSVParser(br);
 
 			VersionMetricData vmd = null;
-			while (it.hasNext())
+			try
 			{
-				String line = null;
-				try
+				while (parser.nextLine())
 				{
-					line = it.next();
 					// Skip comments, blank lines.
-					if (line.startsWith("#") || line.length() == 0)
+					if (parser.peek() == '#' || parser.isEndOfLine())
 						continue;
-					else if (line.startsWith("$"))
+					else if (parser.peek() == '$')
 					{
-						vmd = createVersionFromDescriptor(line);
+						vmd = createVersionFromDescriptor(parser.restOfLine());
 					} else
 					// Process class
 					{
-						classDataToRead(line, vmd);
+						classDataToRead(parser, vmd);
 					}
-				} catch (Exception e)
-				{
-					e.printStackTrace();
-					System.out.println("bad line: " + line);
-					System.exit(1);
 				}
+			} catch (Exception e)
+			{
+				e.printStackTrace();
+				System.out.println("bad line: " + parser.getLine());
+				System.exit(1);
 			}
 
 			return vmd;
@@ -211,12 +218,20 @@ public class CSVConverter extends Observable implements MetricDataConverter
 
 			vmd = new VersionMetricData(rsn, id, name);
 			vmd.setSimpleMetric(Version.CLASS_COUNT, numberOfClasses);
+			// Data written before profiles were recorded was always extracted
+			// in full.
+			ExtractionProfile profile = toks.length > 4 ? ExtractionProfile.parse(toks[4]) : null;
+			if (profile != null)
+				vmd.profile = profile;
 			return vmd;
 		}
 
 		protected abstract void classDataToWrite(ClassMetricData cmd);
 
-		protected abstract void classDataToRead(String line, VersionMetricData vmd);
+		/**
+         * Reads the class on the current line of the parser into the version.
+         */
+		protected abstract void classDataToRead(CSVParser parser, VersionMetricData vmd);
 	}
 
 	// -----------------------------------------------------------------------
@@ -245,17 +260,17 @@ public class CSVConverter extends Observable implements MetricDataConverter
 		}
 
 		@Override
-		protected void classDataToRead(String line, VersionMetricData vmd)
+		protected void classDataToRead(CSVParser parser, VersionMetricData vmd)
 		{
-			String[] toks = line.split(",");
-			String classname = toks[0];
-			String superClassname = toks[1];
-			int[] metrics = new int[ClassMetric.getNumberOfMetrics()];
-			for (int i = 2; i < toks.length; i++)
+			String classname = parser.nextString();
+			String superClassname = parser.nextString();
+			// Metrics are decoded straight into the array of the class.
+			ClassMetricData cmd = new ClassMetricData(vmd.get(Version.NAME));
+			int[] metrics = cmd.getMetrics();
+			for (int i = 0; !parser.isEndOfLine(); i++)
 			{
-				metrics[i - 2] = Integer.parseInt(toks[i]);
+				metrics[i] = parser.nextInt();
 			}
-			ClassMetricData cmd = new ClassMetricData(vmd.get(Version.NAME), metrics);
 			cmd.setProperty(ClassMetric.NAME, classname);
 			cmd.setProperty(ClassMetric.SUPER_CLASS_NAME, superClassname);
 			vmd.addClass(cmd);
@@ -273,7 +288,7 @@ public class CSVConverter extends Observable implements MetricDataConverter
 		}
 
 		@Override
-		protected void classDataToRead(String line, VersionMetricData vmd)
+		protected void classDataToRead(CSVParser parser, VersionMetricData vmd)
 		{
 			// TODO Not yet implemented.
 		}
@@ -317,16 +332,15 @@ public class CSVConverter extends Observable implements MetricDataConverter
 		}
 
 		@Override
-		protected void classDataToRead(String line, VersionMetricData vmd)
+		protected void classDataToRead(CSVParser parser, VersionMetricData vmd)
 		{
-			String[] toks = line.split(",");
-			String classname = toks[0];
-			Set<String> deps = new HashSet<String>();
-
-			// First position (0) is classname, so we skip it.
-			for (int i = 1; i < toks.length; i++)
+			String classname = parser.nextString();
+			NameSet deps = new NameSet();
+			while (!parser.isEndOfLine())
 			{
-				deps.add(toks[i]);
+				String dependency = parser.nextString();
+				if (dependency.length() > 0)
+					deps.add(dependency);
 			}
 
 			ClassMetricData cmd = new ClassMetricData();
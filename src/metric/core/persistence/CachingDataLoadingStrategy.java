@@ -0,0 +1,238 @@
+package metric.core.persistence;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import metric.core.model.VersionMetricData;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.Version;
+
+/**
+ * Keeps the most recently used versions loaded by another strategy, so a
+ * version that is asked for again is not read and parsed again. Reports that
+ * compare each version with the one before it ask for almost every version
+ * twice, and every report run on the same history asks for all of them again.
+ *
+ * The cache is bounded by an estimate of the memory the versions hold rather
+ * than by their number, as the versions of a long history can differ in size
+ * by orders of magnitude. The least recently used versions are evicted once
+ * the estimate exceeds the capacity. Versions can also be held through soft
+ * references, in which case the garbage collector may clear them before they
+ * are evicted if memory runs low.
+ *
+ * Versions are shared by everything that asks for them, so they must not be
+ * modified once loaded.
+ */
+public class CachingDataLoadingStrategy implements DataLoadingStrategy
+{
+	/** An estimate of the memory held by each class of a loaded version. */
+	public static final long CLASS_WEIGHT = 512 + 4 * ClassMetric.getNumberOfMetrics();
+
+	private final DataLoadingStrategy loader;
+	private final long capacity;
+	private final boolean softReferences;
+
+	// Access ordered, so iteration starts at the least recently used version.
+	private final LinkedHashMap<Integer, CachedVersion> cache = new LinkedHashMap<Integer, CachedVersion>(16, 0.75f,
+			true);
+	private final ReferenceQueue<VersionMetricData> cleared = new ReferenceQueue<VersionMetricData>();
+	private long weight;
+	private int hits, misses, evictions;
+
+	/**
+     * Caches the versions loaded by the specified strategy in up to a quarter
+     * of the maximum heap, through soft references.
+     */
+	public CachingDataLoadingStrategy(DataLoadingStrategy loader)
+	{
+		this(loader, Runtime.getRuntime().maxMemory() / 4, true);
+	}
+
+	/**
+     * @param loader The strategy versions are loaded with when they are not
+     *            cached.
+     * @param capacity The estimated number of bytes the cached versions may
+     *            hold.
+     * @param softReferences Whether the garbage collector may clear cached
+     *            versions when memory runs low.
+     */
+	public CachingDataLoadingStrategy(DataLoadingStrategy loader, long capacity, boolean softReferences)
+	{
+		this.loader = loader;
+		this.capacity = capacity;
+		this.softReferences = softReferences;
+	}
+
+	public VersionMetricData getVersion(int rsn)
+	{
+		synchronized (this)
+		{
+			expungeCleared();
+			CachedVersion cached = cache.get(rsn);
+			if (cached != null)
+			{
+				VersionMetricData vmd = cached.getVersion();
+				if (vmd != null)
+				{
+					hits++;
+					return vmd;
+				}
+				remove(cached);
+			}
+			misses++;
+		}
+
+		// Loaded without holding the lock so other versions can be served
+		// meanwhile.
+		VersionMetricData vmd = loader.getVersion(rsn);
+		if (vmd != null)
+			put(rsn, vmd);
+		return vmd;
+	}
+
+	/**
+     * An estimate of the memory held by a version once all its classes have
+     * been created. Mapped versions are weighed as though they had already
+     * been, as they create their classes when first looked up.
+     */
+	public static long weigh(VersionMetricData vmd)
+	{
+		// The size of metricData is known without creating the classes.
+		return CLASS_WEIGHT * Math.max(vmd.metricData.size(), vmd.getSimpleMetric(Version.CLASS_COUNT));
+	}
+
+	private synchronized void put(int rsn, VersionMetricData vmd)
+	{
+		long versionWeight = weigh(vmd);
+		if (versionWeight > capacity)
+			return;
+		CachedVersion previous = cache.put(rsn, new CachedVersion(rsn, vmd, versionWeight));
+		if (previous != null)
+			weight -= previous.weight;
+		weight += versionWeight;
+
+		Iterator<CachedVersion> it = cache.values().iterator();
+		while (weight > capacity && it.hasNext())
+		{
+			CachedVersion eldest = it.next();
+			it.remove();
+			weight -= eldest.weight;
+			evictions++;
+		}
+	}
+
+	private void remove(CachedVersion cached)
+	{
+		// It may already have been replaced by a newer load of the version.
+		if (cache.get(cached.rsn) == cached)
+		{
+			cache.remove(cached.rsn);
+			weight -= cached.weight;
+		}
+	}
+
+	// Drops the versions the garbage collector has cleared.
+	private void expungeCleared()
+	{
+		CachedVersion cached;
+		while ((cached = (CachedVersion) cleared.poll()) != null)
+		{
+			if (cache.get(cached.rsn) == cached)
+			{
+				cache.remove(cached.rsn);
+				weight -= cached.weight;
+				evictions++;
+			}
+		}
+	}
+
+	/**
+     * Removes every version from the cache. The counters are not reset.
+     */
+	public synchronized void clear()
+	{
+		cache.clear();
+		weight = 0;
+	}
+
+	/**
+     * @return The number of versions served from the cache.
+     */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**
+     * @return The number of versions that had to be loaded.
+     */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+     * @return The number of versions evicted to stay within the capacity or
+     *         cleared by the garbage collector.
+     */
+	public synchronized int getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+     * @return The number of versions currently cached.
+     */
+	public synchronized int size()
+	{
+		expungeCleared();
+		return cache.size();
+	}
+
+	/**
+     * @return The estimated number of bytes held by the cached versions.
+     */
+	public synchronized long getWeight()
+	{
+		expungeCleared();
+		return weight;
+	}
+
+	public long getCapacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", versions=" + cache.size()
+				+ ", weight=" + weight + "/" + capacity;
+	}
+
+	/**
+     * A cached version. It is only held strongly if soft references are not
+     * being used.
+     */
+	private class CachedVersion extends SoftReference<VersionMetricData>
+	{
+		private final int rsn;
+		private final long weight;
+		private final VersionMetricData strong;
+
+		public CachedVersion(int rsn, VersionMetricData vmd, long weight)
+		{
+			super(vmd, cleared);
+			this.rsn = rsn;
+			this.weight = weight;
+			this.strong = softReferences ? null : vmd;
+		}
+
+		public VersionMetricData getVersion()
+		{
+			return strong != null ? strong : get();
+		}
+	}
+}
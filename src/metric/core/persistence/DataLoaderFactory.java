@@ -23,8 +23,60 @@ public class DataLoaderFactory
 		} else if (type == LoadType.MAXIMAL)
 		{
 			return new MaximalDataLoadingStrategy(versions);
+		} else if (type == LoadType.MAPPED)
+		{
+			return new MappedDataLoadingStrategy(versions);
+		} else if (type == LoadType.CACHED)
+		{
+			return getCachingDataLoader(versions, LoadType.MINIMAL);
 		}
 		return null;
 	}
 
+	/**
+     * A loader that caches the versions loaded with the specified type in up to
+     * a quarter of the maximum heap, through soft references.
+     */
+	public CachingDataLoadingStrategy getCachingDataLoader(Map<Integer, String[]> versions, LoadType type)
+	{
+		return getCachingDataLoader(getDataLoader(versions, type));
+	}
+
+	/**
+     * A loader that caches the versions loaded by the specified loader in up
+     * to a quarter of the maximum heap, through soft references.
+     */
+	public CachingDataLoadingStrategy getCachingDataLoader(DataLoadingStrategy loader)
+	{
+		return new CachingDataLoadingStrategy(loader);
+	}
+
+	/**
+     * A loader that caches the versions loaded with the specified type.
+     * 
+     * @param capacity The estimated number of bytes the cached versions may
+     *            hold.
+     * @param softReferences Whether cached versions may be cleared by the
+     *            garbage collector when memory runs low.
+     */
+	public CachingDataLoadingStrategy getCachingDataLoader(Map<Integer, String[]> versions, LoadType type,
+			long capacity, boolean softReferences)
+	{
+		return new CachingDataLoadingStrategy(getDataLoader(versions, type), capacity, softReferences);
+	}
+
+	/**
+     * A loader that reads the versions loaded with the specified type ahead of
+     * a report walking them in order.
+     * 
+     * @param depth The number of versions read ahead.
+     * @param capacity The estimated number of bytes the versions read ahead may
+     *            hold.
+     */
+	public ReadAheadDataLoadingStrategy getReadAheadDataLoader(Map<Integer, String[]> versions, LoadType type,
+			int depth, long capacity)
+	{
+		return new ReadAheadDataLoadingStrategy(getDataLoader(versions, type), versions, depth, capacity);
+	}
+
 }
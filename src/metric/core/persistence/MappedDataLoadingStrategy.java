@@ -0,0 +1,48 @@
+package metric.core.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import metric.core.model.VersionMetricData;
+import metric.core.util.logging.LogOrganiser;
+import metric.core.vocabulary.SerializeType;
+
+/**
+ * Memory maps the binary file of each version rather than reading it. Metric
+ * ranges and sums are then read straight from the file and classes are only
+ * created when they are looked up, see <code>MappedVersionMetricData</code>.
+ * Versions that have not been stored in binary are loaded in full from their
+ * CSV files instead.
+ */
+public class MappedDataLoadingStrategy implements DataLoadingStrategy
+{
+	private Logger logger = Logger.getLogger(getClass().getSimpleName());
+	private Map<Integer, String[]> versions;
+	private DataLoadingStrategy csvLoader;
+
+	public MappedDataLoadingStrategy(Map<Integer, String[]> versions)
+	{
+		this.versions = versions;
+		this.csvLoader = new MaximalDataLoadingStrategy(versions);
+		LogOrganiser.addLogger(logger);
+	}
+
+	public VersionMetricData getVersion(int rsn)
+	{
+		// Position 1 stores the filename.
+		String path = versions.get(rsn)[1];
+		if (!BinaryConverter.exists(path))
+			return csvLoader.getVersion(rsn);
+		try
+		{
+			return MappedVersionMetricData.map(new File(path + SerializeType.BINARY.getExt()));
+		} catch (IOException e)
+		{
+			logger.log(Level.SEVERE, "Could not map " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package metric.core.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import metric.core.model.ClassMetricData;
+import metric.core.model.VersionMetricData;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
+import metric.core.vocabulary.Version;
+
+/**
+ * A version whose binary file is memory mapped rather than read. The ranges
+ * and sums of metrics are read straight from the mapped file, so reports that
+ * only scan metric columns do not create an object for each class. The
+ * classes themselves, with their dependencies, are only created the first time
+ * <code>metricData</code> is used to look up or iterate over classes, after
+ * which the version behaves like any other.
+ *
+ * The mapping is released once the version is garbage collected. A mapped
+ * file should not be rewritten while versions of it are still in use.
+ */
+public class MappedVersionMetricData extends VersionMetricData
+{
+	private final ByteBuffer buffer;
+	private final int[] header;
+	// The column of each metric in the file, or -1 if it is not stored.
+	private final int[] columns;
+	private final int classCount, rowLength;
+	private volatile boolean materialised;
+
+	/**
+     * Maps the specified binary version file.
+     *
+     * @param file A file written by <code>BinaryConverter</code>.
+     * @return The mapped version.
+     * @throws IOException If the file cannot be mapped or is not a binary
+     *             version file.
+     */
+	public static MappedVersionMetricData map(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			// The mapping stays valid once the file is closed.
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MappedVersionMetricData(buffer, BinaryConverter.readHeader(buffer));
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	private MappedVersionMetricData(ByteBuffer buffer, int[] header) throws IOException
+	{
+		super(header[BinaryConverter.H_RSN], BinaryConverter.readString(buffer, header, header[BinaryConverter.H_ID]),
+				BinaryConverter.readString(buffer, header, header[BinaryConverter.H_NAME]));
+		this.buffer = buffer;
+		this.header = header;
+		this.classCount = header[BinaryConverter.H_CLASS_COUNT];
+		this.rowLength = 2 + header[BinaryConverter.H_METRIC_COUNT];
+
+		int[] fileColumns = BinaryConverter.readColumns(buffer, header);
+		columns = new int[ClassMetric.getNumberOfMetrics()];
+		Arrays.fill(columns, -1);
+		for (int c = 0; c < fileColumns.length; c++)
+		{
+			if (fileColumns[c] != -1)
+				columns[fileColumns[c]] = c;
+		}
+
+		setSimpleMetric(Version.CLASS_COUNT, classCount);
+		ExtractionProfile profile = ExtractionProfile.parse(BinaryConverter.readString(buffer, header,
+				header[BinaryConverter.H_PROFILE]));
+		if (profile != null)
+			this.profile = profile;
+		metricData = new ClassMap();
+	}
+
+	/**
+     * @return Whether the classes of this version have been created.
+     */
+	public boolean isMaterialised()
+	{
+		return materialised;
+	}
+
+	/**
+     * Reads the range straight from the mapped file, in the order the classes
+     * were written, until the classes have been created.
+     */
+	@Override
+	public int[] getMetricRange(ClassMetric prop)
+	{
+		if (materialised)
+			return super.getMetricRange(prop);
+
+		int[] range = new int[classCount];
+		int column = columns[prop.ordinal()];
+		if (column == -1)
+			return range;
+		IntBuffer ints = BinaryConverter.ints(buffer);
+		int position = header[BinaryConverter.H_CLASSES] / 4 + 2 + column;
+		for (int i = 0; i < classCount; i++, position += rowLength)
+			range[i] = ints.get(position);
+		return range;
+	}
+
+	@Override
+	public int getMetricSum(ClassMetric prop)
+	{
+		if (materialised)
+			return super.getMetricSum(prop);
+
+		int column = columns[prop.ordinal()];
+		if (column == -1)
+			return 0;
+		int sum = 0;
+		IntBuffer ints = BinaryConverter.ints(buffer);
+		int position = header[BinaryConverter.H_CLASSES] / 4 + 2 + column;
+		for (int i = 0; i < classCount; i++, position += rowLength)
+			sum += ints.get(position);
+		return sum;
+	}
+
+	// Creates every class the first time the classes are used.
+	private synchronized void materialise()
+	{
+		if (materialised)
+			return;
+		try
+		{
+			String[] strings = BinaryConverter.readStrings(buffer, header);
+			ClassMap classes = (ClassMap) metricData;
+			for (ClassMetricData cmd : BinaryConverter.readClasses(buffer, header, strings, get(Version.NAME), true))
+				classes.load(cmd);
+		} catch (IOException e)
+		{
+			// The header was checked when the file was mapped.
+			throw new IllegalStateException(e.getMessage());
+		}
+		materialised = true;
+	}
+
+	/**
+     * The classes of the version, created when they are first used. Only the
+     * number of classes is known before then.
+     */
+	private class ClassMap extends HashMap<String, ClassMetricData>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private void load(ClassMetricData cmd)
+		{
+			super.put(cmd.get(ClassMetric.NAME), cmd);
+		}
+
+		@Override
+		public int size()
+		{
+			return materialised ? super.size() : classCount;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size() == 0;
+		}
+
+		@Override
+		public ClassMetricData get(Object key)
+		{
+			materialise();
+			return super.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			materialise();
+			return super.containsKey(key);
+		}
+
+		@Override
+		public boolean containsValue(Object value)
+		{
+			materialise();
+			return super.containsValue(value);
+		}
+
+		@Override
+		public ClassMetricData put(String key, ClassMetricData value)
+		{
+			materialise();
+			return super.put(key, value);
+		}
+
+		@Override
+		public void putAll(Map<? extends String, ? extends ClassMetricData> m)
+		{
+			materialise();
+			super.putAll(m);
+		}
+
+		@Override
+		public ClassMetricData remove(Object key)
+		{
+			materialise();
+			return super.remove(key);
+		}
+
+		@Override
+		public void clear()
+		{
+			materialise();
+			super.clear();
+		}
+
+		@Override
+		public Set<String> keySet()
+		{
+			materialise();
+			return super.keySet();
+		}
+
+		@Override
+		public Collection<ClassMetricData> values()
+		{
+			materialise();
+			return super.values();
+		}
+
+		@Override
+		public Set<Map.Entry<String, ClassMetricData>> entrySet()
+		{
+			materialise();
+			return super.entrySet();
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			materialise();
+			return super.equals(o);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			materialise();
+			return super.hashCode();
+		}
+
+		@Override
+		public String toString()
+		{
+			materialise();
+			return super.toString();
+		}
+	}
+}
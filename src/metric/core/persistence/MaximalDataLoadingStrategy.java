@@ -1,5 +1,6 @@
 package metric.core.persistence;
 
+import java.io.File;
 import java.io.FileReader;
 import java.util.Map;
 import java.util.logging.Level;
@@ -30,6 +31,10 @@ public class MaximalDataLoadingStrategy implements DataLoadingStrategy
 		try
 		{
 			String file = versions.get(rsn)[1];
+			// Versions stored in binary hold their dependencies as well.
+			if (BinaryConverter.exists(file))
+				return new BinaryConverter(true).deSerialize(new File(file + SerializeType.BINARY.getExt()));
+
 			// Load up classes.
 			FileReader reader = new FileReader(file + SerializeType.CLASSES.getExt());
 			MetricDataConverter classConverter = new CSVConverter(SerializeType.CLASSES);
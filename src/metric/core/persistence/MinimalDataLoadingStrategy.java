@@ -1,5 +1,6 @@
 package metric.core.persistence;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -21,11 +22,16 @@ public class MinimalDataLoadingStrategy implements DataLoadingStrategy
 	public VersionMetricData getVersion(int rsn)
 	{
 		// Position 1 stores the filename.
-		String filename = versions.get(rsn)[1] + SerializeType.CLASSES.getExt();
+		String path = versions.get(rsn)[1];
+		String filename = path + SerializeType.CLASSES.getExt();
 		FileReader reader;
 		VersionMetricData vmd = null;
 		try
 		{
+			// Versions stored in binary are read without their dependencies.
+			if (BinaryConverter.exists(path))
+				return new BinaryConverter(false).deSerialize(new File(path + SerializeType.BINARY.getExt()));
+
 			reader = new FileReader(filename);
 			MetricDataConverter converter = new CSVConverter(SerializeType.CLASSES);
 			vmd = converter.deSerialize(reader);
@@ -0,0 +1,223 @@
+package metric.core.persistence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import metric.core.WorkerThreadFactory;
+import metric.core.model.VersionMetricData;
+
+/**
+ * Loads the versions that follow the one asked for on background threads, so
+ * they are ready by the time a report gets to them. Almost every report walks
+ * the versions of a history in RSN order, and would otherwise wait on the disk
+ * and the parser for each version in turn.
+ *
+ * Reading ahead starts once versions are asked for in order, and stops, with
+ * the versions already read ahead dropped, as soon as a version is asked for
+ * out of order. Asking for the same version again does not break the order, as
+ * reports that compare each version with the one before it ask for most
+ * versions twice.
+ *
+ * The number of versions read ahead is limited both by the depth and by the
+ * memory the versions are estimated to hold, judged by the size of the last
+ * version loaded.
+ */
+public class ReadAheadDataLoadingStrategy implements DataLoadingStrategy
+{
+	/** The number of versions read ahead if none is specified. */
+	public static final int DEFAULT_DEPTH = 2;
+
+	private final DataLoadingStrategy loader;
+	// The RSNs of the history in order.
+	private final int[] order;
+	private final int depth;
+	private final long capacity;
+	private final ThreadPoolExecutor pool;
+
+	private final Map<Integer, Future<VersionMetricData>> readAhead = new HashMap<Integer, Future<VersionMetricData>>();
+	private int lastIndex = -1;
+	private long versionWeight;
+	private int hits, misses;
+
+	/**
+     * Reads up to <code>DEFAULT_DEPTH</code> versions ahead in up to a quarter
+     * of the maximum heap.
+     */
+	public ReadAheadDataLoadingStrategy(DataLoadingStrategy loader, Map<Integer, String[]> versions)
+	{
+		this(loader, versions, DEFAULT_DEPTH, Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+     * @param loader The strategy versions are loaded with.
+     * @param versions The versions of the history, by RSN.
+     * @param depth The number of versions read ahead, each on its own thread.
+     * @param capacity The estimated number of bytes the versions read ahead
+     *            may hold.
+     */
+	public ReadAheadDataLoadingStrategy(DataLoadingStrategy loader, Map<Integer, String[]> versions, int depth,
+			long capacity)
+	{
+		this.loader = loader;
+		this.depth = Math.max(depth, 0);
+		this.capacity = capacity;
+
+		order = new int[versions.size()];
+		int i = 0;
+		for (Integer rsn : versions.keySet())
+			order[i++] = rsn;
+		Arrays.sort(order);
+
+		// Idle threads exit, so a history that is no longer used holds none.
+		pool = new ThreadPoolExecutor(Math.max(this.depth, 1), Math.max(this.depth, 1), 10, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory("ReadAhead"));
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	public VersionMetricData getVersion(int rsn)
+	{
+		Future<VersionMetricData> future;
+		synchronized (this)
+		{
+			int index = Arrays.binarySearch(order, rsn);
+			future = readAhead.remove(rsn);
+			if (index >= 0 && (index == lastIndex + 1 || index == lastIndex))
+				readAheadOf(index);
+			else
+				cancelReadAhead();
+			lastIndex = index;
+		}
+
+		VersionMetricData vmd = null;
+		if (future != null)
+		{
+			try
+			{
+				vmd = future.get();
+				synchronized (this)
+				{
+					hits++;
+				}
+			} catch (InterruptedException e)
+			{
+				// Left for the caller to act on, the version is loaded here.
+				Thread.currentThread().interrupt();
+				future.cancel(false);
+				future = null;
+			} catch (ExecutionException e)
+			{
+				future = null;
+			} catch (CancellationException e)
+			{
+				// Dropped by shutdown before it was read.
+				future = null;
+			}
+		}
+		if (future == null)
+		{
+			vmd = loader.getVersion(rsn);
+			synchronized (this)
+			{
+				misses++;
+			}
+		}
+
+		if (vmd != null)
+		{
+			long weight = CachingDataLoadingStrategy.weigh(vmd);
+			synchronized (this)
+			{
+				versionWeight = weight;
+			}
+		}
+		return vmd;
+	}
+
+	// Starts reading the versions after the specified index that are not
+	// already being read, as far as the depth and capacity allow.
+	private void readAheadOf(int index)
+	{
+		if (pool.isShutdown())
+			return;
+		for (int i = index + 1; i <= index + depth && i < order.length; i++)
+		{
+			if (readAhead.containsKey(order[i]))
+				continue;
+			if (versionWeight * (readAhead.size() + 1) > capacity)
+				break;
+			final int rsn = order[i];
+			readAhead.put(rsn, pool.submit(new Callable<VersionMetricData>()
+			{
+				public VersionMetricData call()
+				{
+					return loader.getVersion(rsn);
+				}
+			}));
+		}
+	}
+
+	private void cancelReadAhead()
+	{
+		Iterator<Future<VersionMetricData>> it = readAhead.values().iterator();
+		while (it.hasNext())
+		{
+			it.next().cancel(false);
+			it.remove();
+		}
+	}
+
+	/**
+     * Drops the versions read ahead and stops the threads. Versions are loaded
+     * on the calling thread afterwards, including those that callers are
+     * already waiting for.
+     */
+	public synchronized void shutdown()
+	{
+		cancelReadAhead();
+		// Versions that have not started being read may already have been
+		// asked for, and are waited for until they are cancelled.
+		for (Runnable queued : pool.shutdownNow())
+		{
+			if (queued instanceof Future<?>)
+				((Future<?>) queued).cancel(false);
+		}
+		lastIndex = -1;
+	}
+
+	/**
+     * @return The number of versions that had been read ahead when they were
+     *         asked for.
+     */
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**
+     * @return The number of versions that were loaded when they were asked for.
+     */
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "hits=" + hits + ", misses=" + misses + ", depth=" + depth + ", reading=" + readAhead.size();
+	}
+}
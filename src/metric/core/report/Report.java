@@ -5,6 +5,7 @@ import java.util.Observable;
 import java.util.Observer;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -12,6 +13,7 @@ import metric.core.model.MethodMetricMap;
 import metric.core.model.VersionMetricData;
 import metric.core.report.visitor.ReportVisitor;
 import metric.core.util.MetricTable;
+import metric.core.vocabulary.ClassMetric;
 
 /**
  * Provides a stub for metric reports. Any data the subclass report supports, it
@@ -31,6 +33,7 @@ public abstract class Report extends Observable implements ReportVisitor
 
 	protected int completion;
 	private boolean dataOnly;
+	private volatile boolean cancelled;
 
 	public Report(ReportDefinition rd) throws ReportException
 	{
@@ -72,15 +75,72 @@ public abstract class Report extends Observable implements ReportVisitor
 		return table;
 	}
 
+	/**
+     * Asks this report to stop. It stops at its next checkpoint, which it
+     * reaches at least once for each version and for each class it visits.
+     */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+     * @return Whether this report has been cancelled since it last stopped
+     *         at a checkpoint or was reset.
+     */
+	public final boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+     * A cancellation checkpoint. Should be called regularly by long running
+     * loops, such as once per version and once per class. The cancellation is
+     * cleared once it has stopped this report, so it can be run again.
+     * 
+     * @throws ReportCancelledException If this report has been cancelled, or
+     *             the thread running it has been interrupted.
+     */
+	protected void checkCancelled() throws ReportCancelledException
+	{
+		if (cancelled || Thread.currentThread().isInterrupted())
+		{
+			cancelled = false;
+			throw new ReportCancelledException(getClass().getSimpleName() + " was cancelled.");
+		}
+	}
+
+	/**
+     * Checks that the specified metrics were extracted for a version, as
+     * versions extracted with the FAST profile lack the metrics counted from
+     * method bodies. Names that are not class metrics are ignored.
+     * 
+     * @param vmd The version to check.
+     * @param metrics The names of the class metrics this report needs.
+     * @throws ReportException If a metric is not available for the version.
+     */
+	protected void checkAvailable(VersionMetricData vmd, String... metrics) throws ReportException
+	{
+		for (String name : metrics)
+		{
+			ClassMetric metric = name == null ? null : ClassMetric.parse(name);
+			if (metric != null && !vmd.profile.isAvailable(metric))
+				throw new ReportException(metric + " is not available for " + vmd + ", which was extracted with the "
+						+ vmd.profile + " profile.");
+		}
+	}
+
 	/**
      * Logs a progress update. Can be used to notify handlers of the current
-     * status of report generation.
+     * status of report generation. This is also a cancellation checkpoint.
      * 
      * @param at How much work has been done processing this report.
      * @param total How much work in total there is.
+     * @throws ReportCancelledException If this report has been cancelled.
      */
-	protected void updateProgress(int at, int total, VersionMetricData vmd)
+	protected void updateProgress(int at, int total, VersionMetricData vmd) throws ReportCancelledException
 	{
+		checkCancelled();
 		completion = (int) (((double) at / (double) total) * 100);
 		setChanged();
 		notifyObservers(UPDATE_MSG + vmd);
@@ -149,6 +209,7 @@ public abstract class Report extends Observable implements ReportVisitor
      */
 	public void reset()
 	{
+		cancelled = false;
 		try
 		{
 			processArgs();
@@ -58,8 +58,21 @@ public abstract class ReportDecorator implements ReportVisitor
 		decoratedReport.addObserver(observer);	
 	}
 
+	public void cancel()
+	{
+		decoratedReport.cancel();
+	}
+
 	public abstract void display();
 
+	/**
+     * @return The <code>ReportVisitor</code> this decorates.
+     */
+	public ReportVisitor getDecoratedReport()
+	{
+		return decoratedReport;
+	}
+
 	/**
      * @return The MetricTable generated by the underling
      *         <code>ReportVisitor</code>.
@@ -7,6 +7,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -84,7 +85,7 @@ public class CloneReportVisitor extends Report
 	}
 
 	/** Print the clusters in the data, i.e. those that are clones */
-	public String[] getCloneClusters(VersionMetricData vmd)
+	public String[] getCloneClusters(VersionMetricData vmd) throws ReportCancelledException
 	{
 		List<ClassMetricData> data = new LinkedList<ClassMetricData>(vmd.metricData.values());
 		Collections.sort(data);
@@ -92,6 +93,7 @@ public class CloneReportVisitor extends Report
 		LinkedList<ClassMetricData> list = new LinkedList<ClassMetricData>();
 		for (ClassMetricData cm : data)
 		{
+			checkCancelled();
 			if (list.size() == 0)
 			{
 				list.addFirst(cm);
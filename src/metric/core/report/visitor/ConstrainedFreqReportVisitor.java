@@ -94,6 +94,7 @@ public class ConstrainedFreqReportVisitor extends Report
 		for (int i = 1; i <= hmd.versions.size(); i++)
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
+			checkAvailable(vmd, metric, cMetric);
 
 			String[] row = getConstrainedFreq(vmd, metric, maxValue, relative, cMetric, cMin, cMax);
 			rows.add(row);
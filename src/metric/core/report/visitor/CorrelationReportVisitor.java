@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -132,6 +133,9 @@ public class CorrelationReportVisitor extends Report
 				row.add(v.get(Version.ID));
 				for (double c : correls)
 					row.add(String.valueOf(StatUtils.toFixedDecPlaces(c, 3)));
+			} catch (ReportCancelledException e)
+			{
+				throw e;
 			} catch (Exception e)
 			{
 				e.printStackTrace();
@@ -153,6 +157,7 @@ public class CorrelationReportVisitor extends Report
 			DoubleArrayList m2 = new DoubleArrayList();
 			for (ClassMetricData cm : vmd.metricData.values())
 			{
+				checkCancelled();
 				if (cm.getSimpleMetric(ClassMetric.IS_INTERFACE) == 1)
 					continue; // ignore interfaces
 
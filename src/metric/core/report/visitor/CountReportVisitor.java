@@ -103,6 +103,7 @@ public class CountReportVisitor extends Report
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
 			updateProgress(i, total, vmd);
+			checkAvailable(vmd, fields);
 			rows.add(getRowCounts(vmd, doIsum, doRelIsum, doBeta, fields));
 		}
 		// Create and set table.
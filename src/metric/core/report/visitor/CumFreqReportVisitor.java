@@ -76,6 +76,7 @@ public class CumFreqReportVisitor extends Report
 		for (int i = 1; i <= hmd.versions.size(); i++)
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
+			checkAvailable(vmd, metric);
 			String[] row = getCumFreqRow(vmd, maxValue, metric);
 			rows.add(row);
 			updateProgress(i, total, vmd);
@@ -8,6 +8,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -107,7 +108,7 @@ public class EarthquakeReportVisitor extends Report
 		return rows;
 	}
 
-	private String[] getDistancesBetweenVersions(VersionMetricData vmd, VersionMetricData vmd2)
+	private String[] getDistancesBetweenVersions(VersionMetricData vmd, VersionMetricData vmd2) throws ReportCancelledException
 	{
 		HashMap<TremorMagnitude, Double> table = new HashMap<TremorMagnitude, Double>();
 		
@@ -116,6 +117,7 @@ public class EarthquakeReportVisitor extends Report
 
 		for (ClassMetricData cmd : vmd.metricData.values())
 		{
+			checkCancelled();
 			if (cmd.getSimpleMetric(ClassMetric.NEXT_VERSION_STATUS) == Evolution.MODIFIED.getValue())
 			{
 				double d = 0.0;
@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -95,6 +96,7 @@ public class EvolutionReportVisitor extends Report
 		for (int i = 1; i <= total; i++)
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
+			checkAvailable(vmd, fields);
 			ArrayList<String[]> tmpRows = getClassList(vmd, Evolution.parse(type), fields);
 			for (String[] row : tmpRows)
 				rows.add(row);
@@ -121,12 +123,13 @@ public class EvolutionReportVisitor extends Report
 		setTable(et);
 	}
 
-	public ArrayList<String[]> getClassList(VersionMetricData vmd, Evolution field, String[] fields)
+	public ArrayList<String[]> getClassList(VersionMetricData vmd, Evolution field, String[] fields) throws ReportCancelledException
 	{
 		int numRows = vmd.metricData.values().size();
 		ArrayList<String[]> rows = new ArrayList<String[]>(numRows);
 		for (ClassMetricData cm : vmd.metricData.values())
 		{
+			checkCancelled();
 			if (cm.getSimpleMetric(ClassMetric.NEXT_VERSION_STATUS) == field.getValue())
 			{
 				ArrayList<String> tmpRow = new ArrayList<String>();
@@ -83,6 +83,7 @@ public class FreqReportVisitor extends Report
 		for (int i = 1; i <= hmd.versions.size(); i++)
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
+			checkAvailable(vmd, metric);
 			String[] row = getFreqRow(vmd, metric, maxValue, relative);
 			rows.add(row);
 			updateProgress(i, total, vmd);
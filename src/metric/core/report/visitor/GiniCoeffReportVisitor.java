@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -90,6 +91,7 @@ public class GiniCoeffReportVisitor extends Report
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
 			updateProgress(i, total, vmd);
+			checkAvailable(vmd, fields);
 			rows.add(getGiniCoeffRow(vmd, fields));
 		}
 
@@ -131,7 +133,7 @@ public class GiniCoeffReportVisitor extends Report
 		return StringUtils.asStrings(heading);
 	}
 
-	public String[] getGiniCoeffRow(VersionMetricData vmd, String[] fields)
+	public String[] getGiniCoeffRow(VersionMetricData vmd, String[] fields) throws ReportCancelledException
 	{
 		ArrayList<String> tmpRow = new ArrayList<String>();
 		tmpRow.add(vmd.get(Version.NAME));
@@ -145,11 +147,12 @@ public class GiniCoeffReportVisitor extends Report
 		return row;
 	}
 
-	private double getGiniCoeff(VersionMetricData vmd, String field)
+	private double getGiniCoeff(VersionMetricData vmd, String field) throws ReportCancelledException
 	{
 		DoubleArrayList d = new DoubleArrayList();
 		for (ClassMetricData cm : vmd.metricData.values())
 		{
+			checkCancelled();
 			if ((field.equals(ClassMetric.LOAD_COUNT.toString()))
 					&& (cm.getSimpleMetric(ClassMetric.IS_INTERFACE) == 1))
 				continue;
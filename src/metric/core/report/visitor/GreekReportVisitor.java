@@ -84,7 +84,7 @@ public class GreekReportVisitor extends Report
 		}
 	}
 
-	public void visit(HistoryMetricData hmd)
+	public void visit(HistoryMetricData hmd) throws ReportException
 	{
 		int numRows = hmd.versions.size();
 		ArrayList<String[]> rows = new ArrayList<String[]>(numRows);
@@ -94,6 +94,7 @@ public class GreekReportVisitor extends Report
 		for (int i = 1; i <= numRows; i++)
 		{
 			VersionMetricData vmd = hmd.getVersion(i);
+			checkAvailable(vmd, fields);
 			rows.add(getRow(vmd, vType, fields));
 			updateProgress(i, numRows, vmd);
 		}
@@ -105,7 +106,7 @@ public class GreekReportVisitor extends Report
 		setTable(et);
 	}
 
-	public void visit(VersionMetricData vmd)
+	public void visit(VersionMetricData vmd) throws ReportException
 	{
 		ArrayList<String[]> rows = new ArrayList<String[]>(1);
 
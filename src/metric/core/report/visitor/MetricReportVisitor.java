@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -93,11 +94,12 @@ public class MetricReportVisitor extends Report
 		getRowsOfMetrics(vmd);
 	}
 
-	public ArrayList<String[]> getRowsOfMetrics(VersionMetricData vmd)
+	public ArrayList<String[]> getRowsOfMetrics(VersionMetricData vmd) throws ReportCancelledException
 	{
 		ArrayList<String[]> rows = new ArrayList<String[]>();
 		for (ClassMetricData cm : vmd.metricData.values())
 		{
+			checkCancelled();
 			String[] row = { vmd.get(Version.NAME), vmd.get(Version.RSN), vmd.get(Version.ID),
 					vmd.get(Version.CLASS_COUNT), cm.toString() };
 			rows.add(row);
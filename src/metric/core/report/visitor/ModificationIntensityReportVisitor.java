@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -84,7 +85,7 @@ public class ModificationIntensityReportVisitor extends Report
 		return StringUtils.asStrings(heading);
 	}
 
-	private double[] changeFactor(VersionMetricData v1, VersionMetricData v2, int totalVersions)
+	private double[] changeFactor(VersionMetricData v1, VersionMetricData v2, int totalVersions) throws ReportCancelledException
 	{
 		int numClasses = v1.metricData.size();
 		double[] intensityRange = new double[totalVersions];
@@ -96,6 +97,7 @@ public class ModificationIntensityReportVisitor extends Report
 
 		for (ClassMetricData cm : v1.metricData.values())
 		{
+			checkCancelled();
 			if (cm.getSimpleMetric(ClassMetric.NEXT_VERSION_STATUS) == Evolution.MODIFIED.getValue())
 			{
 				int changeNum = 0;
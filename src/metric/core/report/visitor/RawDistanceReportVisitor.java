@@ -8,6 +8,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -111,12 +112,13 @@ public class RawDistanceReportVisitor extends Report
 		return rows;
 	}
 
-	private ArrayList<String[]> getDistancesBetweenVersions(VersionMetricData vmd, VersionMetricData vmd2)
+	private ArrayList<String[]> getDistancesBetweenVersions(VersionMetricData vmd, VersionMetricData vmd2) throws ReportCancelledException
 	{
 		ArrayList<String[]> tmp = new ArrayList<String[]>();
 
 		for (ClassMetricData cmd : vmd.metricData.values())
 		{
+			checkCancelled();
 			if (cmd.getSimpleMetric(ClassMetric.NEXT_VERSION_STATUS) == Evolution.MODIFIED.getValue())
 			{				
 				double d = 0.0d;
@@ -134,7 +136,7 @@ public class RawDistanceReportVisitor extends Report
 		return tmp;
 	}
 	
-	private void sortClasses(HistoryMetricData hmd, ClassMetric metric, int maxValue)
+	private void sortClasses(HistoryMetricData hmd, ClassMetric metric, int maxValue) throws ReportException
 	{
 		ArrayList<String[]> rows = new ArrayList<String[]>();
 		int rowNum = maxValue, colNum = 17;
@@ -150,6 +152,7 @@ public class RawDistanceReportVisitor extends Report
 
 			for (ClassMetricData cmd : v1.metricData.values())
 			{
+				checkCancelled();
 				if (cmd.getSimpleMetric(ClassMetric.NEXT_VERSION_STATUS) == Evolution.MODIFIED.getValue())
 				{
 					// Natural log distance.
@@ -21,5 +21,11 @@ public interface ReportVisitor
 	
 	public void addObserver(Observer observer);
 	
+	/**
+	 * Asks a running report to stop, which it does at its next checkpoint by
+	 * throwing a <code>ReportCancelledException</code>.
+	 */
+	public void cancel();
+	
 	public MetricTable getTable();
 }
@@ -8,6 +8,7 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.ClassMetricData;
 import metric.core.model.HistoryMetricData;
@@ -92,7 +93,7 @@ public class SurvivorReportVisitor extends Report
 	}
 
 	/** Calculates the number of classes that did not change between versions */
-	public void printSurvivors(HistoryMetricData hmd, int survivorThreshold, boolean relative)
+	public void printSurvivors(HistoryMetricData hmd, int survivorThreshold, boolean relative) throws ReportException
 	{
 		if (hmd.versions.size() < 2)
 			return;
@@ -132,7 +133,7 @@ public class SurvivorReportVisitor extends Report
 	}
 
 	/** Calculates the number of classes that did not change between versions */
-	public void printSurvivorsFromBirth(HistoryMetricData hmd, int survivorThreshold, boolean relative)
+	public void printSurvivorsFromBirth(HistoryMetricData hmd, int survivorThreshold, boolean relative) throws ReportException
 	{
 		if (hmd.versions.size() < 2)
 			return;
@@ -171,11 +172,12 @@ public class SurvivorReportVisitor extends Report
 
 	/** If it has an age >= threshold, than it is a survivor */
 	// TODO update to make more useful.
-	public Set<String> getSurvivorClassNames(VersionMetricData vmd, boolean silent, int threshold)
+	public Set<String> getSurvivorClassNames(VersionMetricData vmd, boolean silent, int threshold) throws ReportCancelledException
 	{
 		Set<String> survivors = new HashSet<String>();
 		for (ClassMetricData cm : vmd.metricData.values())
 		{
+			checkCancelled();
 			if (cm.getSimpleMetric(ClassMetric.BORN_RSN) >= threshold)
 				survivors.add(cm.get(ClassMetric.NAME));
 		}
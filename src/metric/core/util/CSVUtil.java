@@ -24,6 +24,8 @@ public class CSVUtil
 		buffer.append(vmd.get(Version.ID));
 		buffer.append(",");
 		buffer.append(vmd.metricData.size());
+		buffer.append(",");
+		buffer.append(vmd.profile);
 		return buffer.toString();
 	}
 
@@ -92,10 +92,13 @@ public enum ClassMetric {
 		return name().toLowerCase();
 	}
 
+	// We exclude non metric related enums. Counted once, as values() copies
+	// the constants on every call.
+	private static final int NUMBER_OF_METRICS = values().length - 4;
+
 	public static int getNumberOfMetrics()
 	{
-		// We exclude non metric related enums
-		return values().length - 4;
+		return NUMBER_OF_METRICS;
 	}
 
 	public static int getNumberOfComparativeMetrics()
@@ -0,0 +1,59 @@
+package metric.core.vocabulary;
+
+/**
+ * The format the versions of a project are stored in.
+ * 
+ * CSV - A text file of class metrics, one of class dependencies and one of
+ * method metrics for each version.<br />
+ * BINARY - A single binary file holding the class metrics and dependencies of
+ * each version, which is loaded with a bulk read rather than parsed. Method
+ * metrics are still written as text.
+ */
+public enum DataFormat {
+	CSV(SerializeType.CLASSES, SerializeType.METHODS, SerializeType.DEPENDENCIES),
+	BINARY(SerializeType.BINARY, SerializeType.METHODS);
+
+	private SerializeType[] types;
+
+	private DataFormat(SerializeType... types)
+	{
+		this.types = types;
+	}
+
+	/**
+     * @return The serialize types a version is written as, the first of which
+     *         holds its class metrics.
+     */
+	public SerializeType[] getTypes()
+	{
+		return types.clone();
+	}
+
+	/**
+     * @param type A serialize type.
+     * @return Whether versions are written as the specified type.
+     */
+	public boolean writes(SerializeType type)
+	{
+		for (SerializeType t : types)
+		{
+			if (t == type)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+     * @param toParse The name of a format, in any case.
+     * @return The format, or null if there is no format with that name.
+     */
+	public static DataFormat parse(String toParse)
+	{
+		for (DataFormat f : values())
+		{
+			if (f.name().equalsIgnoreCase(toParse.trim()))
+				return f;
+		}
+		return null;
+	}
+}
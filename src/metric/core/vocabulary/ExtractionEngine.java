@@ -0,0 +1,12 @@
+package metric.core.vocabulary;
+
+/**
+ * The engines available for extracting metrics from class files.
+ * 
+ * TREE - Builds a full ASM ClassNode/MethodNode tree for each class.<br />
+ * STREAMING - Collects metrics directly from ClassReader events without
+ * building an intermediate tree.
+ */
+public enum ExtractionEngine {
+	TREE, STREAMING;
+}
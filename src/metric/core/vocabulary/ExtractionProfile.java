@@ -0,0 +1,81 @@
+package metric.core.vocabulary;
+
+/**
+ * How much of each class file is extracted.
+ * 
+ * FAST - Only reads class headers, fields and method signatures. Metrics that
+ * are counted from method bodies, e.g. instruction and branch counts, are not
+ * available, and neither are those computed from them. Dependencies are only
+ * those in the signatures of fields and methods, so the metrics computed from
+ * the dependency graph, e.g. fan in and layer, are not available either.<br />
+ * STANDARD - Extracts every class metric and dependency, but does not keep
+ * the metrics of individual methods.<br />
+ * FULL - Extracts everything, including the metrics of each method.
+ */
+public enum ExtractionProfile {
+	FAST, STANDARD, FULL;
+
+	// Counted from the instructions of method bodies, or only partly known
+	// without them.
+	private static final ClassMetric[] CODE_METRICS = { ClassMetric.LOCAL_VAR_COUNT, ClassMetric.RAW_SIZE_COUNT,
+			ClassMetric.EX_METHOD_CALL_COUNT, ClassMetric.IN_METHOD_CALL_COUNT, ClassMetric.METHOD_CALL_COUNT,
+			ClassMetric.CONSTANT_LOAD_COUNT, ClassMetric.INCREMENT_OP_COUNT, ClassMetric.REF_LOAD_OP_COUNT,
+			ClassMetric.REF_STORE_OP_COUNT, ClassMetric.LOAD_COUNT, ClassMetric.STORE_COUNT, ClassMetric.ILOAD_COUNT,
+			ClassMetric.ISTORE_COUNT, ClassMetric.TYPE_INSN_COUNT, ClassMetric.LOAD_FIELD_COUNT,
+			ClassMetric.STORE_FIELD_COUNT, ClassMetric.ZERO_OP_INSN_COUNT, ClassMetric.LOAD_RATIO,
+			ClassMetric.TYPE_CONSTRUCTION_COUNT, ClassMetric.INSTANCE_OF_COUNT, ClassMetric.CHECK_CAST_COUNT,
+			ClassMetric.NEW_COUNT, ClassMetric.NEW_ARRAY_COUNT, ClassMetric.THROW_COUNT,
+			ClassMetric.TRY_CATCH_BLOCK_COUNT, ClassMetric.NORMALIZED_BRANCH_COUNT, ClassMetric.BRANCH_COUNT,
+			// Computed from the metrics above.
+			ClassMetric.COMPUTED_DISTANCE, ClassMetric.EVOLUTION_DISTANCE, ClassMetric.MODIFIED_METRIC_COUNT,
+			ClassMetric.DISTANCE_MOVED_SINCE_BIRTH,
+			// Computed from dependencies, which include those in method bodies.
+			ClassMetric.FAN_OUT_COUNT, ClassMetric.FAN_IN_COUNT, ClassMetric.INTERNAL_FAN_OUT_COUNT,
+			ClassMetric.INSTABILITY, ClassMetric.LAYER, ClassMetric.GUI_DISTANCE, ClassMetric.IS_IO_CLASS };
+
+	/**
+     * @return Whether the code of methods is read.
+     */
+	public boolean readsCode()
+	{
+		return this != FAST;
+	}
+
+	/**
+     * @return Whether the metrics of individual methods are kept.
+     */
+	public boolean keepsMethods()
+	{
+		return this == FULL;
+	}
+
+	/**
+     * @param metric A class metric.
+     * @return Whether the specified metric is extracted by this profile.
+     */
+	public boolean isAvailable(ClassMetric metric)
+	{
+		if (readsCode())
+			return true;
+		for (ClassMetric m : CODE_METRICS)
+		{
+			if (m == metric)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+     * @param toParse The name of a profile, in any case.
+     * @return The profile, or null if there is no profile with that name.
+     */
+	public static ExtractionProfile parse(String toParse)
+	{
+		for (ExtractionProfile p : values())
+		{
+			if (p.name().equalsIgnoreCase(toParse.trim()))
+				return p;
+		}
+		return null;
+	}
+}
@@ -1,5 +1,5 @@
 package metric.core.vocabulary;
 
 public enum LoadType {
-	MINIMAL, MAXIMAL;
+	MINIMAL, MAXIMAL, MAPPED, CACHED;
 }
@@ -1,7 +1,7 @@
 package metric.core.vocabulary;
 
 public enum SerializeType {
-	CLASSES(".cme"), METHODS(".mme"), DEPENDENCIES(".dep");
+	CLASSES(".cme"), METHODS(".mme"), DEPENDENCIES(".dep"), BINARY(".cmb");
 
 	String ext;
 
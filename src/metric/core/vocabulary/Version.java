@@ -26,11 +26,13 @@ public enum Version {
 		return name().toLowerCase();
 	}
 
+	// We exclude non metric related enums. Counted once, as values() copies
+	// the constants on every call.
+	private static final int NUMBER_OF_METRICS = values().length - 9;
+
 	public static int getNumberOfMetrics()
 	{
-		// We exclude non metric related enums
-		int size = values().length - 9;
-		return size;
+		return NUMBER_OF_METRICS;
 	}
 
 	public static Version parse(String toParse)
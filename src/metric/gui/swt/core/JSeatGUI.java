@@ -7,7 +7,6 @@ import java.util.Observable;
 import java.util.Observer;
 import java.util.Properties;
 
-import metric.core.exception.ReportException;
 import metric.core.model.HistoryMetricData;
 import metric.core.report.Report;
 import metric.core.report.decorator.ReportDecorator;
@@ -17,12 +16,14 @@ import metric.gui.swt.core.dialog.NewProjectDialog;
 import metric.gui.swt.core.dialog.OpenDialog;
 import metric.gui.swt.core.dialog.ProgressDialog;
 import metric.gui.swt.core.threading.ThreadedProjectBuilder;
+import metric.gui.swt.core.threading.ThreadedReporter;
 import metric.gui.swt.core.util.JSeatFactory;
 import metric.gui.swt.core.util.SWTFactory;
 import metric.gui.swt.core.vocabulary.GUI;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.layout.FillLayout;
@@ -106,6 +107,7 @@ public abstract class JSeatGUI implements Observer
 		properties.put(GUI.DEFAULT_VERSION_DIR, (String) prop.get(GUI.DEFAULT_VERSION_DIR.toString()));
 		properties.put(GUI.DEFAULT_REPORTSET, (String) prop.get(GUI.DEFAULT_REPORTSET.toString()));
 		properties.put(GUI.CONCURRENT_VER_THREADS, (String) prop.get(GUI.CONCURRENT_VER_THREADS.toString()));
+		properties.put(GUI.VERSION_QUEUE_SIZE, (String) prop.get(GUI.VERSION_QUEUE_SIZE.toString()));
 	}
 
 	/**
@@ -151,7 +153,17 @@ public abstract class JSeatGUI implements Observer
 					e.printStackTrace();
 				} // Handle, just use 1 thread if bad input.
 
-				NewProjectDialog npd = new NewProjectDialog(getVersionList(), numThreads);
+				int queueSize = numThreads * 2;
+				try
+				{
+					if (properties.get(GUI.VERSION_QUEUE_SIZE) != null)
+						queueSize = Integer.parseInt(properties.get(GUI.VERSION_QUEUE_SIZE));
+				} catch (NumberFormatException e)
+				{
+					e.printStackTrace();
+				} // Handle, just use the default if bad input.
+
+				NewProjectDialog npd = new NewProjectDialog(getVersionList(), numThreads, queueSize);
 				npd.open();
 				SWTFactory.centerDialog(shell, npd.getShell());
 			}
@@ -165,43 +177,49 @@ public abstract class JSeatGUI implements Observer
 
 	/**
      * Executes the specified <code>ReportVisitor</code> on the specified
-     * <code>HistoryMetricData<code>.
+     * <code>HistoryMetricData<code> on its own thread, which can be cancelled
+     * from the progress dialog.
 	 * @param rv The report to run.
 	 * @param hmd The History to run the report on.
-	 * @throws ReportException
+	 * @param completed Run on the report's thread once it has completed, but
+	 *            not if it failed or was cancelled. May be null.
      */
-	void execute(ReportVisitor rv, HistoryMetricData hmd) throws ReportException
+	void execute(ReportVisitor rv, HistoryMetricData hmd, Runnable completed)
 	{
 		rv.addObserver(this);
-		reportProgressDialog = new ProgressDialog("Analyzing Version(s)", "Please Wait...", 100);
-		SWTFactory.centerDialog(shell, reportProgressDialog.getShell());
-		reportProgressDialog.open();
+		final ProgressDialog dialog = new ProgressDialog("Analyzing Version(s)", "Please Wait...", 100);
+		reportProgressDialog = dialog;
+		SWTFactory.centerDialog(shell, dialog.getShell());
+		dialog.open();
 
 		if (hmd != null && rv != null)
 		{
-			// Have model accept report.
-
-			hmd.accept(rv);
+			final ThreadedReporter reporter = new ThreadedReporter(hmd, rv, completed);
+			dialog.getCancelButton().addSelectionListener(new SelectionAdapter()
+			{
+				public void widgetSelected(SelectionEvent event)
+				{
+					reporter.cancel();
+					dialog.dispose();
+				}
+			});
+			reporter.start();
 		}
 	}
 
 	/**
      * Executes the specified <code>ReportDecorator</code> on the specified
      * <code>HistoryMetricData<code>. If the ReportDecorator has a graphical
-	 *  display, it will be displayed on the specified <code>Composite</code>. 
+	 *  display, it will be displayed on the specified <code>Composite</code>
+	 *  once the report has completed. 
 	 * @param rv The report to run.
 	 * @param hmd The History to run the report on.
-	 * @throws ReportException
      */
 	public void execute(final ReportDecorator rd, HistoryMetricData hmd, final Composite display)
-			throws ReportException
 	{
 		if (rd != null && hmd != null)
 		{
-			// Execute the report first.
-			execute(rd, hmd);
-
-			Runnable displayChart = new Runnable()
+			final Runnable displayChart = new Runnable()
 			{
 				public void run()
 				{
@@ -213,7 +231,16 @@ public abstract class JSeatGUI implements Observer
 					shell.setSize(shell.getSize().x - 1, shell.getSize().y - 1);
 				}
 			};
-			Display.getDefault().asyncExec(displayChart);
+
+			// Run the undecorated report, as decorators may only display
+			// themselves on the GUI thread.
+			execute(rd.getDecoratedReport(), hmd, new Runnable()
+			{
+				public void run()
+				{
+					Display.getDefault().asyncExec(displayChart);
+				}
+			});
 		}
 	}
 
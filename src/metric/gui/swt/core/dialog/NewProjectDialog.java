@@ -38,7 +38,7 @@ public class NewProjectDialog implements SelectionListener, Observer
 	private List versions;
 	private LinkedList<Observer> observers = new LinkedList<Observer>();
 	private ProgressDialog progressDialog;
-	private int concurrentVerThreads;
+	private int concurrentVerThreads, versionQueueSize;
 	private ThreadedProjectBuilder tpb;
 
 	/**
@@ -47,10 +47,13 @@ public class NewProjectDialog implements SelectionListener, Observer
      * 
      * @param concurrentVerThreads The number of threads version processing
      *            should be scaled across.
+     * @param versionQueueSize The number of extracted versions that can wait
+     *            to be persisted.
      */
-	public NewProjectDialog(int concurrentVerThreads)
+	public NewProjectDialog(int concurrentVerThreads, int versionQueueSize)
 	{
 		this.concurrentVerThreads = concurrentVerThreads;
+		this.versionQueueSize = versionQueueSize;
 		display = Display.getCurrent();
 		shell = new Shell(display, SWT.APPLICATION_MODAL | SWT.TITLE);
 		shell.setText(TITLE);
@@ -185,10 +188,12 @@ public class NewProjectDialog implements SelectionListener, Observer
      * @param versions The list the processed versions will be put on.
      * @param concurrentVerThreads The number of threads version processing
      *            should be scaled across.
+     * @param versionQueueSize The number of extracted versions that can wait
+     *            to be persisted.
      */
-	public NewProjectDialog(List versions, int concurrentVerThreads)
+	public NewProjectDialog(List versions, int concurrentVerThreads, int versionQueueSize)
 	{
-		this(concurrentVerThreads);
+		this(concurrentVerThreads, versionQueueSize);
 		this.versions = versions;
 	}
 
@@ -226,7 +231,7 @@ public class NewProjectDialog implements SelectionListener, Observer
 		{
 			// Begin creating new project.
 			tpb = new ThreadedProjectBuilder(versions, projectInputText.getText(), projectOutputText.getText(),
-					concurrentVerThreads);
+					concurrentVerThreads, versionQueueSize);
 			tpb.addObserver(this);
 
 			// Open a progress dialog.
@@ -3,6 +3,7 @@ package metric.gui.swt.core.threading;
 import java.util.Observer;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
 
 import metric.core.Project;
 import metric.core.model.HistoryMetricData;
@@ -25,6 +26,7 @@ public class ThreadedProjectBuilder extends Thread
 	private HistoryMetricData hmd;
 	private List versionList;
 	private Project project;
+	private final CountDownLatch built = new CountDownLatch(1);
 
 	/**
      * 
@@ -41,10 +43,12 @@ public class ThreadedProjectBuilder extends Thread
 		project = new Project(projectInput);
 	}
 
-	public ThreadedProjectBuilder(List versions, String projectInput, String projectOutput, int concurrentVerThreads)
+	public ThreadedProjectBuilder(List versions, String projectInput, String projectOutput, int concurrentVerThreads,
+			int versionQueueSize)
 	{
 		this.versionList = versions;
 		project = new Project(projectInput, projectOutput, concurrentVerThreads);
+		project.setVersionQueueSize(versionQueueSize);
 	}
 
 	public void addObserver(Observer observer)
@@ -61,15 +65,12 @@ public class ThreadedProjectBuilder extends Thread
      */
 	public MetricData get()
 	{
-		while (hmd == null)
+		try
 		{
-			try
-			{
-				Thread.sleep(100);
-			} catch (InterruptedException e)
-			{
-				e.printStackTrace();
-			}
+			built.await();
+		} catch (InterruptedException e)
+		{
+			e.printStackTrace();
 		}
 		return hmd;
 	}
@@ -77,7 +78,13 @@ public class ThreadedProjectBuilder extends Thread
 	@Override
 	public void run()
 	{
-		this.hmd = project.build();
+		try
+		{
+			this.hmd = project.build();
+		} finally
+		{
+			built.countDown();
+		}
 
 		// Only do this if we have a version list to populate.
 		if (versionList != null && hmd != null)
@@ -1,5 +1,6 @@
 package metric.gui.swt.core.threading;
 
+import metric.core.exception.ReportCancelledException;
 import metric.core.exception.ReportException;
 import metric.core.model.HistoryMetricData;
 import metric.core.report.visitor.ReportVisitor;
@@ -9,19 +10,33 @@ import metric.core.report.visitor.ReportVisitor;
  * <code>ReportVisitor</code>) on the specified
  * <code>HistoryMetricData<code>.
  * 
+ * Can be cancelled, in which case the report stops at its next checkpoint.
+ * 
  * @author Joshua Hayes,Swinburne University (ICT),2007
  */
 public class ThreadedReporter extends Thread
 {
 	private HistoryMetricData hmd;
 	private ReportVisitor visitor;
+	private Runnable completed;
 	private Object lock;
 	private boolean running;
 
 	public ThreadedReporter(HistoryMetricData hmd, ReportVisitor visitor)
+	{
+		this(hmd, visitor, null);
+	}
+
+	/**
+     * @param completed Run on this thread once the report has completed, but
+     *            not if it failed or was cancelled. May be null.
+     */
+	public ThreadedReporter(HistoryMetricData hmd, ReportVisitor visitor, Runnable completed)
 	{
 		this.hmd = hmd;
 		this.visitor = visitor;
+		this.completed = completed;
+		setName("ReporterThread");
 		running = true;
 		lock = new Object();
 	}
@@ -31,16 +46,30 @@ public class ThreadedReporter extends Thread
 		synchronized (lock)
 		{
 			while (running)
-			{
-				yield();
-				Thread.sleep(100);
-			}
+				lock.wait();
 		}
 
 		return true;
 
 	}
 
+	/**
+     * Cancels the report, which stops at its next checkpoint. Does nothing
+     * once the report has finished, so it is not cancelled the next time it
+     * runs.
+     */
+	public void cancel()
+	{
+		synchronized (lock)
+		{
+			if (running)
+			{
+				visitor.cancel();
+				interrupt();
+			}
+		}
+	}
+
 	@Override
 	public void run()
 	{
@@ -49,15 +78,22 @@ public class ThreadedReporter extends Thread
 			System.out.println(Thread.currentThread().getName() + "running report...");
 			hmd.accept(visitor);
 			System.out.println(Thread.currentThread().getName() + "finished report...");
-			synchronized (lock)
-			{
-				running = false;
-			}
-			notifyAll();
+			if (completed != null && !isInterrupted())
+				completed.run();
+		} catch (ReportCancelledException e)
+		{
+			System.out.println(Thread.currentThread().getName() + "cancelled report...");
 		} catch (ReportException e)
 		{
 			// FIXME This should be logged instead.
 			e.printStackTrace();
+		} finally
+		{
+			synchronized (lock)
+			{
+				running = false;
+				lock.notifyAll();
+			}
 		}
 	}
 }
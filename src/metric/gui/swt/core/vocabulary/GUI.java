@@ -12,8 +12,10 @@ public enum GUI {
                             // versions.
 	DEFAULT_REPORT_DIR, // Default directory to open when browsing for reports.
 	DEFAULT_REPORTSET, // Default report file to load.
-	CONCURRENT_VER_THREADS; // The number of versions that should be processed
+	CONCURRENT_VER_THREADS, // The number of versions that should be processed
 	// concurrently when creating a new project.
+	VERSION_QUEUE_SIZE; // The number of extracted versions that can wait to be
+	// persisted when creating a new project.
 
 	private int value;
 
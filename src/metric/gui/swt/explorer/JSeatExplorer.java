@@ -3,7 +3,6 @@ package metric.gui.swt.explorer;
 import java.io.IOException;
 import java.util.HashMap;
 
-import metric.core.exception.ReportException;
 import metric.core.model.HistoryMetricData;
 import metric.core.report.Report;
 import metric.core.report.decorator.ReportDecorator;
@@ -98,13 +97,7 @@ public class JSeatExplorer extends JSeatGUI implements SelectionListener
 				if (customArgs != null)
 					rv.setArguments(customArgs);
 
-				try
-				{
-					execute(rd, hmd, null);
-				} catch (ReportException e)
-				{
-					e.printStackTrace();
-				}
+				execute(rd, hmd, null);
 			}
 		}
 	}
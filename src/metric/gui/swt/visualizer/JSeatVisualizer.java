@@ -195,14 +195,7 @@ public class JSeatVisualizer extends JSeatGUI
 
 				if (rd != currentDecoration && item.getSelection())
 				{
-					try
-					{
-						execute(rd, hmd, mainComposite);
-					} catch (ReportException e)
-					{
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
+					execute(rd, hmd, mainComposite);
 				}
 			}
 		}
@@ -17,6 +17,20 @@ public class AllTests
 		suite.addTestSuite(ReportDefinitionRepositoryTest.class);
 		suite.addTestSuite(MetricTableTest.class);
 		suite.addTestSuite(VersionTest.class);
+		suite.addTestSuite(StreamingExtractionTest.class);
+		suite.addTestSuite(NameSetTest.class);
+		suite.addTestSuite(CSVParserTest.class);
+		suite.addTestSuite(VersionPostProcessorTest.class);
+		suite.addTestSuite(GUIAndIOPropagationTest.class);
+		suite.addTestSuite(ExtractionCacheTest.class);
+		suite.addTestSuite(ExtractionProfileTest.class);
+		suite.addTestSuite(BinaryConverterTest.class);
+		suite.addTestSuite(ClassByteStoreTest.class);
+		suite.addTestSuite(ReportCancellationTest.class);
+		suite.addTestSuite(DirectoryReaderTest.class);
+		suite.addTestSuite(CachingDataLoadingStrategyTest.class);
+		suite.addTestSuite(ReadAheadDataLoadingStrategyTest.class);
+		suite.addTestSuite(ProjectAppendTest.class);
 		// $JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,156 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import metric.core.exception.ConversionException;
+import metric.core.model.ClassMetricData;
+import metric.core.model.VersionMetricData;
+import metric.core.persistence.BinaryConverter;
+import metric.core.persistence.CSVConverter;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
+import metric.core.vocabulary.SerializeType;
+import metric.core.vocabulary.Version;
+
+/**
+ * Checks that a version written in binary is read back exactly as it is when
+ * written as CSV, and that files that are not binary versions are rejected.
+ */
+public class BinaryConverterTest extends TestCase
+{
+	private File path;
+
+	public void setUp() throws IOException
+	{
+		path = File.createTempFile("binary", "");
+		path.delete();
+	}
+
+	public void tearDown()
+	{
+		file().delete();
+	}
+
+	public void testMatchesCSV() throws ConversionException
+	{
+		VersionMetricData written = createVersion(new Random(5));
+		VersionMetricData classes = new CSVConverter(SerializeType.CLASSES).deSerialize(new StringReader(
+				new CSVConverter(SerializeType.CLASSES).serialize(written)));
+		VersionMetricData dependencies = new CSVConverter(SerializeType.DEPENDENCIES).deSerialize(new StringReader(
+				new CSVConverter(SerializeType.DEPENDENCIES).serialize(written)));
+
+		new BinaryConverter().serialize(written, path.getPath());
+		VersionMetricData read = new BinaryConverter().deSerialize(file());
+
+		assertEquals(classes.getSimpleMetric(Version.RSN), read.getSimpleMetric(Version.RSN));
+		assertEquals(classes.getSimpleMetric(Version.CLASS_COUNT), read.getSimpleMetric(Version.CLASS_COUNT));
+		assertEquals(classes.get(Version.NAME), read.get(Version.NAME));
+		assertEquals(classes.get(Version.ID), read.get(Version.ID));
+		assertEquals(ExtractionProfile.STANDARD, classes.profile);
+		assertEquals(classes.profile, read.profile);
+
+		assertEquals(classes.metricData.keySet(), read.metricData.keySet());
+		for (ClassMetricData cmd : read.metricData.values())
+		{
+			String name = cmd.get(ClassMetric.NAME);
+			ClassMetricData csv = classes.metricData.get(name);
+			assertEquals(name, csv.get(ClassMetric.SUPER_CLASS_NAME), cmd.get(ClassMetric.SUPER_CLASS_NAME));
+			assertTrue(name, Arrays.equals(csv.getMetrics(), cmd.getMetrics()));
+			assertEquals(name, dependencies.metricData.get(name).dependencies, cmd.dependencies);
+		}
+	}
+
+	public void testSkipsDependenciesIfAskedTo() throws ConversionException
+	{
+		VersionMetricData written = createVersion(new Random(6));
+		new BinaryConverter().serialize(written, path.getPath());
+		VersionMetricData read = new BinaryConverter(false).deSerialize(file());
+
+		assertEquals(written.metricData.keySet(), read.metricData.keySet());
+		for (ClassMetricData cmd : read.metricData.values())
+			assertTrue(cmd.dependencies.isEmpty());
+	}
+
+	public void testRejectsWrongMagicNumber() throws Exception
+	{
+		new BinaryConverter().serialize(createVersion(new Random(1)), path.getPath());
+		writeInt(BinaryConverter.H_MAGIC, 0x12345678);
+		assertRejected("Not a binary version file");
+	}
+
+	public void testRejectsWrongFormatVersion() throws Exception
+	{
+		new BinaryConverter().serialize(createVersion(new Random(2)), path.getPath());
+		writeInt(BinaryConverter.H_FORMAT_VERSION, BinaryConverter.FORMAT_VERSION + 1);
+		assertRejected("Unsupported format version");
+	}
+
+	public void testRejectsTruncatedFile() throws Exception
+	{
+		new BinaryConverter().serialize(createVersion(new Random(3)), path.getPath());
+		RandomAccessFile raf = new RandomAccessFile(file(), "rw");
+		raf.setLength(raf.length() - 4);
+		raf.close();
+		assertRejected("File is truncated");
+
+		// Not even a whole header.
+		raf = new RandomAccessFile(file(), "rw");
+		raf.setLength(BinaryConverter.HEADER_INTS * 4 - 1);
+		raf.close();
+		assertRejected("Not a binary version file");
+	}
+
+	private File file()
+	{
+		return new File(path + SerializeType.BINARY.getExt());
+	}
+
+	private void assertRejected(String message)
+	{
+		try
+		{
+			new BinaryConverter().deSerialize(file());
+			fail("Read an invalid file");
+		} catch (ConversionException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().indexOf(message) != -1);
+		}
+	}
+
+	// Headers are little-endian.
+	private void writeInt(int position, int value) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file(), "rw");
+		raf.seek(position * 4);
+		raf.writeInt(Integer.reverseBytes(value));
+		raf.close();
+	}
+
+	private static VersionMetricData createVersion(Random random)
+	{
+		VersionMetricData vmd = new VersionMetricData(4, "2.0", "binary");
+		vmd.profile = ExtractionProfile.STANDARD;
+		for (int i = 0; i < 300; i++)
+		{
+			ClassMetricData cmd = new ClassMetricData("binary");
+			cmd.setProperty(ClassMetric.NAME, "binary/pkg" + random.nextInt(10) + "/Class" + i);
+			cmd.setProperty(ClassMetric.SUPER_CLASS_NAME, i % 4 == 0 ? "java/lang/Object" : "binary/Base"
+					+ random.nextInt(5));
+			int[] metrics = cmd.getMetrics();
+			for (int m = 0; m < metrics.length; m++)
+				metrics[m] = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(100) - 1;
+			int deps = random.nextInt(20);
+			for (int d = 0; d < deps; d++)
+				cmd.dependencies.add("binary/dep" + random.nextInt(5) + "/Dep" + random.nextInt(200));
+			vmd.addClass(cmd);
+		}
+		vmd.setSimpleMetric(Version.CLASS_COUNT, vmd.metricData.size());
+		return vmd;
+	}
+}
@@ -0,0 +1,158 @@
+package test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import metric.core.exception.ConversionException;
+import metric.core.io.CSVParser;
+import metric.core.model.ClassMetricData;
+import metric.core.model.VersionMetricData;
+import metric.core.persistence.CSVConverter;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.SerializeType;
+import metric.core.vocabulary.Version;
+
+/**
+ * Checks that versions read by CSVConverter through a CSVParser are exactly
+ * the same as when each line is split and its fields parsed one at a time, as
+ * they were before.
+ */
+public class CSVParserTest extends TestCase
+{
+	public void testClassesMatchSplitLines() throws ConversionException
+	{
+		VersionMetricData written = createVersion(new Random(7));
+		String csv = new CSVConverter(SerializeType.CLASSES).serialize(written);
+		VersionMetricData read = new CSVConverter(SerializeType.CLASSES).deSerialize(new StringReader(csv));
+
+		Map<String, String[]> lines = splitLines(csv);
+		assertEquals(lines.size(), read.metricData.size());
+		assertEquals(written.getSimpleMetric(Version.CLASS_COUNT), read.getSimpleMetric(Version.CLASS_COUNT));
+		for (String[] toks : lines.values())
+		{
+			ClassMetricData cmd = read.metricData.get(toks[0]);
+			assertEquals(toks[1], cmd.get(ClassMetric.SUPER_CLASS_NAME));
+			int[] metrics = new int[ClassMetric.getNumberOfMetrics()];
+			for (int i = 2; i < toks.length; i++)
+				metrics[i - 2] = Integer.parseInt(toks[i]);
+			assertTrue(toks[0], Arrays.equals(metrics, cmd.getMetrics()));
+			assertTrue(Arrays.equals(written.metricData.get(toks[0]).getMetrics(), cmd.getMetrics()));
+		}
+	}
+
+	public void testDependenciesMatchSplitLines() throws ConversionException
+	{
+		VersionMetricData written = createVersion(new Random(11));
+		String csv = new CSVConverter(SerializeType.DEPENDENCIES).serialize(written);
+		VersionMetricData read = new CSVConverter(SerializeType.DEPENDENCIES).deSerialize(new StringReader(csv));
+
+		Map<String, String[]> lines = splitLines(csv);
+		assertEquals(lines.size(), read.metricData.size());
+		for (String[] toks : lines.values())
+		{
+			Set<String> deps = new HashSet<String>(Arrays.asList(toks).subList(1, toks.length));
+			assertEquals(toks[0], deps, read.metricData.get(toks[0]).dependencies);
+			assertEquals(written.metricData.get(toks[0]).dependencies, read.metricData.get(toks[0]).dependencies);
+		}
+	}
+
+	public void testLineEndingsAndLongLines() throws IOException
+	{
+		StringBuffer csv = new StringBuffer("a,b,1\r\n\r\n#comment\r-5,x,\nlong");
+		for (int i = 0; i < 5000; i++)
+			csv.append(",").append(i);
+		CSVParser parser = new CSVParser(new BufferedReader(new StringReader(csv.toString())));
+
+		assertTrue(parser.nextLine());
+		assertEquals("a", parser.nextString());
+		assertEquals("b", parser.nextString());
+		assertEquals(1, parser.nextInt());
+		assertTrue(parser.isEndOfLine());
+
+		assertTrue(parser.nextLine());
+		assertTrue(parser.isEndOfLine());
+		assertTrue(parser.nextLine());
+		assertEquals('#', parser.peek());
+
+		// A trailing comma does not start another field.
+		assertTrue(parser.nextLine());
+		assertEquals(4, parser.getLineNumber());
+		assertEquals(-5, parser.nextInt());
+		assertEquals("x", parser.nextString());
+		assertTrue(parser.isEndOfLine());
+
+		// Longer than the buffer.
+		assertTrue(parser.nextLine());
+		assertEquals("long", parser.nextString());
+		for (int i = 0; i < 5000; i++)
+			assertEquals(i, parser.nextInt());
+		assertTrue(parser.isEndOfLine());
+		assertFalse(parser.nextLine());
+	}
+
+	public void testRejectsFieldsThatAreNotInts() throws IOException
+	{
+		CSVParser parser = new CSVParser(new StringReader("-2147483648,2147483647"));
+		assertTrue(parser.nextLine());
+		assertEquals(Integer.MIN_VALUE, parser.nextInt());
+		assertEquals(Integer.MAX_VALUE, parser.nextInt());
+
+		String[] bad = { "12a", "", "-", "2147483648", "-2147483649", "99999999999999999999" };
+		for (String field : bad)
+		{
+			parser = new CSVParser(new StringReader(field + ",1"));
+			assertTrue(parser.nextLine());
+			try
+			{
+				parser.nextInt();
+				fail(field);
+			} catch (NumberFormatException e)
+			{
+				// Expected.
+			}
+		}
+	}
+
+	private static VersionMetricData createVersion(Random random)
+	{
+		VersionMetricData vmd = new VersionMetricData(3, "1.2", "csv");
+		for (int i = 0; i < 400; i++)
+		{
+			ClassMetricData cmd = new ClassMetricData("csv");
+			cmd.setProperty(ClassMetric.NAME, "csv/pkg" + random.nextInt(20) + "/Class" + i);
+			cmd.setProperty(ClassMetric.SUPER_CLASS_NAME, i % 3 == 0 ? "java/lang/Object" : "csv/Base"
+					+ random.nextInt(10));
+			int[] metrics = cmd.getMetrics();
+			for (int m = 0; m < metrics.length; m++)
+				metrics[m] = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(200) - 1;
+			int deps = random.nextInt(30);
+			for (int d = 0; d < deps; d++)
+				cmd.dependencies.add("csv/dep" + random.nextInt(10) + "/Dep" + random.nextInt(300));
+			vmd.addClass(cmd);
+		}
+		vmd.setSimpleMetric(Version.CLASS_COUNT, vmd.metricData.size());
+		return vmd;
+	}
+
+	// Splits each class line the way CSVConverter used to.
+	private static Map<String, String[]> splitLines(String csv)
+	{
+		Map<String, String[]> lines = new HashMap<String, String[]>();
+		for (String line : csv.split("\n"))
+		{
+			if (line.startsWith("#") || line.startsWith("$") || line.length() == 0)
+				continue;
+			String[] toks = line.split(",");
+			lines.put(toks[0], toks);
+		}
+		return lines;
+	}
+}
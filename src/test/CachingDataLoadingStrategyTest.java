@@ -0,0 +1,143 @@
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import metric.core.model.VersionMetricData;
+import metric.core.persistence.CachingDataLoadingStrategy;
+import metric.core.persistence.DataLoadingStrategy;
+import metric.core.vocabulary.Version;
+
+/**
+ * Checks that versions asked for again are served from the cache, that the
+ * least recently used versions are evicted to stay within the capacity, and
+ * that a version heavier than the whole capacity is not cached.
+ */
+public class CachingDataLoadingStrategyTest extends TestCase
+{
+	private static final int CLASSES = 10;
+	private static final long VERSION_WEIGHT = CachingDataLoadingStrategy.CLASS_WEIGHT * CLASSES;
+
+	private StubLoader loader;
+
+	public void setUp()
+	{
+		loader = new StubLoader();
+	}
+
+	public void testServesVersionsAskedForAgain()
+	{
+		CachingDataLoadingStrategy cache = new CachingDataLoadingStrategy(loader, VERSION_WEIGHT * 3, false);
+		VersionMetricData first = cache.getVersion(1);
+		cache.getVersion(2);
+		assertSame(first, cache.getVersion(1));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.getEvictions());
+		assertEquals(2, cache.size());
+		assertEquals(VERSION_WEIGHT * 2, cache.getWeight());
+		assertEquals(1, loader.timesLoaded(1));
+	}
+
+	public void testEvictsLeastRecentlyUsed()
+	{
+		CachingDataLoadingStrategy cache = new CachingDataLoadingStrategy(loader, VERSION_WEIGHT * 3, false);
+		cache.getVersion(1);
+		cache.getVersion(2);
+		cache.getVersion(3);
+
+		// Using the first version again makes the second the least recently
+		// used.
+		cache.getVersion(1);
+		cache.getVersion(4);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(3, cache.size());
+		assertEquals(VERSION_WEIGHT * 3, cache.getWeight());
+
+		cache.getVersion(1);
+		cache.getVersion(3);
+		assertEquals(1, loader.timesLoaded(1));
+		assertEquals(1, loader.timesLoaded(3));
+		cache.getVersion(2);
+		assertEquals(2, loader.timesLoaded(2));
+		assertEquals(3, cache.getHits());
+		assertEquals(5, cache.getMisses());
+
+		// Reloading the second version evicted the fourth, not the first or
+		// third just used.
+		assertEquals(2, cache.getEvictions());
+		cache.getVersion(4);
+		assertEquals(2, loader.timesLoaded(4));
+	}
+
+	public void testEvictsByWeightRatherThanNumber()
+	{
+		CachingDataLoadingStrategy cache = new CachingDataLoadingStrategy(loader, VERSION_WEIGHT * 3, false);
+		cache.getVersion(1);
+		cache.getVersion(2);
+		loader.classes.put(3, CLASSES * 2);
+
+		// The third version weighs as much as two others.
+		cache.getVersion(3);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.size());
+		assertEquals(VERSION_WEIGHT * 3, cache.getWeight());
+		cache.getVersion(2);
+		assertEquals(1, cache.getHits());
+	}
+
+	public void testDoesNotCacheVersionsHeavierThanCapacity()
+	{
+		CachingDataLoadingStrategy cache = new CachingDataLoadingStrategy(loader, VERSION_WEIGHT * 3, false);
+		cache.getVersion(1);
+		loader.classes.put(2, CLASSES * 4);
+
+		// Caching it would only evict everything else, and then itself.
+		cache.getVersion(2);
+		assertEquals(0, cache.getEvictions());
+		assertEquals(1, cache.size());
+		assertEquals(VERSION_WEIGHT, cache.getWeight());
+
+		cache.getVersion(2);
+		assertEquals(2, loader.timesLoaded(2));
+		cache.getVersion(1);
+		assertEquals(1, cache.getHits());
+	}
+
+	public void testClearKeepsCounters()
+	{
+		CachingDataLoadingStrategy cache = new CachingDataLoadingStrategy(loader, VERSION_WEIGHT * 3, false);
+		cache.getVersion(1);
+		cache.getVersion(1);
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertEquals(1, cache.getHits());
+
+		cache.getVersion(1);
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, loader.timesLoaded(1));
+	}
+
+	private static class StubLoader implements DataLoadingStrategy
+	{
+		private final Map<Integer, Integer> loads = new HashMap<Integer, Integer>();
+		private final Map<Integer, Integer> classes = new HashMap<Integer, Integer>();
+
+		public int timesLoaded(int rsn)
+		{
+			Integer times = loads.get(rsn);
+			return times != null ? times : 0;
+		}
+
+		public VersionMetricData getVersion(int rsn)
+		{
+			loads.put(rsn, timesLoaded(rsn) + 1);
+			Integer count = classes.get(rsn);
+			VersionMetricData vmd = new VersionMetricData(rsn, "v" + rsn);
+			vmd.setSimpleMetric(Version.CLASS_COUNT, count != null ? count : CLASSES);
+			return vmd;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+import metric.core.io.ClassByteStore;
+import metric.core.io.InputData;
+
+/**
+ * Checks that a store sized to the files it is given holds them without
+ * growing, and grows when it is given more than it was sized for.
+ */
+public class ClassByteStoreTest extends TestCase
+{
+	public void testStoreSizedToJarIsNotGrown() throws IOException
+	{
+		ZipFile jar = new ZipFile("lib/asm-all-3.0.jar");
+		try
+		{
+			long size = 0;
+			Enumeration<? extends ZipEntry> e = jar.entries();
+			while (e.hasMoreElements())
+				size += e.nextElement().getSize();
+
+			ClassByteStore store = new ClassByteStore((int) size);
+			e = jar.entries();
+			while (e.hasMoreElements())
+			{
+				ZipEntry ze = e.nextElement();
+				InputStream in = jar.getInputStream(ze);
+				store.add(ze.getName(), ze.getTime(), ze.getCrc(), in);
+				in.close();
+			}
+			assertEquals(size, store.sizeInBytes());
+			assertEquals(store.sizeInBytes(), store.capacityInBytes());
+		} finally
+		{
+			jar.close();
+		}
+	}
+
+	public void testGrowsWhenGivenMore() throws IOException
+	{
+		byte[] bytes = new byte[5000];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) i;
+
+		ClassByteStore store = new ClassByteStore(2000);
+		store.add("a", 0, new ByteArrayInputStream(bytes, 0, 2000));
+		assertEquals(2000, store.capacityInBytes());
+		store.add("b", 0, new ByteArrayInputStream(bytes, 2000, 3000));
+		assertEquals(5000, store.sizeInBytes());
+
+		InputData b = store.get("b");
+		assertEquals(3000, b.getSize());
+		InputStream in = b.getInputStream();
+		for (int i = 2000; i < bytes.length; i++)
+			assertEquals(bytes[i], (byte) in.read());
+		assertEquals(-1, in.read());
+	}
+}
@@ -0,0 +1,86 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import metric.core.io.ClassByteStore;
+import metric.core.io.DirectoryReader;
+import metric.core.io.FileUtil;
+import metric.core.io.InputData;
+
+/**
+ * Checks that the class files of a directory are read exactly, on no more
+ * threads of a shared executor than asked for, and are kept without being
+ * copied.
+ */
+public class DirectoryReaderTest extends TempDirTestCase
+{
+	private static final int THREADS = 4;
+
+	private Map<String, Long> checksums = new HashMap<String, Long>();
+	private ThreadPoolExecutor executor;
+
+	public void setUp() throws Exception
+	{
+		super.setUp();
+
+		ZipFile jar = new ZipFile("lib/asm-all-3.0.jar");
+		try
+		{
+			Enumeration<? extends ZipEntry> e = jar.entries();
+			while (e.hasMoreElements())
+			{
+				ZipEntry ze = e.nextElement();
+				if (ze.isDirectory() || !FileUtil.isClassFile(ze.getName()) && !FileUtil.isInnerClassFile(ze.getName()))
+					continue;
+				checksums.put(ze.getName(), ze.getCrc());
+				File f = new File(dir, ze.getName());
+				f.getParentFile().mkdirs();
+				copy(jar.getInputStream(ze), f);
+			}
+		} finally
+		{
+			jar.close();
+		}
+		executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+	}
+
+	public void tearDown() throws Exception
+	{
+		executor.shutdownNow();
+		super.tearDown();
+	}
+
+	public void testReadsEveryClassFile() throws IOException
+	{
+		DirectoryReader reader = new DirectoryReader(executor, THREADS);
+		ClassByteStore store = reader.read(dir, true);
+		assertEquals(checksums.keySet(), store.getNames());
+		for (String name : store.getNames())
+		{
+			InputData idata = store.get(name);
+			assertEquals(name, checksums.get(name).longValue(), idata.getChecksum());
+			assertEquals(name, new File(dir, name).length(), idata.getSize());
+		}
+
+		// Each file is kept in the array it was read into.
+		assertEquals(store.sizeInBytes(), store.capacityInBytes());
+		assertTrue(executor.getLargestPoolSize() <= THREADS);
+	}
+
+	public void testReusesExecutor() throws IOException
+	{
+		DirectoryReader reader = new DirectoryReader(executor, THREADS);
+		long size = reader.read(dir, true).sizeInBytes();
+		assertEquals(size, reader.read(dir, true).sizeInBytes());
+		assertEquals(size, new DirectoryReader(executor, THREADS).read(dir, true).sizeInBytes());
+		assertFalse(executor.isShutdown());
+	}
+}
@@ -0,0 +1,92 @@
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import metric.core.extraction.ExtractionCache;
+import metric.core.extraction.MetricEngine;
+import metric.core.model.HistoryMetricData;
+import metric.core.vocabulary.ExtractionProfile;
+
+/**
+ * Checks that classes are restored from an extraction cache when their class
+ * files are unchanged, including after they have been evicted and after the
+ * cache has been saved and loaded again.
+ */
+public class ExtractionCacheTest extends TempDirTestCase
+{
+	private static final String JAR = "lib/asm-all-3.0.jar";
+
+	public void setUp() throws Exception
+	{
+		super.setUp();
+
+		// Two versions with exactly the same class files.
+		copy(new File(JAR), new File(dir, "a1.jar"));
+		copy(new File(JAR), new File(dir, "a2.jar"));
+		PrintWriter out = new PrintWriter(new FileWriter(new File(dir, "test.ver")));
+		out.println("$Test");
+		out.println("1, 1.0, a1.jar");
+		out.println("2, 1.1, a2.jar");
+		out.close();
+	}
+
+	public void testUnchangedClassesAreRestored() throws Exception
+	{
+		ExtractionCache cache = new ExtractionCache();
+		HistoryMetricData hmd = build("out", cache);
+
+		// Every class file of the first version is extracted, and every class
+		// file of the second is restored.
+		assertTrue(cache.getMisses() > 0);
+		assertEquals(cache.getMisses(), cache.getHits());
+		assertEquals(cache.getMisses(), cache.size());
+		assertClassesMatch(hmd);
+	}
+
+	public void testEvictedClassesAreStillRestored() throws Exception
+	{
+		ExtractionCache cache = new ExtractionCache(null, ExtractionProfile.FULL, 10);
+		HistoryMetricData hmd = build("out", cache);
+
+		// The classes cached when the second version was read are restored,
+		// even though extracting the others evicts them first.
+		assertEquals(10, cache.size());
+		assertEquals(10, cache.getHits());
+		assertClassesMatch(hmd);
+	}
+
+	public void testSavedCacheIsReloaded() throws Exception
+	{
+		File file = new File(dir, "extraction.cache");
+		ExtractionCache cache = new ExtractionCache(file, ExtractionProfile.FULL);
+		build("out", cache);
+		assertTrue(file.exists());
+
+		ExtractionCache reloaded = new ExtractionCache(file, ExtractionProfile.FULL);
+		assertEquals(cache.size(), reloaded.size());
+		HistoryMetricData hmd = build("again", reloaded);
+		assertEquals(0, reloaded.getMisses());
+		assertEquals(cache.getHits() * 2, reloaded.getHits());
+		assertClassesMatch(hmd);
+
+		// Classes extracted with another profile are not restored.
+		assertEquals(0, new ExtractionCache(file, ExtractionProfile.STANDARD).size());
+	}
+
+	private HistoryMetricData build(String output, ExtractionCache cache) throws Exception
+	{
+		new File(dir, output).mkdirs();
+		String project = new File(new File(dir, output), "test.jpf").getPath();
+		MetricEngine me = new MetricEngine(new File(dir, "test.ver").getPath(), project, 1, false);
+		me.setExtractionCache(cache);
+		return me.process();
+	}
+
+	private static void assertClassesMatch(HistoryMetricData hmd)
+	{
+		assertTrue(hmd.getVersion(1).metricData.size() > 0);
+		assertEquals(hmd.getVersion(1).metricData.keySet(), hmd.getVersion(2).metricData.keySet());
+	}
+}
@@ -0,0 +1,63 @@
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import metric.core.Project;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.ExtractionProfile;
+import metric.core.vocabulary.SerializeType;
+
+/**
+ * Checks which metrics each profile provides, and that rebuilding a project
+ * with a profile that does not keep methods removes the method data of an
+ * earlier build.
+ */
+public class ExtractionProfileTest extends TempDirTestCase
+{
+	public void testFastLacksMetricsComputedFromCode()
+	{
+		for (ClassMetric metric : ClassMetric.values())
+		{
+			assertTrue(metric.toString(), ExtractionProfile.STANDARD.isAvailable(metric));
+			assertTrue(metric.toString(), ExtractionProfile.FULL.isAvailable(metric));
+		}
+		assertTrue(ExtractionProfile.FAST.isAvailable(ClassMetric.METHOD_COUNT));
+		assertTrue(ExtractionProfile.FAST.isAvailable(ClassMetric.FIELD_COUNT));
+		assertFalse(ExtractionProfile.FAST.isAvailable(ClassMetric.BRANCH_COUNT));
+		// Computed from code metrics.
+		assertFalse(ExtractionProfile.FAST.isAvailable(ClassMetric.COMPUTED_DISTANCE));
+		assertFalse(ExtractionProfile.FAST.isAvailable(ClassMetric.MODIFIED_METRIC_COUNT));
+		// Computed from dependencies, which lack those in method bodies.
+		assertFalse(ExtractionProfile.FAST.isAvailable(ClassMetric.FAN_IN_COUNT));
+		assertFalse(ExtractionProfile.FAST.isAvailable(ClassMetric.LAYER));
+		assertFalse(ExtractionProfile.FAST.isAvailable(ClassMetric.GUI_DISTANCE));
+	}
+
+	public void testRebuildWithoutMethodsRemovesMethodData() throws Exception
+	{
+		copy(new File("lib/asm-all-3.0.jar"), new File(dir, "a1.jar"));
+		File methods = new File(dir, "out/data/1" + SerializeType.METHODS.getExt());
+
+		build(ExtractionProfile.FULL);
+		assertTrue(methods.exists());
+		build(ExtractionProfile.STANDARD);
+		assertTrue(new File(dir, "out/data/1" + SerializeType.CLASSES.getExt()).exists());
+		assertFalse("method data left from the earlier build", methods.exists());
+	}
+
+	private void build(ExtractionProfile profile) throws Exception
+	{
+		File versionFile = new File(dir, "test.ver");
+		PrintWriter out = new PrintWriter(new FileWriter(versionFile));
+		out.println("$Test");
+		out.println("1, 1.0, a1.jar");
+		out.close();
+
+		new File(dir, "out").mkdirs();
+		Project project = new Project(versionFile.getPath(), new File(dir, "out/test.jpf").getPath(), 1);
+		project.setExtractionProfile(profile);
+		project.build();
+	}
+}
@@ -0,0 +1,120 @@
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import junit.framework.TestCase;
+import metric.core.extraction.VersionPostProcessor;
+import metric.core.model.ClassMetricData;
+import metric.core.model.HistoryMetricData;
+import metric.core.model.VersionMetricData;
+import metric.core.vocabulary.ClassMetric;
+import metric.core.vocabulary.LoadType;
+
+/**
+ * Checks that post-processing flags every class that depends, directly or
+ * not, on a GUI class as GUI and on an IO class as IO, by comparing it with a
+ * simple fixed point computed over random dependency graphs.
+ */
+public class GUIAndIOPropagationTest extends TestCase
+{
+	private static final int GRAPHS = 200;
+
+	public void testMatchesFixedPointOnRandomGraphs() throws Exception
+	{
+		Random random = new Random(13);
+		for (int g = 0; g < GRAPHS; g++)
+		{
+			VersionMetricData vmd = createVersion(random, "graph" + g);
+			Map<String, int[]> expected = propagate(vmd);
+			VersionMetricData processed = postProcess(vmd);
+
+			for (ClassMetricData cmd : processed.metricData.values())
+			{
+				String name = cmd.get(ClassMetric.NAME);
+				assertEquals(name, expected.get(name)[0], cmd.getSimpleMetric(ClassMetric.GUI_DISTANCE));
+				assertEquals(name, expected.get(name)[1], cmd.getSimpleMetric(ClassMetric.IS_IO_CLASS));
+			}
+		}
+	}
+
+	private static VersionMetricData postProcess(VersionMetricData vmd) throws InterruptedException
+	{
+		Map<Integer, String[]> versions = new HashMap<Integer, String[]>();
+		versions.put(1, new String[] { "graph", "nonexistent" });
+		BlockingQueue<VersionMetricData> extracted = new LinkedBlockingQueue<VersionMetricData>();
+		BlockingQueue<VersionMetricData> persisted = new LinkedBlockingQueue<VersionMetricData>();
+		VersionPostProcessor processor = new VersionPostProcessor(new HistoryMetricData("graph", versions,
+				LoadType.MINIMAL), persisted);
+		processor.setFirstPassOnExtraction(false);
+		extracted.put(vmd);
+		processor.process(extracted, 1);
+		return persisted.take();
+	}
+
+	// Flags the users of flagged classes in rounds until nothing changes.
+	// Classes with a GUI distance of -1 and IO classes of kind 2 keep their
+	// values; the former are still GUI classes, the latter are not IO ones.
+	private static Map<String, int[]> propagate(VersionMetricData vmd)
+	{
+		Map<String, int[]> flags = new HashMap<String, int[]>();
+		for (ClassMetricData cmd : vmd.metricData.values())
+			flags.put(cmd.get(ClassMetric.NAME), new int[] { cmd.getSimpleMetric(ClassMetric.GUI_DISTANCE),
+					cmd.getSimpleMetric(ClassMetric.IS_IO_CLASS) });
+
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (ClassMetricData cmd : vmd.metricData.values())
+			{
+				int[] user = flags.get(cmd.get(ClassMetric.NAME));
+				for (String dependency : cmd.dependencies)
+				{
+					int[] used = flags.get(dependency);
+					if (used == null)
+						continue;
+					if (user[0] == 0 && used[0] != 0)
+					{
+						user[0] = 1;
+						changed = true;
+					}
+					if (user[1] == 0 && used[1] == 1)
+					{
+						user[1] = 1;
+						changed = true;
+					}
+				}
+			}
+		}
+		return flags;
+	}
+
+	private static VersionMetricData createVersion(Random random, String product)
+	{
+		VersionMetricData vmd = new VersionMetricData(1, "1", product);
+		int size = 1 + random.nextInt(60);
+		int edges = random.nextInt(size * 3);
+		ClassMetricData[] classes = new ClassMetricData[size];
+		for (int c = 0; c < size; c++)
+		{
+			classes[c] = new ClassMetricData(product);
+			classes[c].setProperty(ClassMetric.NAME, product + "/Class" + c);
+			// Mostly unflagged, so flags have somewhere to spread.
+			classes[c].setSimpleMetric(ClassMetric.GUI_DISTANCE, random.nextInt(8) == 0 ? random.nextInt(3) - 1 : 0);
+			classes[c].setSimpleMetric(ClassMetric.IS_IO_CLASS, random.nextInt(8) == 0 ? random.nextInt(3) : 0);
+		}
+		for (int e = 0; e < edges; e++)
+		{
+			// Some dependencies are on classes outside the version.
+			int to = random.nextInt(size + 5);
+			classes[random.nextInt(size)].dependencies.add(product + "/Class" + to);
+		}
+		for (ClassMetricData cmd : classes)
+			vmd.addClass(cmd);
+		return vmd;
+	}
+}
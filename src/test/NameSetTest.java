@@ -0,0 +1,76 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import metric.core.model.ClassNames;
+import metric.core.model.NameSet;
+
+/**
+ * Checks that a NameSet behaves like any other set of class names, whether or
+ * not it is large enough to be indexed.
+ */
+public class NameSetTest extends TestCase
+{
+	public void testSameIdForSameName()
+	{
+		int id = ClassNames.getId("test/NameSetTest");
+		assertEquals(id, ClassNames.getId(new String("test/NameSetTest")));
+		assertEquals("test/NameSetTest", ClassNames.getName(id));
+		assertEquals(-1, ClassNames.findId("test/NotInTheTable"));
+	}
+
+	public void testKeepsInsertionOrder()
+	{
+		NameSet names = new NameSet();
+		List<String> added = new ArrayList<String>();
+		for (int i = 20; i > 0; i--)
+		{
+			names.add("order/Class" + i);
+			added.add("order/Class" + i);
+		}
+		assertFalse(names.add("order/Class5"));
+		assertEquals(added, new ArrayList<String>(names));
+	}
+
+	public void testBehavesLikeHashSet()
+	{
+		Random random = new Random(7);
+		for (int run = 0; run < 200; run++)
+		{
+			NameSet names = new NameSet();
+			Set<String> expected = new HashSet<String>();
+			int operations = random.nextInt(200);
+			for (int i = 0; i < operations; i++)
+			{
+				String name = "random/Class" + random.nextInt(60);
+				if (random.nextInt(4) == 0)
+					assertEquals(expected.remove(name), names.remove(name));
+				else
+					assertEquals(expected.add(name), names.add(name));
+			}
+			assertEquals(expected, names);
+			assertEquals(names, expected);
+			assertEquals(expected.hashCode(), names.hashCode());
+			assertTrue(names.containsAll(new NameSet(expected)));
+			assertFalse(names.contains("random/NotAdded"));
+
+			Iterator<String> it = names.iterator();
+			while (it.hasNext())
+			{
+				String name = it.next();
+				if (name.hashCode() % 2 == 0)
+				{
+					it.remove();
+					expected.remove(name);
+				}
+			}
+			assertEquals(expected, names);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import metric.core.Project;
+import metric.core.model.HistoryMetricData;
+import metric.core.vocabulary.SerializeType;
+
+/**
+ * Checks that appending to a project only extracts the new versions, and only
+ * rewrites the data of those versions and of the last version already in the
+ * project, whose next-version status changes. The data written must match a
+ * project built from scratch.
+ */
+public class ProjectAppendTest extends TempDirTestCase
+{
+	private static final String[] JARS = { "lib/asm-all-3.0.jar", "lib/junit.jar", "lib/asm-all-3.0.jar" };
+
+	// Far enough in the past to tell whether a file has been written since.
+	private static final long WRITTEN_BEFORE = 1000000000000L;
+
+	public void setUp() throws Exception
+	{
+		super.setUp();
+		for (int rsn = 1; rsn <= JARS.length; rsn++)
+			copy(new File(JARS[rsn - 1]), new File(dir, "a" + rsn + ".jar"));
+	}
+
+	public void testRewritesOnlyNewAndLastExistingVersions() throws Exception
+	{
+		build("appended", 2, false);
+		markWritten(new File(dir, "appended/data"));
+
+		HistoryMetricData hmd = build("appended", 3, true);
+		assertEquals(3, hmd.size());
+		assertTrue(hmd.getVersion(3).metricData.size() > 0);
+		assertWritten("appended", 1, false);
+		assertWritten("appended", 3, true);
+
+		// The last existing version is loaded back without its method data,
+		// so only its method file is kept.
+		assertWritten(dataFile(2, SerializeType.CLASSES), true);
+		assertWritten(dataFile(2, SerializeType.DEPENDENCIES), true);
+		assertWritten(dataFile(2, SerializeType.METHODS), false);
+
+		// The second version now has a next version.
+		build("full", 3, false);
+		for (int rsn = 1; rsn <= 3; rsn++)
+			assertSameData(rsn);
+	}
+
+	public void testRewritesNothingIfNothingIsNew() throws Exception
+	{
+		build("appended", 2, false);
+		markWritten(new File(dir, "appended/data"));
+
+		HistoryMetricData hmd = build("appended", 2, true);
+		assertEquals(2, hmd.size());
+		assertWritten("appended", 1, false);
+		assertWritten("appended", 2, false);
+	}
+
+	private HistoryMetricData build(String output, int versions, boolean append) throws Exception
+	{
+		File versionFile = new File(dir, "test.ver");
+		PrintWriter out = new PrintWriter(new FileWriter(versionFile));
+		out.println("$Test");
+		for (int rsn = 1; rsn <= versions; rsn++)
+			out.println(rsn + ", 1." + rsn + ", a" + rsn + ".jar");
+		out.close();
+
+		new File(dir, output).mkdirs();
+		Project project = new Project(versionFile.getPath(), new File(new File(dir, output), "test.jpf").getPath(), 1);
+		project.setAppend(append);
+		return project.build();
+	}
+
+	private static void markWritten(File dataFolder)
+	{
+		for (File f : dataFolder.listFiles())
+			f.setLastModified(WRITTEN_BEFORE);
+	}
+
+	private void assertWritten(String output, int rsn, boolean written)
+	{
+		File[] files = versionFiles(new File(dir, output + "/data"), rsn);
+		assertTrue("no data for version " + rsn, files.length > 0);
+		for (File f : files)
+			assertWritten(f, written);
+	}
+
+	private static void assertWritten(File file, boolean written)
+	{
+		assertTrue(file.getName(), file.exists());
+		assertEquals(file.getName(), written, file.lastModified() != WRITTEN_BEFORE);
+	}
+
+	private File dataFile(int rsn, SerializeType type)
+	{
+		return new File(dir, "appended/data/" + rsn + type.getExt());
+	}
+
+	private void assertSameData(int rsn) throws IOException
+	{
+		File[] appended = versionFiles(new File(dir, "appended/data"), rsn);
+		File[] full = versionFiles(new File(dir, "full/data"), rsn);
+		assertEquals(appended.length, full.length);
+		for (int i = 0; i < appended.length; i++)
+		{
+			assertEquals(full[i].getName(), appended[i].getName());
+			assertTrue(appended[i].getName(), Arrays.equals(read(full[i]), read(appended[i])));
+		}
+	}
+
+	private static File[] versionFiles(File dataFolder, int rsn)
+	{
+		String prefix = rsn + ".";
+		int count = 0;
+		File[] files = dataFolder.listFiles();
+		Arrays.sort(files);
+		File[] matching = new File[files.length];
+		for (File f : files)
+		{
+			if (f.getName().startsWith(prefix))
+				matching[count++] = f;
+		}
+		File[] result = new File[count];
+		System.arraycopy(matching, 0, result, 0, count);
+		return result;
+	}
+
+	private static byte[] read(File file) throws IOException
+	{
+		byte[] data = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		int offset = 0, read;
+		while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1)
+			offset += read;
+		in.close();
+		return data;
+	}
+}
@@ -0,0 +1,181 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import metric.core.model.VersionMetricData;
+import metric.core.persistence.CachingDataLoadingStrategy;
+import metric.core.persistence.DataLoadingStrategy;
+import metric.core.persistence.ReadAheadDataLoadingStrategy;
+import metric.core.vocabulary.Version;
+
+/**
+ * Checks that versions are read ahead while they are asked for in order, as
+ * far as the depth and capacity allow, and that reading ahead is dropped when
+ * they are not.
+ */
+public class ReadAheadDataLoadingStrategyTest extends TestCase
+{
+	private static final int VERSIONS = 10;
+	private static final int CLASSES = 10;
+	private static final long VERSION_WEIGHT = CachingDataLoadingStrategy.CLASS_WEIGHT * CLASSES;
+
+	private StubLoader loader;
+	private Map<Integer, String[]> versions;
+	private ReadAheadDataLoadingStrategy readAhead;
+
+	public void setUp()
+	{
+		loader = new StubLoader();
+		versions = new HashMap<Integer, String[]>();
+		for (int rsn = 1; rsn <= VERSIONS; rsn++)
+			versions.put(rsn, new String[] { "v" + rsn, "p" + rsn });
+	}
+
+	public void tearDown()
+	{
+		loader.gate.countDown();
+		if (readAhead != null)
+			readAhead.shutdown();
+	}
+
+	public void testReadsAheadToTheDepth() throws Exception
+	{
+		readAhead = new ReadAheadDataLoadingStrategy(loader, versions, 3, Long.MAX_VALUE);
+		assertEquals(1, readAhead.getVersion(1).getSimpleMetric(Version.RSN));
+		awaitLoaded(4);
+		Thread.sleep(100);
+		assertFalse(loader.loaded.contains(5));
+
+		for (int rsn = 2; rsn <= 4; rsn++)
+			assertEquals(rsn, readAhead.getVersion(rsn).getSimpleMetric(Version.RSN));
+		assertEquals(1, readAhead.getMisses());
+		assertEquals(3, readAhead.getHits());
+
+		// Asking for the same version again loads it again, as keeping
+		// versions is left to a cache, but keeps the order.
+		readAhead.getVersion(4);
+		assertEquals(2, readAhead.getMisses());
+		awaitLoaded(7);
+	}
+
+	public void testOutOfOrderDropsReadAhead() throws Exception
+	{
+		readAhead = new ReadAheadDataLoadingStrategy(loader, versions, 2, Long.MAX_VALUE);
+		readAhead.getVersion(1);
+		awaitLoaded(3);
+
+		// The versions read ahead are dropped, and are loaded again when they
+		// are asked for.
+		readAhead.getVersion(8);
+		readAhead.getVersion(2);
+		readAhead.getVersion(3);
+		assertEquals(0, readAhead.getHits());
+		assertEquals(4, readAhead.getMisses());
+		assertEquals(2, loader.timesLoaded(2));
+	}
+
+	public void testCapacityLimitsReadAhead() throws Exception
+	{
+		readAhead = new ReadAheadDataLoadingStrategy(loader, versions, 3, VERSION_WEIGHT * 2);
+
+		// The size of versions is not known until the first is loaded.
+		readAhead.getVersion(1);
+		awaitLoaded(4);
+
+		// Versions 3 and 4 fill the capacity.
+		readAhead.getVersion(2);
+		Thread.sleep(100);
+		assertFalse(loader.loaded.contains(5));
+
+		readAhead.getVersion(3);
+		awaitLoaded(5);
+		Thread.sleep(100);
+		assertFalse(loader.loaded.contains(6));
+	}
+
+	public void testShutdownReleasesWaitingCallers() throws Exception
+	{
+		readAhead = new ReadAheadDataLoadingStrategy(loader, versions, 1, Long.MAX_VALUE);
+		loader.gated = 2;
+
+		// Version 2 is read ahead on the only thread, which blocks, so version
+		// 3 is queued behind it.
+		readAhead.getVersion(1);
+		Getter second = new Getter(2);
+		second.join(200);
+		Getter third = new Getter(3);
+		third.join(200);
+		assertTrue(third.isAlive());
+
+		readAhead.shutdown();
+		third.join(5000);
+		assertFalse("waiting for a version that will never be read", third.isAlive());
+		assertEquals(3, third.vmd.getSimpleMetric(Version.RSN));
+		second.join(5000);
+		assertFalse(second.isAlive());
+	}
+
+	private void awaitLoaded(int rsn) throws InterruptedException
+	{
+		for (int i = 0; i < 500 && !loader.loaded.contains(rsn); i++)
+			Thread.sleep(10);
+		assertTrue("version " + rsn + " was not read ahead", loader.loaded.contains(rsn));
+	}
+
+	private class Getter extends Thread
+	{
+		private final int rsn;
+		private volatile VersionMetricData vmd;
+
+		public Getter(int rsn)
+		{
+			this.rsn = rsn;
+			start();
+		}
+
+		public void run()
+		{
+			vmd = readAhead.getVersion(rsn);
+		}
+	}
+
+	private static class StubLoader implements DataLoadingStrategy
+	{
+		private final List<Integer> loaded = Collections.synchronizedList(new ArrayList<Integer>());
+		private final CountDownLatch gate = new CountDownLatch(1);
+		private volatile int gated = -1;
+
+		// Versions may still be read ahead while the list is counted.
+		public int timesLoaded(int rsn)
+		{
+			synchronized (loaded)
+			{
+				return Collections.frequency(loaded, rsn);
+			}
+		}
+
+		public VersionMetricData getVersion(int rsn)
+		{
+			if (rsn == gated)
+			{
+				try
+				{
+					gate.await();
+				} catch (InterruptedException e)
+				{
+					// Loaded anyway.
+				}
+			}
+			loaded.add(rsn);
+			VersionMetricData vmd = new VersionMetricData(rsn, "v" + rsn);
+			vmd.setSimpleMetric(Version.CLASS_COUNT, CLASSES);
+			return vmd;
+		}
+	}
+}
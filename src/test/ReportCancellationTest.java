@@ -0,0 +1,90 @@
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+import junit.framework.TestCase;
+import metric.core.ReportDefinition;
+import metric.core.exception.ReportCancelledException;
+import metric.core.model.ClassMetricData;
+import metric.core.model.HistoryMetricData;
+import metric.core.model.VersionMetricData;
+import metric.core.persistence.DataLoadingStrategy;
+import metric.core.report.Report;
+import metric.core.report.visitor.GiniCoeffReportVisitor;
+import metric.core.vocabulary.ClassMetric;
+
+/**
+ * Checks that a report cancelled whilst it works through a version stops
+ * before reaching the end of it, and that it can then be run again.
+ */
+public class ReportCancellationTest extends TestCase
+{
+	private static final int CLASSES = 1000;
+
+	private HistoryMetricData hmd;
+	private Report report;
+
+	public void setUp() throws Exception
+	{
+		final VersionMetricData vmd = new VersionMetricData(1, "1", "big");
+		for (int c = 0; c < CLASSES; c++)
+		{
+			ClassMetricData cmd = new ClassMetricData("big");
+			cmd.setProperty(ClassMetric.NAME, "big/Class" + c);
+			cmd.setSimpleMetric(ClassMetric.FAN_OUT_COUNT, c % 10);
+			vmd.addClass(cmd);
+		}
+
+		Map<Integer, String[]> versions = new HashMap<Integer, String[]>();
+		versions.put(1, new String[] { "big", "nonexistent" });
+		hmd = new HistoryMetricData("big", versions);
+		hmd.setDataLoader(new DataLoadingStrategy()
+		{
+			public VersionMetricData getVersion(int rsn)
+			{
+				return vmd;
+			}
+		});
+		report = new GiniCoeffReportVisitor(new ReportDefinition("GiniCoeffReportVisitor", "Gini", new Object[0],
+				new Object[] { ClassMetric.FAN_OUT_COUNT.toString() }));
+	}
+
+	public void testStopsWithinVersion() throws Exception
+	{
+		// Cancels as the only version is started, so only a checkpoint
+		// within the version can stop the report.
+		report.addObserver(new Observer()
+		{
+			public void update(Observable o, Object arg)
+			{
+				report.cancel();
+			}
+		});
+		try
+		{
+			hmd.accept(report);
+			fail("report was not cancelled");
+		} catch (ReportCancelledException e)
+		{
+		}
+		assertNull(report.getTable());
+		assertFalse(report.isCancelled());
+	}
+
+	public void testRunsAgainAfterCancellation() throws Exception
+	{
+		report.cancel();
+		try
+		{
+			hmd.accept(report);
+			fail("report was not cancelled");
+		} catch (ReportCancelledException e)
+		{
+		}
+		hmd.accept(report);
+		assertEquals(1, report.getTable().getRows());
+	}
+}
@@ -0,0 +1,73 @@
+package test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+import metric.core.extraction.ClassMetricExtractor;
+import metric.core.extraction.StreamingClassMetricExtractor;
+import metric.core.io.InputData;
+import metric.core.io.InputDataSet;
+import metric.core.model.ClassMetricData;
+import metric.core.vocabulary.ClassMetric;
+
+/**
+ * Checks that the streaming extraction engine produces exactly the same class
+ * and method metrics as the tree based engine.
+ */
+public class StreamingExtractionTest extends TestCase
+{
+	private static final String JAR = "lib/asm-all-3.0.jar";
+
+	private InputDataSet treeInput, streamingInput;
+
+	public void setUp() throws IOException
+	{
+		treeInput = new InputDataSet(JAR, "1", 1, "asm", "asm");
+		treeInput.addInputFile(JAR);
+		treeInput.inflate(true);
+
+		streamingInput = new InputDataSet(JAR, "1", 1, "asm", "asm");
+		streamingInput.addInputFile(JAR);
+		streamingInput.inflate(true);
+	}
+
+	public void tearDown() throws IOException
+	{
+		treeInput.close();
+		streamingInput.close();
+	}
+
+	public void testParity() throws IOException
+	{
+		int compared = 0;
+		Iterator<InputData> streamingIt = streamingInput.iterator();
+		for (InputData treeData : treeInput)
+		{
+			InputData streamingData = streamingIt.next();
+			assertEquals(treeData.toString(), streamingData.toString());
+
+			ClassMetricData tree = new ClassMetricExtractor(treeData).extract();
+			ClassMetricData streaming = new StreamingClassMetricExtractor(streamingData).extract();
+
+			String name = tree.get(ClassMetric.NAME);
+			assertEquals(name, streaming.get(ClassMetric.NAME));
+			assertEquals(name, tree.get(ClassMetric.SUPER_CLASS_NAME), streaming.get(ClassMetric.SUPER_CLASS_NAME));
+			assertTrue(name, Arrays.equals(tree.getMetrics(), streaming.getMetrics()));
+			assertEquals(name, tree.dependencies, streaming.dependencies);
+
+			HashMap<String, int[]> treeMethods = tree.methods.methods();
+			HashMap<String, int[]> streamingMethods = streaming.methods.methods();
+			assertEquals(name, treeMethods.keySet(), streamingMethods.keySet());
+			for (Entry<String, int[]> method : treeMethods.entrySet())
+				assertTrue(name + "." + method.getKey(), Arrays.equals(method.getValue(), streamingMethods.get(method
+						.getKey())));
+			compared++;
+		}
+		assertFalse(streamingIt.hasNext());
+		assertTrue(compared > 0);
+	}
+}
@@ -0,0 +1,66 @@
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case that works in a temporary directory of its own, which is
+ * deleted along with everything in it once each test has run.
+ */
+public abstract class TempDirTestCase extends TestCase
+{
+	protected File dir;
+
+	protected void setUp() throws Exception
+	{
+		dir = File.createTempFile(getClass().getSimpleName(), "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	protected void tearDown() throws Exception
+	{
+		delete(dir);
+	}
+
+	protected static void copy(File from, File to) throws IOException
+	{
+		copy(new FileInputStream(from), to);
+	}
+
+	/**
+     * Copies the specified stream to a file and closes it.
+     */
+	protected static void copy(InputStream in, File to) throws IOException
+	{
+		OutputStream out = new FileOutputStream(to);
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+		} finally
+		{
+			in.close();
+			out.close();
+		}
+	}
+
+	protected static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+				delete(f);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,129 @@
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import junit.framework.TestCase;
+import metric.core.extraction.VersionPostProcessor;
+import metric.core.model.HistoryMetricData;
+import metric.core.model.VersionMetricData;
+import metric.core.vocabulary.LoadType;
+import metric.core.vocabulary.Version;
+
+/**
+ * Checks that versions are post-processed in RSN order whatever order they are
+ * extracted in, and that extractors cannot get further ahead of the version
+ * being waited for than the window.
+ */
+public class VersionPostProcessorTest extends TestCase
+{
+	private static final int VERSIONS = 5;
+
+	private VersionPostProcessor processor;
+	private BlockingQueue<VersionMetricData> extracted, persisted;
+	private Thread processing;
+	private Exception failure;
+
+	public void setUp()
+	{
+		Map<Integer, String[]> versions = new HashMap<Integer, String[]>();
+		for (int rsn = 1; rsn <= VERSIONS; rsn++)
+			versions.put(rsn, new String[] { "test-" + rsn, "nonexistent" + rsn });
+		HistoryMetricData hmd = new HistoryMetricData("test", versions, LoadType.MINIMAL);
+
+		extracted = new LinkedBlockingQueue<VersionMetricData>();
+		persisted = new LinkedBlockingQueue<VersionMetricData>();
+		processor = new VersionPostProcessor(hmd, persisted);
+		processor.setFirstPassOnExtraction(true);
+		processor.setWindow(2);
+
+		processing = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					processor.process(extracted, VERSIONS);
+				} catch (Exception e)
+				{
+					failure = e;
+				}
+			}
+		};
+		processing.start();
+	}
+
+	public void tearDown()
+	{
+		processor.interrupt();
+	}
+
+	public void testWindowHoldsBackVersionsTooFarAhead() throws Exception
+	{
+		// The first two versions are within the window straight away.
+		processor.awaitTurn(1);
+		processor.awaitTurn(2);
+
+		Thread third = awaitTurn(3);
+		third.join(200);
+		assertTrue("extracted ahead of the window", third.isAlive());
+
+		// Taking the first version moves the window on.
+		extracted.put(new VersionMetricData(1, "1", "test"));
+		third.join(5000);
+		assertFalse("window did not move on", third.isAlive());
+
+		Thread fifth = awaitTurn(5);
+		fifth.join(200);
+		assertTrue("extracted ahead of the window", fifth.isAlive());
+
+		// Versions extracted out of order are still persisted in order.
+		extracted.put(new VersionMetricData(3, "3", "test"));
+		extracted.put(new VersionMetricData(2, "2", "test"));
+		fifth.join(5000);
+		assertFalse("window did not move on", fifth.isAlive());
+		extracted.put(new VersionMetricData(5, "5", "test"));
+		extracted.put(new VersionMetricData(4, "4", "test"));
+
+		processing.join(5000);
+		assertNull(failure);
+		assertFalse(processing.isAlive());
+		assertEquals(VERSIONS, persisted.size());
+		for (int rsn = 1; rsn <= VERSIONS; rsn++)
+			assertEquals(rsn, persisted.take().getSimpleMetric(Version.RSN));
+	}
+
+	public void testInterruptReleasesWaitingExtractors() throws Exception
+	{
+		Thread fifth = awaitTurn(5);
+		fifth.join(200);
+		assertTrue(fifth.isAlive());
+
+		processor.interrupt();
+		fifth.join(5000);
+		assertFalse(fifth.isAlive());
+		processing.join(5000);
+		assertTrue(failure instanceof InterruptedException);
+	}
+
+	private Thread awaitTurn(final int rsn)
+	{
+		Thread thread = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					processor.awaitTurn(rsn);
+				} catch (InterruptedException e)
+				{
+					// Given up.
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+}